@@ -1,7 +1,90 @@
+import com.example.safeharbor.geo.BoundaryPack
+import com.example.safeharbor.geo.DistanceField
+import com.example.safeharbor.geo.GeoJsonReader
+import com.example.safeharbor.geo.InternationalBoundaries
+
 plugins {
     id("com.android.application")
 }
 
+// Compiles the boundary CSV and the EEZ boundary lines GeoJSON into the pack read by
+// geo.BoundaryPack, so the app never parses coordinate text at runtime. The GeoJSON is read
+// with geo.GeoJsonReader and the pack written by BoundaryPack itself, both of which buildSrc
+// compiles from the app's sources; see BoundaryPack for the layout.
+//
+// The distance raster for the pack's international boundaries is built here too, which takes
+// seconds, and shipped next to it so the device only maps it.
+abstract class CompileBoundaryPackTask : DefaultTask() {
+    @get:InputFile
+    abstract val csvFile: RegularFileProperty
+
+    @get:InputFile
+    abstract val geoJsonFile: RegularFileProperty
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun compile() {
+        val coordinate = Regex("""\(\s*(-?\d+(?:\.\d+)?)\s*,\s*(-?\d+(?:\.\d+)?)\s*\)""")
+        val names = LinkedHashMap<String, Int>()
+        val lines = ArrayList<IntArray>()
+        val lats = ArrayList<Double>()
+        val lons = ArrayList<Double>()
+
+        csvFile.get().asFile.readLines().drop(1).filter { it.isNotBlank() }.forEach { row ->
+            val name = row.substringBefore(',').trim()
+            val points = coordinate.findAll(row.substringAfter('"', "")).toList()
+            if (points.size >= 2) {
+                val id = names.getOrPut(name) { names.size }
+                lines.add(intArrayOf(id, lats.size, points.size))
+                points.forEach {
+                    lons.add(it.groupValues[1].toDouble())
+                    lats.add(it.groupValues[2].toDouble())
+                }
+            }
+        }
+
+        val csvPack = BoundaryPack(
+            names.keys.toTypedArray(),
+            lines.map { it[0] }.toIntArray(),
+            lines.map { it[1] }.toIntArray(),
+            lines.map { it[2] }.toIntArray(),
+            lats.toDoubleArray(),
+            lons.toDoubleArray(),
+            0
+        )
+        // Lines of the CSV win over GeoJSON lines of the same name
+        val geoJsonPack = geoJsonFile.get().asFile.bufferedReader().use {
+            // Same per-feature limit as the app's BoundaryAssets.MAX_FEATURE_POINTS
+            GeoJsonReader(it, 200_000, "line_name").use { reader ->
+                BoundaryPack.fromGeoJson(reader, "line_name")
+            }
+        }
+        val pack = csvPack.withNewBoundariesFrom(geoJsonPack)
+
+        val out = outputDir.get().file(BoundaryPack.ASSET_NAME).asFile
+        out.parentFile.mkdirs()
+        out.outputStream().buffered().use { pack.writeTo(it) }
+        logger.lifecycle(
+            "Boundary pack: ${pack.boundaryNames.size} boundaries, ${pack.lineCount} lines, ${pack.lats.size} points"
+        )
+
+        val international = pack.onlyBoundaries(InternationalBoundaries.NAMES)
+        val field = DistanceField.build(
+            international.toIndex(), international.contentHash(), DistanceField.DEFAULT_STEP_DEGREES
+        )
+        outputDir.get().file(DistanceField.ASSET_NAME).asFile.outputStream().buffered().use { field.writeTo(it) }
+        logger.lifecycle("Distance field: ${field.cellCount} cells")
+    }
+}
+
+val compileBoundaryPack = tasks.register<CompileBoundaryPackTask>("compileBoundaryPack") {
+    csvFile.set(layout.projectDirectory.file("src/main/assets/indian_cleaned.csv"))
+    geoJsonFile.set(layout.projectDirectory.file("src/main/assets/india_eez_boundaries.geojson"))
+    outputDir.set(layout.buildDirectory.dir("generated/boundaryPack"))
+}
+
 android {
     namespace = "com.example.safeharbor"
     compileSdk = 34
@@ -25,12 +108,25 @@ android {
             )
         }
     }
+    androidResources {
+        // Stored uncompressed so the pack can be memory-mapped straight out of the APK
+        noCompress += "bin"
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
 }
 
+androidComponents {
+    onVariants { variant ->
+        variant.sources.assets?.addGeneratedSourceDirectory(
+            compileBoundaryPack,
+            CompileBoundaryPackTask::outputDir
+        )
+    }
+}
+
 dependencies {
     implementation("androidx.appcompat:appcompat:1.6.1")
     implementation("com.google.android.material:material:1.11.0")
@@ -0,0 +1,75 @@
+package com.example.safeharbor;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * The thread border evaluation runs on. Fixes are delivered to its looper, distances and zones
+ * are worked out there, and only small finished results go to the main thread through
+ * {@link #postToMain}, which also times how long each one holds the main thread.
+ *
+ * Everything posted here runs in order, so work posted before the first fix, such as loading
+ * the boundaries, is done by the time that fix is evaluated.
+ */
+public final class BorderEvaluator {
+    private static final String TAG = "BorderEvaluator";
+    // How often the main thread cost is logged, in results
+    private static final int LOG_EVERY_RESULTS = 100;
+
+    private static final class Holder {
+        static final BorderEvaluator INSTANCE = new BorderEvaluator();
+    }
+
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Written on the main thread only
+    private long mainThreadNanos;
+    private long maxMainThreadNanos;
+    private int resultCount;
+
+    private BorderEvaluator() {
+        // Lives as long as the process, border checks must not wait for a thread to start
+        thread = new HandlerThread("BorderEvaluator");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public static BorderEvaluator getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // For location requests, so callbacks arrive on the evaluation thread
+    public Looper getLooper() {
+        return thread.getLooper();
+    }
+
+    public void post(Runnable work) {
+        handler.post(work);
+    }
+
+    // Hands a finished result to the main thread; keep the work there down to setting views
+    public void postToMain(Runnable render) {
+        mainHandler.post(() -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            render.run();
+            long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+            mainThreadNanos += elapsed;
+            maxMainThreadNanos = Math.max(maxMainThreadNanos, elapsed);
+            resultCount++;
+            if (resultCount % LOG_EVERY_RESULTS == 0) {
+                Log.d(TAG, "Main thread per result: " + getMainThreadMicrosPerResult() + " us average, "
+                        + maxMainThreadNanos / 1000 + " us max over " + resultCount + " results");
+            }
+        });
+    }
+
+    // Main thread only
+    public long getMainThreadMicrosPerResult() {
+        return resultCount == 0 ? 0 : mainThreadNanos / resultCount / 1000;
+    }
+}
@@ -64,7 +64,7 @@ public class EmergencyContactsActivity extends AppCompatActivity {
         // Setup click listeners
         addButton.setOnClickListener(v -> addContact());
         contactsList.setOnItemLongClickListener((parent, view, position, id) -> {
-            showDeleteDialog(position);
+            showContactOptions(position);
             return true;
         });
 
@@ -96,13 +96,9 @@ public class EmergencyContactsActivity extends AppCompatActivity {
             return;
         }
 
-        // Check if we already have a contact
-        if (!contacts.isEmpty()) {
-            Toast.makeText(this, "Only one emergency contact is allowed", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        EmergencyContact contact = new EmergencyContact(name, phone, true); // Always set as primary
+        // Alerted after the contacts already saved, primary ones before all others; a long
+        // press on a contact moves it up or down
+        EmergencyContact contact = new EmergencyContact(name, phone, isPrimary, repository.getNextPriority());
         repository.addContact(contact);
         
         // Clear inputs
@@ -115,45 +111,59 @@ public class EmergencyContactsActivity extends AppCompatActivity {
     }
 
     private void loadContacts() {
+        // Listed in the order an SOS goes out; all of them are alerted at once
         contacts = repository.getContacts();
         adapter.clear();
         
-        for (EmergencyContact contact : contacts) {
-            String displayText = contact.getName() + " (" + contact.getPhoneNumber() + ") 🚨";
+        for (int i = 0; i < contacts.size(); i++) {
+            EmergencyContact contact = contacts.get(i);
+            String displayText = (i + 1) + ". " + contact.getName() + " (" + contact.getPhoneNumber() + ")"
+                    + (contact.isPrimary() ? " 🚨" : "");
             adapter.add(displayText);
         }
 
         if (contacts.isEmpty()) {
             adapter.add("No emergency contact added yet");
-            showAddContactForm();
-        } else {
-            hideAddContactForm();
+            // The first contact is primary unless unchecked
+            primaryCheckbox.setChecked(true);
         }
     }
 
-    private void showAddContactForm() {
-        addContactCard.setVisibility(View.VISIBLE);
-        nameInputLayout.setEnabled(true);
-        phoneInputLayout.setEnabled(true);
-        addButton.setEnabled(true);
-        primaryCheckbox.setChecked(true); // Always checked as primary
-        primaryCheckbox.setEnabled(false); // Cannot change primary status
-    }
-
-    private void hideAddContactForm() {
-        addContactCard.setVisibility(View.GONE);
-        Toast.makeText(this, "Maximum one emergency contact allowed", Toast.LENGTH_SHORT).show();
-    }
-
-    private void showDeleteDialog(int position) {
+    // Long press: change the contact's place in the alert order, or delete it
+    private void showContactOptions(int position) {
         if (contacts.isEmpty() || position >= contacts.size()) {
             return;
         }
 
         EmergencyContact contact = contacts.get(position);
+        String[] options = {"Move up", "Move down", "Delete"};
+        new AlertDialog.Builder(this)
+            .setTitle(contact.getName())
+            .setItems(options, (dialog, which) -> {
+                if (which == 2) {
+                    showDeleteDialog(contact);
+                } else {
+                    moveContact(contact, which == 0 ? -1 : 1);
+                }
+            })
+            .show();
+    }
+
+    private void moveContact(EmergencyContact contact, int direction) {
+        if (repository.moveContact(contact.getPhoneNumber(), direction)) {
+            loadContacts();
+        } else {
+            // Primary contacts always come first, so each kind is ordered among itself
+            Toast.makeText(this, contact.getName() + " is already " + (direction < 0 ? "first" : "last")
+                    + (contact.isPrimary() ? " of the primary contacts" : " of the other contacts"),
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void showDeleteDialog(EmergencyContact contact) {
         new AlertDialog.Builder(this)
             .setTitle("Delete Emergency Contact")
-            .setMessage("Are you sure you want to delete " + contact.getName() + "? You can add a different contact after deletion.")
+            .setMessage("Are you sure you want to delete " + contact.getName() + "? They will no longer receive SOS alerts.")
             .setPositiveButton("Delete", (dialog, which) -> {
                 repository.removeContact(contact.getPhoneNumber());
                 loadContacts();
@@ -0,0 +1,81 @@
+package com.example.safeharbor;
+
+import android.location.Location;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The one location stream of the process. LocationMonitoringService owns the only fused
+ * location subscription and publishes every delivered batch here; the UI, the border checks,
+ * SOS and anything else subscribe in-process instead of driving the GPS themselves, so they
+ * all see the same fixes.
+ *
+ * Batches are delivered on the {@link BorderEvaluator} thread, oldest fix first. Listeners do
+ * their work there and post only the finished result to the main thread.
+ */
+public final class LocationHub {
+    private static final LocationHub INSTANCE = new LocationHub();
+
+    public interface Listener {
+        void onLocations(List<Location> locations);
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Location lastLocation;
+    private volatile boolean interactive;
+    private volatile Runnable onDemandChanged;
+
+    private LocationHub() {
+    }
+
+    public static LocationHub getInstance() {
+        return INSTANCE;
+    }
+
+    public void subscribe(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Latest fix from the stream, null until the first one arrives
+    public Location getLastLocation() {
+        return lastLocation;
+    }
+
+    /**
+     * Whether someone is looking at live positions. While true the producer samples at its
+     * fastest rate rather than adapting the rate to the distance from the border.
+     */
+    public void setInteractive(boolean interactive) {
+        if (this.interactive != interactive) {
+            this.interactive = interactive;
+            Runnable callback = onDemandChanged;
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    // For the producer, to re-plan its sampling when setInteractive changes
+    void setOnDemandChanged(Runnable callback) {
+        onDemandChanged = callback;
+    }
+
+    void publish(List<Location> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        lastLocation = locations.get(locations.size() - 1);
+        for (Listener listener : listeners) {
+            listener.onLocations(locations);
+        }
+    }
+}
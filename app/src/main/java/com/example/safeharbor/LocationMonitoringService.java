@@ -11,7 +11,7 @@ import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Build;
 import android.os.IBinder;
-import android.os.PowerManager;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.util.Log;
@@ -20,6 +20,16 @@ import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 
+import com.example.safeharbor.geo.BatchQuery;
+import com.example.safeharbor.geo.BoundaryIndex;
+import com.example.safeharbor.geo.DistanceField;
+import com.example.safeharbor.geo.MaritimeZones;
+import com.example.safeharbor.geo.NearestSegmentTracker;
+import com.example.safeharbor.repository.BoundaryRepository;
+import com.example.safeharbor.track.TrackRecorder;
+import com.example.safeharbor.utils.SamplingScheduler;
+import com.example.safeharbor.utils.WakeWindow;
+
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
@@ -27,16 +37,7 @@ import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.Priority;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class LocationMonitoringService extends Service {
     private static final String TAG = "LocationService";
@@ -45,13 +46,22 @@ public class LocationMonitoringService extends Service {
     private static final long LOCATION_UPDATE_INTERVAL = 5000; // 5 seconds
     private static final double WARNING_DISTANCE_KM = 2.0; // 2 kilometers
     private static final double ALERT_DISTANCE_KM = 2.0; // 2 kilometers
+    // The alert rearms once the boat is this far out again, so GPS noise at 2 km cannot repeat it
+    private static final double REARM_DISTANCE_KM = 2.5;
 
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
     private Vibrator vibrator;
-    private Map<String, List<List<double[]>>> boundaries;
+    // International boundaries only; the baselines and the EEZ limit are no border to warn of
+    private BoundaryIndex boundaryIndex;
+    private NearestSegmentTracker nearestTracker;
+    private final SamplingScheduler samplingScheduler = new SamplingScheduler(ALERT_DISTANCE_KM);
+    private SamplingScheduler.Plan plannedSampling = SamplingScheduler.INITIAL;
+    private SamplingScheduler.Plan samplingPlan = SamplingScheduler.INITIAL;
+    private BoundaryRepository boundaryRepository;
     private boolean isAlertShowing = false;
-    private PowerManager.WakeLock wakeLock;
+    private WakeWindow wakeWindow;
+    private final BorderEvaluator evaluator = BorderEvaluator.getInstance();
 
     @Override
     public void onCreate() {
@@ -63,23 +73,21 @@ public class LocationMonitoringService extends Service {
         
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
-        boundaries = new HashMap<>();
-        loadBoundaries();
+        // Everything that touches the boundaries or the sampling plan runs on the evaluation
+        // thread, queued ahead of the first fix
+        evaluator.post(this::loadBoundaries);
+        // Every fix this service publishes also goes into the trip track
+        evaluator.post(() -> TrackRecorder.getInstance(this).start());
         setupLocationCallback();
-        acquireWakeLock();
-    }
-
-    private void acquireWakeLock() {
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "SafeHarbor:LocationService");
-        wakeLock.acquire();
-        Log.d(TAG, "Wake lock acquired");
+        // The CPU is only held awake while a delivered batch of fixes is being evaluated
+        wakeWindow = new WakeWindow(this, "SafeHarbor:LocationService");
+        LocationHub.getInstance().setOnDemandChanged(() -> evaluator.post(this::applySamplingPlan));
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "Service started");
-        startLocationUpdates();
+        evaluator.post(this::startLocationUpdates);
         return START_STICKY;
     }
 
@@ -125,27 +133,45 @@ public class LocationMonitoringService extends Service {
             @Override
             public void onLocationResult(LocationResult locationResult) {
                 if (locationResult == null) return;
-                
-                Location location = locationResult.getLastLocation();
-                if (location != null) {
-                    Log.d(TAG, "Location update: " + location.getLatitude() + ", " + location.getLongitude());
-                    checkLocationAgainstBoundaries(location);
-                }
+                wakeWindow.run(() -> onLocations(locationResult));
             }
         };
     }
 
+    // On the evaluation thread
+    private void onLocations(LocationResult locationResult) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        List<Location> locations = locationResult.getLocations();
+        if (locations.size() > 1) {
+            // A delayed batch, an earlier fix may have been closer to a border
+            checkBatchAgainstBoundaries(locations);
+        }
+        Location location = locationResult.getLastLocation();
+        if (location != null) {
+            Log.d(TAG, "Location update: " + location.getLatitude() + ", " + location.getLongitude());
+            checkLocationAgainstBoundaries(location);
+        }
+        // Every other consumer gets the same fixes from here
+        LocationHub.getInstance().publish(locations);
+        Log.d(TAG, "Evaluated " + locations.size() + " fixes in "
+                + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + " us");
+    }
+
     private void startLocationUpdates() {
         try {
-            LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, LOCATION_UPDATE_INTERVAL)
+            // Fixes are delivered as they are taken. The interval is already planned as half the
+            // time the boat needs to reach the alert distance, so any batching delay would come
+            // out of the other half; near the border there is none to spare, and far out the
+            // interval is long enough that one wake-up per fix costs next to nothing.
+            LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, samplingPlan.intervalMillis)
                 .setMinUpdateIntervalMillis(LOCATION_UPDATE_INTERVAL)
-                .setMaxUpdateDelayMillis(LOCATION_UPDATE_INTERVAL)
-                .setPriority(Priority.PRIORITY_HIGH_ACCURACY)
+                .setMaxUpdateDelayMillis(0)
                 .setMinUpdateDistanceMeters(0)
                 .build();
 
             if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-                fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, null);
+                // Callbacks arrive on the evaluation thread, never on the main looper
+                fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, evaluator.getLooper());
                 Log.d(TAG, "Location updates started");
             } else {
                 Log.e(TAG, "Location permission not granted");
@@ -159,16 +185,79 @@ public class LocationMonitoringService extends Service {
         double lat = location.getLatitude();
         double lon = location.getLongitude();
 
-        for (Map.Entry<String, List<List<double[]>>> entry : boundaries.entrySet()) {
-            String boundaryName = entry.getKey();
-            List<List<double[]>> boundarySegments = entry.getValue();
+        MaritimeZones zones = boundaryRepository.getMaritimeZones();
+        if (zones != null) {
+            Log.d(TAG, "Zone: " + zones.classify(lat, lon).getLabel());
+        }
+
+        // Far from every border the raster alone settles it, no exact search needed
+        DistanceField field = boundaryRepository.getDistanceField();
+        if (field != null) {
+            double lowerBound = field.lowerBoundKm(lat, lon);
+            if (lowerBound > ALERT_DISTANCE_KM) {
+                if (lowerBound > REARM_DISTANCE_KM) {
+                    isAlertShowing = false;
+                }
+                updateSamplingPlan(lowerBound, location);
+                return;
+            }
+        }
 
-            double distance = calculateDistanceToBoundary(lat, lon, boundarySegments);
+        // Consecutive fixes are close together, so the tracker rescans only nearby segments
+        double distance = nearestTracker.update(lat, lon);
+        updateSamplingPlan(distance, location);
+        if (distance <= ALERT_DISTANCE_KM) {
+            String boundaryName = boundaryIndex.getBoundaryName(nearestTracker.getBoundaryId());
             Log.d(TAG, "Distance to " + boundaryName + ": " + distance + " km");
-            
-            if (distance <= ALERT_DISTANCE_KM && distance > 0 && !isAlertShowing) {
+            if (!isAlertShowing) {
                 triggerAlert(boundaryName, distance);
             }
+        } else if (distance > REARM_DISTANCE_KM) {
+            isAlertShowing = false;
+        }
+    }
+
+    private void updateSamplingPlan(double distanceKm, Location location) {
+        plannedSampling = samplingScheduler.plan(distanceKm,
+                location.hasSpeed() ? location.getSpeed() : -1,
+                location.hasAccuracy() ? location.getAccuracy() : 0);
+        applySamplingPlan();
+    }
+
+    // Full rate while the UI shows live positions, otherwise whatever the last fix called for
+    private void applySamplingPlan() {
+        SamplingScheduler.Plan next = LocationHub.getInstance().isInteractive()
+                ? SamplingScheduler.INITIAL
+                : plannedSampling;
+        if (SamplingScheduler.shouldReschedule(samplingPlan, next)) {
+            Log.d(TAG, "Sampling " + next);
+            samplingPlan = next;
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+            startLocationUpdates();
+        }
+    }
+
+    private void checkBatchAgainstBoundaries(List<Location> locations) {
+        int count = locations.size();
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = locations.get(i).getLatitude();
+            lons[i] = locations.get(i).getLongitude();
+        }
+        double[] distances = new double[count];
+        int[] boundaryIds = new int[count];
+        BatchQuery.nearest(boundaryIndex, lats, lons, count, distances, boundaryIds);
+
+        int closest = 0;
+        for (int i = 1; i < count; i++) {
+            if (distances[i] < distances[closest]) {
+                closest = i;
+            }
+        }
+        Log.d(TAG, "Batch of " + count + " fixes, closest " + distances[closest] + " km");
+        if (distances[closest] <= ALERT_DISTANCE_KM && !isAlertShowing) {
+            triggerAlert(boundaryIndex.getBoundaryName(boundaryIds[closest]), distances[closest]);
         }
     }
 
@@ -223,145 +312,12 @@ public class LocationMonitoringService extends Service {
         return PendingIntent.getActivity(this, 0, alertIntent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
+    // Shared with the activity and the other services, loaded once per process
     private void loadBoundaries() {
-        // Load boundaries from CSV file
-        try {
-            InputStream is = getAssets().open("indian_cleaned.csv");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-            String line;
-            reader.readLine(); // Skip header
-
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\t");
-                if (parts.length >= 6) {
-                    String lineName = parts[0].trim();
-                    String coordinatesStr = parts[5].trim();
-                    List<double[]> coordinates = parseCoordinates(coordinatesStr);
-
-                    if (!coordinates.isEmpty()) {
-                        if (!boundaries.containsKey(lineName)) {
-                            boundaries.put(lineName, new ArrayList<>());
-                        }
-                        boundaries.get(lineName).add(coordinates);
-                    }
-                }
-            }
-            reader.close();
-        } catch (IOException e) {
-            Log.e(TAG, "Error loading boundaries", e);
-        }
-    }
-
-    private List<double[]> parseCoordinates(String coordinatesStr) {
-        List<double[]> coordinates = new ArrayList<>();
-        Pattern pattern = Pattern.compile("\\((\\d+\\.\\d+),\\s*(\\d+\\.\\d+)\\)");
-        Matcher matcher = pattern.matcher(coordinatesStr);
-
-        while (matcher.find()) {
-            try {
-                double lon = Double.parseDouble(matcher.group(1));
-                double lat = Double.parseDouble(matcher.group(2));
-                coordinates.add(new double[]{lat, lon});
-            } catch (NumberFormatException e) {
-                Log.e(TAG, "Error parsing coordinates", e);
-            }
-        }
-        return coordinates;
-    }
-
-    private double calculateDistanceToBoundary(double lat, double lon, List<List<double[]>> boundarySegments) {
-        double minDistance = Double.MAX_VALUE;
-
-        for (List<double[]> segment : boundarySegments) {
-            if (segment != null && segment.size() >= 2) {
-                double segmentDistance = calculateDistanceToLineString(lat, lon, segment);
-                if (segmentDistance < minDistance && segmentDistance > 0) {
-                    minDistance = segmentDistance;
-                }
-            }
-        }
-
-        return minDistance < Double.MAX_VALUE ? minDistance : 0;
-    }
-
-    private double calculateDistanceToLineString(double lat, double lon, List<double[]> lineString) {
-        double minDistance = Double.MAX_VALUE;
-
-        for (int i = 0; i < lineString.size() - 1; i++) {
-            double[] p1 = lineString.get(i);
-            double[] p2 = lineString.get(i + 1);
-
-            if (p1 != null && p2 != null && p1.length >= 2 && p2.length >= 2) {
-                double distance = distanceToLineSegment(lat, lon, p1[0], p1[1], p2[0], p2[1]);
-                if (distance < minDistance) {
-                    minDistance = distance;
-                }
-            }
-        }
-
-        return minDistance;
-    }
-
-    private double distanceToLineSegment(double lat, double lon, double lat1, double lon1, double lat2, double lon2) {
-        final int EARTH_RADIUS = 6371;
-
-        double d1 = calculateHaversineDistance(lat, lon, lat1, lon1);
-        double d2 = calculateHaversineDistance(lat, lon, lat2, lon2);
-
-        double segmentLength = calculateHaversineDistance(lat1, lon1, lat2, lon2);
-        if (segmentLength < 0.1) {
-            return Math.min(d1, d2);
-        }
-
-        double[] p = getCartesian(lat, lon, EARTH_RADIUS);
-        double[] p1 = getCartesian(lat1, lon1, EARTH_RADIUS);
-        double[] p2 = getCartesian(lat2, lon2, EARTH_RADIUS);
-
-        double[] v = {p2[0] - p1[0], p2[1] - p1[1], p2[2] - p1[2]};
-        double[] w = {p[0] - p1[0], p[1] - p1[1], p[2] - p1[2]};
-
-        double c1 = dot(w, v);
-        double c2 = dot(v, v);
-
-        if (c1 <= 0) return d1;
-        if (c2 <= c1) return d2;
-
-        double b = c1 / c2;
-        double[] pb = {p1[0] + b * v[0], p1[1] + b * v[1], p1[2] + b * v[2]};
-
-        return Math.sqrt(
-            Math.pow(p[0] - pb[0], 2) +
-            Math.pow(p[1] - pb[1], 2) +
-            Math.pow(p[2] - pb[2], 2)
-        );
-    }
-
-    private double dot(double[] a, double[] b) {
-        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
-    }
-
-    private double[] getCartesian(double lat, double lon, double radius) {
-        double latRad = Math.toRadians(lat);
-        double lonRad = Math.toRadians(lon);
-        double x = radius * Math.cos(latRad) * Math.cos(lonRad);
-        double y = radius * Math.cos(latRad) * Math.sin(lonRad);
-        double z = radius * Math.sin(latRad);
-        return new double[]{x, y, z};
-    }
-
-    private double calculateHaversineDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int EARTH_RADIUS = 6371;
-
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-            + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-            * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return EARTH_RADIUS * c;
+        boundaryRepository = BoundaryRepository.getInstance(this);
+        boundaryIndex = boundaryRepository.await().internationalIndex;
+        nearestTracker = new NearestSegmentTracker(boundaryIndex);
+        Log.d(TAG, "Indexed " + boundaryIndex.getSegmentCount() + " international boundary segments");
     }
 
     @Override
@@ -373,9 +329,12 @@ public class LocationMonitoringService extends Service {
         if (vibrator != null) {
             vibrator.cancel();
         }
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
-            Log.d(TAG, "Wake lock released");
+        LocationHub.getInstance().setOnDemandChanged(null);
+        evaluator.post(() -> TrackRecorder.getInstance(this).stop());
+        if (wakeWindow != null) {
+            // After any batch still queued on the evaluation thread
+            WakeWindow window = wakeWindow;
+            evaluator.post(window::finish);
         }
         Log.d(TAG, "Service destroyed");
     }
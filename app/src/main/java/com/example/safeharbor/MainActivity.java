@@ -3,11 +3,10 @@ package com.example.safeharbor;
 import android.Manifest;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.media.MediaPlayer;
-import android.os.Build;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
@@ -19,55 +18,57 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.FileProvider;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
-import com.example.safeharbor.service.BorderMonitoringService;
-import com.example.safeharbor.service.NetworkMonitorService;
+import com.example.safeharbor.geo.BoundaryIndex;
+import com.example.safeharbor.geo.BoundaryLevels;
+import com.example.safeharbor.geo.MaritimeZones;
+import com.example.safeharbor.repository.BoundaryRepository;
 import com.example.safeharbor.service.SOSService;
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.Priority;
+import com.example.safeharbor.sos.SosBeacon;
+import com.example.safeharbor.track.TrackPoint;
+import com.example.safeharbor.track.TrackRecorder;
 import com.google.android.gms.tasks.OnSuccessListener;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
-    private static final long LOCATION_UPDATE_INTERVAL = 5000; // 5 seconds
     private static final double WARNING_DISTANCE_KM = 35;
     private static final String TAG = "SafeHarbor";
-    private static final String PREFS_NAME = "SafeHarborPrefs";
-    private static final String KEY_LAST_LAT = "last_latitude";
-    private static final String KEY_LAST_LON = "last_longitude";
-    private static final String KEY_LAST_UPDATE = "last_update_time";
     private static final long MAX_LOCATION_AGE = 30 * 60 * 1000; // 30 minutes
-
-    private FusedLocationProviderClient fusedLocationClient;
-    private LocationCallback locationCallback;
+    private static final String CACHED_PROVIDER = "cached";
+
+    // Fixes come from LocationMonitoringService, the only GPS subscriber in the app, on the
+    // evaluation thread
+    private final LocationHub.Listener locationListener = locations -> {
+        Location location = locations.get(locations.size() - 1);
+        updateLocationInfo(location);
+    };
+    private final BorderEvaluator evaluator = BorderEvaluator.getInstance();
+    private final StartupOrchestrator startup = StartupOrchestrator.getInstance();
     private TextView tvLocation;
     private TextView tvCountry;
     private TextView tvDistance;
     private TextView tvWarning;
-    private Map<String, List<List<double[]>>> boundaries;
+    // Loaded and used on the evaluation thread only
+    private BoundaryIndex boundaryIndex;
+    private BoundaryLevels boundaryLevels;
+    private BoundaryRepository boundaryRepository;
     private View alertLayout;
     private TextView distanceWarningText;
     private Button btnDismissAlert;
@@ -89,24 +90,20 @@ public class MainActivity extends AppCompatActivity {
             initializeViews();
             Log.d(TAG, "Views initialized");
 
-            setupLocation();
-            Log.d(TAG, "Location client setup");
-
             setupAlert();
             Log.d(TAG, "Alert setup completed");
 
-            loadBoundaries();
-            Log.d(TAG, "Border data loaded");
+            // Queued ahead of the subscription onResume posts, so no fix reaches this activity
+            // before its boundaries are loaded
+            evaluator.post(this::loadBoundaries);
 
             checkLocationPermission();
             Log.d(TAG, "Location permission check completed");
 
-            // Start network monitoring service
-            startService(new Intent(this, NetworkMonitorService.class));
-
             // Initialize SOS button
             Button sosButton = findViewById(R.id.sosButton);
             sosButton.setOnClickListener(v -> triggerSOS());
+            sosButton.setOnLongClickListener(v -> confirmStopTracking());
 
             // Initialize emergency contacts button
             Button emergencyContactsButton = findViewById(R.id.emergencyContactsButton);
@@ -115,11 +112,11 @@ public class MainActivity extends AppCompatActivity {
                 startActivity(intent);
             });
 
-            // Start the background service
-            startLocationMonitoringService();
+            Button shareTrackButton = findViewById(R.id.shareTrackButton);
+            shareTrackButton.setOnClickListener(v -> shareTrack());
 
-            // Start border monitoring service
-            startBorderMonitoring();
+            // Normally already done by the splash screen, but this activity can be opened directly
+            startup.startServices(this);
 
         } catch (Exception e) {
             Log.e(TAG, "Error in onCreate", e);
@@ -192,301 +189,137 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void setupLocation() {
-        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
-        setupLocationCallback();
-        checkLocationPermission();
-    }
-
-    private void setupLocationCallback() {
-        locationCallback = new LocationCallback() {
-            @Override
-            public void onLocationResult(@NonNull LocationResult locationResult) {
-                Location location = locationResult.getLastLocation();
-                if (location != null) {
-                    updateLocationInfo(location);
-                    saveLastKnownLocation(location);
-                }
-            }
-        };
-    }
-
     private void checkLocationPermission() {
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.ACCESS_FINE_LOCATION}, LOCATION_PERMISSION_REQUEST_CODE);
-        } else {
-            startLocationUpdates();
         }
     }
 
-    private void startLocationUpdates() {
-        try {
-            LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, LOCATION_UPDATE_INTERVAL)
-                    .setMinUpdateIntervalMillis(LOCATION_UPDATE_INTERVAL)
-                    .build();
-
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-                fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, null);
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error starting location updates: " + e.getMessage());
+    // What one fix means for the screen, worked out off the main thread
+    private static final class BorderStatus {
+        final String locationText;
+        final String distancesText;
+        final String zoneText;
+        final double minDistanceKm;
+        final boolean offline;
+        final long fixTime;
+
+        BorderStatus(String locationText, String distancesText, String zoneText, double minDistanceKm,
+                     boolean offline, long fixTime) {
+            this.locationText = locationText;
+            this.distancesText = distancesText;
+            this.zoneText = zoneText;
+            this.minDistanceKm = minDistanceKm;
+            this.offline = offline;
+            this.fixTime = fixTime;
         }
     }
 
+    // On the evaluation thread; only the finished BorderStatus goes to the main thread
     private void updateLocationInfo(Location location) {
         if (location == null) {
-            loadLastKnownLocation();
+            showLastKnownLocation();
             return;
         }
+        BorderStatus status = evaluate(location);
+        evaluator.postToMain(() -> showBorderStatus(status));
+    }
 
-                double lat = location.getLatitude();
-                double lon = location.getLongitude();
+    private BorderStatus evaluate(Location location) {
+        double lat = location.getLatitude();
+        double lon = location.getLongitude();
 
-        // Check if we're offline
-        boolean isOffline = !NetworkUtils.isNetworkAvailable(this);
-        if (isOffline) {
-            showOfflineWarning(System.currentTimeMillis() - location.getTime());
-        } else {
-            offlineBar.setVisibility(View.GONE);
-        }
+        // A cached fix is as stale as being offline
+        boolean isOffline = !NetworkUtils.isNetworkAvailable(this) || CACHED_PROVIDER.equals(location.getProvider());
 
-        // Calculate distances to each boundary
-        double distanceToSriLanka = 0;
-        double distanceToMaldives = 0;
-        double distanceToBangladesh = 0;
+        // Calculate distances to each boundary, POSITIVE_INFINITY means no data
+        double distanceToSriLanka = Double.POSITIVE_INFINITY;
+        double distanceToMaldives = Double.POSITIVE_INFINITY;
+        double distanceToBangladesh = Double.POSITIVE_INFINITY;
 
-        if (boundaries.isEmpty()) {
+        if (boundaryIndex.isEmpty()) {
             Log.w(TAG, "No boundaries found! Using sample data for testing");
             distanceToSriLanka = 500;
             distanceToMaldives = 800;
             distanceToBangladesh = 1200;
         } else {
             try {
-                List<List<double[]>> sriLankaBoundary = boundaries.get("Sri Lanka - India");
-                if (sriLankaBoundary != null && !sriLankaBoundary.isEmpty()) {
-                    distanceToSriLanka = calculateDistanceToBoundary(lat, lon, sriLankaBoundary);
-                }
-
-                List<List<double[]>> maldivesBoundary = boundaries.get("Maldives - India");
-                if (maldivesBoundary != null && !maldivesBoundary.isEmpty()) {
-                    distanceToMaldives = calculateDistanceToBoundary(lat, lon, maldivesBoundary);
-                }
-
-                List<List<double[]>> bangladeshBoundary = boundaries.get("Bangladesh - India");
-                if (bangladeshBoundary != null && !bangladeshBoundary.isEmpty()) {
-                    distanceToBangladesh = calculateDistanceToBoundary(lat, lon, bangladeshBoundary);
-                }
+                // Exact inside the warning distance, from the simplified boundaries beyond it
+                distanceToSriLanka = boundaryLevels.distanceKm(lat, lon, "Sri Lanka - India", WARNING_DISTANCE_KM);
+                distanceToMaldives = boundaryLevels.distanceKm(lat, lon, "Maldives - India", WARNING_DISTANCE_KM);
+                distanceToBangladesh = boundaryLevels.distanceKm(lat, lon, "Bangladesh - India", WARNING_DISTANCE_KM);
             } catch (Exception e) {
                 Log.e(TAG, "Error calculating distances: " + e.getMessage());
             }
         }
 
         // Format the distance strings
-        String sriLankaDistStr = distanceToSriLanka > 0 ? String.format("%.2f km", distanceToSriLanka) : "N/A";
-        String maldivesDistStr = distanceToMaldives > 0 ? String.format("%.2f km", distanceToMaldives) : "N/A";
-        String bangladeshDistStr = distanceToBangladesh > 0 ? String.format("%.2f km", distanceToBangladesh) : "N/A";
+        String sriLankaDistStr = formatDistance(distanceToSriLanka);
+        String maldivesDistStr = formatDistance(distanceToMaldives);
+        String bangladeshDistStr = formatDistance(distanceToBangladesh);
 
-        // Update UI with location and distance information
-        tvLocation.setText(String.format("Location: %.6f, %.6f", lat, lon));
-        tvCountry.setText(String.format("Distance to Sri Lanka: %s\nDistance to Maldives: %s\nDistance to Bangladesh: %s",
-                sriLankaDistStr, maldivesDistStr, bangladeshDistStr));
+        MaritimeZones zones = boundaryRepository.getMaritimeZones();
+        String zoneText = zones != null ? "Zone: " + zones.classify(lat, lon).getLabel() : "Zone: loading...";
 
-        // Check if any distance is within warning threshold
+        // Being on the line counts as 0 km
         double minDistance = Math.min(Math.min(distanceToSriLanka, distanceToMaldives), distanceToBangladesh);
-        if (minDistance <= WARNING_DISTANCE_KM && minDistance > 0) {
-            showAlert(minDistance);
-            } else {
-            hideAlert();
-        }
-    }
-
-    private void loadBoundaries() {
-        boundaries = loadBoundariesFromCSV("indian_cleaned.csv");
-        if (boundaries.isEmpty()) {
-            Log.w(TAG, "No boundaries loaded, using test data");
-            addTestBoundaries(boundaries);
-        }
-    }
-
-    private double calculateDistanceToBoundary(double lat, double lon, List<List<double[]>> boundarySegments) {
-        if (boundarySegments == null || boundarySegments.isEmpty()) {
-            return Double.MAX_VALUE;
-        }
-
-        double minDistance = Double.MAX_VALUE;
 
-        for (List<double[]> segment : boundarySegments) {
-            if (segment != null && segment.size() >= 2) {
-                double segmentDistance = calculateDistanceToLineString(lat, lon, segment);
-                if (segmentDistance < minDistance && segmentDistance > 0) {
-                    minDistance = segmentDistance;
-                }
-            }
-        }
-
-        return minDistance < Double.MAX_VALUE ? minDistance : 0;
+        return new BorderStatus(
+                String.format("Location: %.6f, %.6f", lat, lon),
+                String.format("Distance to Sri Lanka: %s\nDistance to Maldives: %s\nDistance to Bangladesh: %s",
+                        sriLankaDistStr, maldivesDistStr, bangladeshDistStr),
+                zoneText, minDistance, isOffline, location.getTime());
     }
 
-    private double calculateDistanceToLineString(double lat, double lon, List<double[]> lineString) {
-        if (lineString == null || lineString.size() < 2) {
-            return Double.MAX_VALUE;
+    // On the main thread, nothing here but views
+    private void showBorderStatus(BorderStatus status) {
+        if (isDestroyed()) {
+            return;
         }
-
-        double minDistance = Double.MAX_VALUE;
-
-        for (int i = 0; i < lineString.size() - 1; i++) {
-            double[] p1 = lineString.get(i);
-            double[] p2 = lineString.get(i + 1);
-
-            if (p1 != null && p2 != null && p1.length >= 2 && p2.length >= 2) {
-                double distance = distanceToLineSegment(lat, lon, p1[0], p1[1], p2[0], p2[1]);
-                if (distance < minDistance) {
-                    minDistance = distance;
-                }
-            }
+        startup.onDistanceShown();
+        if (status.offline) {
+            showOfflineWarning(System.currentTimeMillis() - status.fixTime);
+        } else {
+            offlineBar.setVisibility(View.GONE);
         }
 
-        return minDistance;
-    }
-
-    private double distanceToLineSegment(double lat, double lon, double lat1, double lon1, double lat2, double lon2) {
-        final int EARTH_RADIUS = 6371;
-
-        double d1 = calculateHaversineDistance(lat, lon, lat1, lon1);
-        double d2 = calculateHaversineDistance(lat, lon, lat2, lon2);
+        tvLocation.setText(status.locationText);
+        tvCountry.setText(status.distancesText);
+        tvDistance.setText(status.zoneText);
 
-        double segmentLength = calculateHaversineDistance(lat1, lon1, lat2, lon2);
-        if (segmentLength < 0.1) {
-            return Math.min(d1, d2);
+        // Check if any distance is within warning threshold
+        if (status.minDistanceKm <= WARNING_DISTANCE_KM) {
+            showAlert(status.minDistanceKm);
+        } else {
+            hideAlert();
         }
-
-        double[] p = getCartesian(lat, lon, EARTH_RADIUS);
-        double[] p1 = getCartesian(lat1, lon1, EARTH_RADIUS);
-        double[] p2 = getCartesian(lat2, lon2, EARTH_RADIUS);
-
-        double[] v = {p2[0] - p1[0], p2[1] - p1[1], p2[2] - p1[2]};
-        double[] w = {p[0] - p1[0], p[1] - p1[1], p[2] - p1[2]};
-
-        double c1 = dot(w, v);
-        double c2 = dot(v, v);
-
-        if (c1 <= 0) return d1;
-        if (c2 <= c1) return d2;
-
-        double b = c1 / c2;
-        double[] pb = {p1[0] + b * v[0], p1[1] + b * v[1], p1[2] + b * v[2]};
-
-        return Math.sqrt(
-                Math.pow(p[0] - pb[0], 2) +
-                Math.pow(p[1] - pb[1], 2) +
-                Math.pow(p[2] - pb[2], 2)
-        );
     }
 
-    private double dot(double[] a, double[] b) {
-        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
-    }
-
-    private double[] getCartesian(double lat, double lon, double radius) {
-        double latRad = Math.toRadians(lat);
-        double lonRad = Math.toRadians(lon);
-        double x = radius * Math.cos(latRad) * Math.cos(lonRad);
-        double y = radius * Math.cos(latRad) * Math.sin(lonRad);
-        double z = radius * Math.sin(latRad);
-        return new double[] {x, y, z};
-    }
-
-    private double calculateHaversineDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int EARTH_RADIUS = 6371;
-
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return EARTH_RADIUS * c;
-    }
-
-    private Map<String, List<List<double[]>>> loadBoundariesFromCSV(String csvFileName) {
-        Map<String, List<List<double[]>>> boundaries = new HashMap<>();
-
-        try {
-            InputStream is = getAssets().open(csvFileName);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-
-            String line;
-            reader.readLine(); // Skip header
-
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\t");
-                if (parts.length >= 6) {
-                    String lineName = parts[0].trim();
-                    String coordinatesStr = parts[5].trim();
-                    List<double[]> coordinates = parseCoordinates(coordinatesStr);
-
-                    if (!coordinates.isEmpty()) {
-                        if (!boundaries.containsKey(lineName)) {
-                            boundaries.put(lineName, new ArrayList<>());
-                        }
-                        boundaries.get(lineName).add(coordinates);
-                    }
-                }
-            }
-
-            reader.close();
-        } catch (IOException e) {
-            Log.e(TAG, "Error loading CSV: " + e.getMessage());
+    private String formatDistance(double distanceKm) {
+        if (Double.isInfinite(distanceKm)) {
+            return "N/A";
         }
-
-        return boundaries;
+        // Beyond the warning distance the value may be off by a few km, see BoundaryLevels
+        return distanceKm > WARNING_DISTANCE_KM
+                ? String.format("~%.0f km", distanceKm)
+                : String.format("%.2f km", distanceKm);
     }
 
-    private List<double[]> parseCoordinates(String coordinatesStr) {
-        List<double[]> coordinates = new ArrayList<>();
-
-        if (coordinatesStr == null || coordinatesStr.isEmpty()) {
-            return coordinates;
-        }
-
-        try {
-            Pattern pattern = Pattern.compile("\\((\\d+\\.\\d+),\\s*(\\d+\\.\\d+)\\)");
-            Matcher matcher = pattern.matcher(coordinatesStr);
-
-            while (matcher.find()) {
-                try {
-                    double lon = Double.parseDouble(matcher.group(1));
-                    double lat = Double.parseDouble(matcher.group(2));
-                    coordinates.add(new double[] { lat, lon });
-                } catch (NumberFormatException e) {
-                    Log.e(TAG, "Failed to parse coordinate values: " + e.getMessage());
-                }
-            }
-
-            if (coordinates.isEmpty()) {
-                String[] parts = coordinatesStr.split("\\),\\s*\\(");
-                for (String part : parts) {
-                    part = part.replaceAll("[\\[\\]\\(\\)]", "").trim();
-                    String[] coords = part.split(",");
-                    if (coords.length >= 2) {
-                        try {
-                            double lon = Double.parseDouble(coords[0].trim());
-                            double lat = Double.parseDouble(coords[1].trim());
-                            coordinates.add(new double[] { lat, lon });
-                        } catch (NumberFormatException e) {
-                            Log.e(TAG, "Failed to parse alternative coordinate format: " + e.getMessage());
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing coordinates: " + e.getMessage());
+    // Shared with the services, loaded once per process
+    private void loadBoundaries() {
+        boundaryRepository = BoundaryRepository.getInstance(this);
+        BoundaryRepository.Snapshot snapshot = boundaryRepository.await();
+        boundaryIndex = snapshot.index;
+        boundaryLevels = snapshot.levels;
+        if (boundaryIndex.isEmpty()) {
+            Log.w(TAG, "No boundaries loaded, using test data");
+            Map<String, List<List<double[]>>> boundaries = new HashMap<>();
+            addTestBoundaries(boundaries);
+            boundaryIndex = BoundaryIndex.fromMap(boundaries);
+            boundaryLevels = BoundaryLevels.exactOnly(boundaryIndex);
         }
-
-        return coordinates;
+        Log.d(TAG, "Indexed " + boundaryIndex.getSegmentCount() + " boundary segments, coarsest level "
+                + boundaryLevels.getLevel(0).getSegmentCount());
     }
 
     private void addTestBoundaries(Map<String, List<List<double[]>>> boundaries) {
@@ -609,35 +442,29 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void saveLastKnownLocation(Location location) {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putFloat(KEY_LAST_LAT, (float) location.getLatitude());
-        editor.putFloat(KEY_LAST_LON, (float) location.getLongitude());
-        editor.putLong(KEY_LAST_UPDATE, location.getTime());
-        editor.apply();
-    }
-
-    private void loadLastKnownLocation() {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        float lat = prefs.getFloat(KEY_LAST_LAT, 0);
-        float lon = prefs.getFloat(KEY_LAST_LON, 0);
-        long lastUpdate = prefs.getLong(KEY_LAST_UPDATE, 0);
-
-        if (lat != 0 && lon != 0) {
-            long age = System.currentTimeMillis() - lastUpdate;
-            if (age <= MAX_LOCATION_AGE) {
-                Location location = new Location("cached");
-                location.setLatitude(lat);
-                location.setLongitude(lon);
-                location.setTime(lastUpdate);
-                updateLocationInfo(location);
-                showOfflineWarning(age);
-            } else {
+    // On the evaluation thread, until the first fix: the newer of the platform's position from
+    // before this process started and the last fix recorded in the trip track
+    private void showLastKnownLocation() {
+        Location location = startup.getWarmLocation();
+        TrackPoint recorded = TrackRecorder.getInstance(this).getLast();
+        if (recorded != null && (location == null || recorded.timeMillis > location.getTime())) {
+            location = new Location(CACHED_PROVIDER);
+            location.setLatitude(recorded.getLatitude());
+            location.setLongitude(recorded.getLongitude());
+            location.setTime(recorded.timeMillis);
+        }
+        if (location == null) {
+            return;
+        }
+        if (System.currentTimeMillis() - location.getTime() <= MAX_LOCATION_AGE) {
+            // Shown with the offline warning, the cached fix marks itself stale
+            updateLocationInfo(location);
+        } else {
+            evaluator.postToMain(() -> {
                 tvLocation.setText("Location data too old");
                 tvCountry.setText("Please enable location services");
                 tvDistance.setText("Distance: N/A");
-            }
+            });
         }
     }
 
@@ -658,7 +485,10 @@ public class MainActivity extends AppCompatActivity {
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == LOCATION_PERMISSION_REQUEST_CODE && grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-            startLocationUpdates();
+            // The service could not start without the permission, start it now
+            if (!startup.startLocationMonitoring(this)) {
+                Log.e(TAG, "Location monitoring service did not start");
+            }
         } else {
             Toast.makeText(this, "Location permission denied", Toast.LENGTH_SHORT).show();
             tvLocation.setText("Location permission denied");
@@ -670,17 +500,23 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        if (fusedLocationClient != null && locationCallback != null) {
-            fusedLocationClient.removeLocationUpdates(locationCallback);
-        }
+        LocationHub hub = LocationHub.getInstance();
+        // Kept in order with the subscription onResume posts
+        evaluator.post(() -> hub.unsubscribe(locationListener));
+        hub.setInteractive(false);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            startLocationUpdates();
-        }
+        LocationHub hub = LocationHub.getInstance();
+        // On the evaluation thread, behind loadBoundaries; a fix being published right now
+        // would otherwise reach the listener before the boundaries are there
+        evaluator.post(() -> {
+            hub.subscribe(locationListener);
+            updateLocationInfo(hub.getLastLocation());
+        });
+        hub.setInteractive(true);
     }
 
     @Override
@@ -695,21 +531,6 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void startLocationMonitoringService() {
-        try {
-            Intent serviceIntent = new Intent(this, LocationMonitoringService.class);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                startForegroundService(serviceIntent);
-            } else {
-                startService(serviceIntent);
-            }
-            Log.d(TAG, "Location monitoring service started");
-        } catch (Exception e) {
-            Log.e(TAG, "Error starting location monitoring service", e);
-            Toast.makeText(this, "Error starting background monitoring", Toast.LENGTH_SHORT).show();
-        }
-    }
-
     private void triggerSOS() {
         Intent sosIntent = new Intent(this, SOSService.class);
         sosIntent.setAction("SEND_SOS");
@@ -717,8 +538,61 @@ public class MainActivity extends AppCompatActivity {
         Toast.makeText(this, "Sending SOS alert...", Toast.LENGTH_LONG).show();
     }
 
-    private void startBorderMonitoring() {
-        Intent monitoringIntent = new Intent(this, BorderMonitoringService.class);
-        startService(monitoringIntent);
+    // Exports the current or last trip off the main thread, then offers it to other apps
+    private void shareTrack() {
+        File dir = new File(getCacheDir(), "tracks");
+        TrackRecorder recorder = TrackRecorder.getInstance(this);
+        new Thread(() -> {
+            List<File> files;
+            try {
+                files = recorder.exportLatestTrip(dir);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Could not export the track", e);
+                files = null;
+            }
+            List<File> exported = files;
+            runOnUiThread(() -> {
+                if (exported == null) {
+                    Toast.makeText(this, "Could not export the trip track", Toast.LENGTH_LONG).show();
+                } else if (exported.isEmpty()) {
+                    Toast.makeText(this, "No trip track recorded yet", Toast.LENGTH_LONG).show();
+                } else {
+                    startShare(exported);
+                }
+            });
+        }, "TrackExport").start();
+    }
+
+    // GPX for chart plotters and GPS tools, GeoJSON for web maps
+    private void startShare(List<File> files) {
+        ArrayList<Uri> uris = new ArrayList<>(files.size());
+        for (File file : files) {
+            uris.add(FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", file));
+        }
+        Intent share = new Intent(Intent.ACTION_SEND_MULTIPLE)
+                .setType("*/*")
+                .putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris)
+                .putExtra(Intent.EXTRA_SUBJECT, "SafeHarbor trip track")
+                .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(Intent.createChooser(share, "Share trip track"));
+    }
+
+    // Long press on the SOS button ends the position updates that follow an SOS
+    private boolean confirmStopTracking() {
+        if (!SosBeacon.getInstance(this).isActive()) {
+            return false;
+        }
+        new AlertDialog.Builder(this)
+            .setTitle("Stop SOS Tracking")
+            .setMessage("Your emergency contacts will no longer receive position updates.")
+            .setPositiveButton("Stop", (dialog, which) -> {
+                Intent stopIntent = new Intent(this, SOSService.class);
+                stopIntent.setAction("STOP_SOS_TRACKING");
+                startService(stopIntent);
+                Toast.makeText(this, "SOS tracking stopped", Toast.LENGTH_SHORT).show();
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+        return true;
     }
 }
@@ -2,49 +2,246 @@ package com.example.safeharbor;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.telephony.SmsManager;
-import android.widget.Toast;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
-import java.util.HashSet;
+import com.example.safeharbor.sos.SmsDispatcher;
+import com.example.safeharbor.sos.SosOutbox;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 
+/**
+ * The one place undelivered SOS messages are kept, backed by the {@link SosOutbox} journal in
+ * filesDir. Messages are saved before they are sent and removed once the network reports them
+ * delivered or they are given up on, so both SOSService and the retry on reconnect work from
+ * the same queue; the sending itself is {@link SmsDispatcher}'s.
+ */
 public class OfflineMessageStore {
+    private static final String TAG = "OfflineMessageStore";
 
     private static final String PREFS_NAME = "OfflineMessages";
+    // Where messages were kept before the journal, as a set of "number||message" or
+    // "number;;message"; a set drops repeats and keeps no order
     private static final String KEY_MESSAGES = "messages";
+    // Where they go when the journal cannot be written: a JSON array of
+    // {"number", "message", "time"}, oldest first
+    private static final String KEY_FALLBACK = "fallback";
 
-    // Save message to SharedPreferences
-    public static void saveMessage(Context context, String phoneNumber, String message) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        Set<String> messages = prefs.getStringSet(KEY_MESSAGES, new HashSet<>());
+    private static SosOutbox outbox;
+    // Messages went to the fallback since the journal was opened and wait to be moved back
+    private static boolean fallbackWaiting;
+
+    /**
+     * The journal, opened on first use with any messages kept in the preferences moved into it.
+     * Messages that went to the fallback later are moved in as soon as the journal takes
+     * writes again, and handed to {@link SmsDispatcher} to send.
+     */
+    public static synchronized SosOutbox getOutbox(Context context) throws IOException {
+        if (outbox == null) {
+            File file = new File(context.getFilesDir(), SosOutbox.FILE_NAME);
+            SosOutbox opened;
+            try {
+                opened = SosOutbox.open(file);
+            } catch (IOException e) {
+                // Keep the unreadable journal for inspection and start a new one
+                Log.e(TAG, "Unreadable outbox, setting it aside", e);
+                file.renameTo(new File(file.getPath() + ".corrupt-" + System.currentTimeMillis()));
+                opened = SosOutbox.open(file);
+            }
+            if (opened.getDiscardedBytes() > 0) {
+                Log.w(TAG, "Outbox had a torn tail of " + opened.getDiscardedBytes() + " bytes");
+            }
+            // Only kept once the older messages are in, so a move that fails is tried again on
+            // the next call; what it moved before failing is sent twice at worst
+            int moved;
+            try {
+                moved = migrateLegacyMessages(context, opened);
+            } catch (IOException e) {
+                try {
+                    opened.close();
+                } catch (IOException closeError) {
+                    Log.w(TAG, "Could not close the outbox", closeError);
+                }
+                throw e;
+            }
+            outbox = opened;
+            fallbackWaiting = false;
+            if (moved > 0) {
+                dispatchMoved(context);
+            }
+        } else if (fallbackWaiting) {
+            try {
+                int moved = migrateFallbackMessages(context, outbox);
+                fallbackWaiting = false;
+                if (moved > 0) {
+                    dispatchMoved(context);
+                }
+            } catch (IOException e) {
+                // Still not writable; the caller finds out for itself
+                Log.w(TAG, "Could not move fallback messages into the outbox yet", e);
+            }
+        }
+        return outbox;
+    }
+
+    // Queued, since this may be called from inside the dispatcher itself
+    private static void dispatchMoved(Context context) {
+        Context appContext = context.getApplicationContext();
+        new Handler(Looper.getMainLooper()).post(() -> SmsDispatcher.getInstance(appContext).resumePending());
+    }
+
+    /**
+     * Saves a message until it is sent and returns its sequence number. The message is on disk
+     * when this returns. If the journal cannot be written it goes to an ordered list in the
+     * preferences instead, which is moved into the journal once it takes writes again, and -1
+     * is returned.
+     */
+    public static long saveMessage(Context context, String phoneNumber, String message) {
+        try {
+            return getOutbox(context).enqueue(phoneNumber, message, System.currentTimeMillis());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not journal SOS message, keeping it in preferences", e);
+            saveFallback(context, phoneNumber, message, System.currentTimeMillis());
+            return -1;
+        }
+    }
+
+    // The same message for several recipients, journaled together; -1 where it is not
+    public static long[] saveMessages(Context context, List<String> phoneNumbers, String message) {
+        try {
+            return getOutbox(context).enqueueAll(phoneNumbers, message, System.currentTimeMillis());
+        } catch (IOException e) {
+            long[] seqs = new long[phoneNumbers.size()];
+            for (int i = 0; i < seqs.length; i++) {
+                seqs[i] = saveMessage(context, phoneNumbers.get(i), message);
+            }
+            return seqs;
+        }
+    }
+
+    // Once the network reports a message delivered
+    public static void markDelivered(Context context, long seq) {
+        if (seq < 0) {
+            return;
+        }
+        try {
+            getOutbox(context).remove(seq);
+        } catch (IOException e) {
+            // Only costs a duplicate SMS on the next retry
+            Log.e(TAG, "Could not mark message " + seq + " as delivered", e);
+        }
+    }
 
-        Set<String> updatedMessages = new HashSet<>(messages);
-        updatedMessages.add(phoneNumber + ";;" + message);
+    // Once a message will not be tried again
+    public static void markGivenUp(Context context, long seq, String reason) {
+        if (seq < 0) {
+            return;
+        }
+        try {
+            getOutbox(context).giveUp(seq, reason);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not mark message " + seq + " as given up", e);
+        }
+    }
 
-        prefs.edit().putStringSet(KEY_MESSAGES, updatedMessages).apply();
+    // Progress of a pending message, so a restarted process carries on from it
+    public static void recordAttempt(Context context, long seq, int attempts, int sends, long nextAttemptMillis) {
+        if (seq < 0) {
+            return;
+        }
+        try {
+            getOutbox(context).recordAttempt(seq, attempts, sends, nextAttemptMillis);
+        } catch (IOException e) {
+            // Only costs an attempt more after a restart
+            Log.e(TAG, "Could not record attempt " + attempts + " of message " + seq, e);
+        }
     }
 
-    // Send all pending messages
+    // Send all pending messages, oldest first; failed ones stay queued and are retried
     public static void sendPendingMessages(Context context) {
+        SmsDispatcher.getInstance(context).resumePending();
+    }
+
+    private static synchronized void saveFallback(Context context, String phoneNumber, String message, long createdMillis) {
         SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        Set<String> messages = prefs.getStringSet(KEY_MESSAGES, new HashSet<>());
-
-        if (messages != null && !messages.isEmpty()) {
-            SmsManager smsManager = SmsManager.getDefault();
-            for (String entry : messages) {
-                String[] parts = entry.split(";;");
-                if (parts.length == 2) {
-                    String number = parts[0];
-                    String msg = parts[1];
-                    try {
-                        smsManager.sendTextMessage(number, null, msg, null, null);
-                        Toast.makeText(context, "Sent stored SOS to " + number, Toast.LENGTH_SHORT).show();
-                    } catch (Exception e) {
-                        Toast.makeText(context, "Failed to send stored SOS", Toast.LENGTH_SHORT).show();
-                    }
+        try {
+            JSONArray entries = new JSONArray(prefs.getString(KEY_FALLBACK, "[]"));
+            entries.put(new JSONObject()
+                    .put("number", phoneNumber)
+                    .put("message", message)
+                    .put("time", createdMillis));
+            prefs.edit().putString(KEY_FALLBACK, entries.toString()).commit();
+            fallbackWaiting = true;
+        } catch (JSONException e) {
+            // Only a damaged array gets here; start a new one rather than lose this message
+            Log.e(TAG, "Unreadable fallback messages, starting over", e);
+            prefs.edit().putString(KEY_FALLBACK, "[]").commit();
+            saveFallback(context, phoneNumber, message, createdMillis);
+        }
+    }
+
+    // Returns how many messages were moved
+    private static int migrateLegacyMessages(Context context, SosOutbox target) throws IOException {
+        return migrateFallbackMessages(context, target) + migrateMessageSet(context, target);
+    }
+
+    // In the order they were saved, each with the time it was written
+    private static int migrateFallbackMessages(Context context, SosOutbox target) throws IOException {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String json = prefs.getString(KEY_FALLBACK, null);
+        if (json == null) {
+            return 0;
+        }
+        int moved = 0;
+        try {
+            JSONArray entries = new JSONArray(json);
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.optJSONObject(i);
+                if (entry != null && entry.has("number") && entry.has("message")) {
+                    target.enqueue(entry.getString("number"), entry.getString("message"),
+                            entry.optLong("time", System.currentTimeMillis()));
+                    moved++;
+                } else {
+                    Log.w(TAG, "Dropping malformed fallback message");
                 }
             }
-            prefs.edit().remove(KEY_MESSAGES).apply(); // Clear after sending
+        } catch (JSONException e) {
+            Log.e(TAG, "Unreadable fallback messages, dropping them", e);
+        }
+        prefs.edit().remove(KEY_FALLBACK).commit();
+        Log.d(TAG, "Moved " + moved + " fallback messages into the outbox");
+        return moved;
+    }
+
+    // Both old formats lived in the same key and each reader dropped the other's entries
+    private static int migrateMessageSet(Context context, SosOutbox target) throws IOException {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Set<String> messages = prefs.getStringSet(KEY_MESSAGES, null);
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        for (String entry : messages) {
+            // Numbers hold neither separator, so the first one found splits the entry
+            int bars = entry.indexOf("||");
+            int semicolons = entry.indexOf(";;");
+            int split = bars < 0 ? semicolons : semicolons < 0 ? bars : Math.min(bars, semicolons);
+            if (split > 0) {
+                target.enqueue(entry.substring(0, split), entry.substring(split + 2), now);
+            } else {
+                Log.w(TAG, "Dropping malformed stored message");
+            }
         }
+        prefs.edit().remove(KEY_MESSAGES).commit();
+        Log.d(TAG, "Moved " + messages.size() + " stored messages into the outbox");
+        return messages.size();
     }
 }
@@ -0,0 +1,17 @@
+package com.example.safeharbor;
+
+import android.app.Application;
+
+import com.example.safeharbor.sos.SosBeacon;
+
+public class SafeHarborApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Loading starts before any activity, the splash screen only waits for it
+        StartupOrchestrator.getInstance().start(this);
+        // An SOS that was being tracked when the process died carries on, location service and
+        // all. After a reboot the boot broadcast to the alarm receivers starts the process.
+        SosBeacon.getInstance(this).resume();
+    }
+}
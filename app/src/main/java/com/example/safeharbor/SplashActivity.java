@@ -4,7 +4,6 @@ import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Handler;
 import android.util.Log;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.ImageView;
@@ -14,7 +13,6 @@ import androidx.appcompat.app.AppCompatActivity;
 
 public class SplashActivity extends AppCompatActivity {
     private static final String TAG = "SplashActivity";
-    private static final long SPLASH_DELAY = 3500; // 3.5 seconds
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -23,6 +21,11 @@ public class SplashActivity extends AppCompatActivity {
             setContentView(R.layout.activity_splash);
             Log.d(TAG, "Splash screen layout inflated");
 
+            // The GPS warms up while the splash shows, which stays only until the data is loaded
+            StartupOrchestrator startup = StartupOrchestrator.getInstance();
+            startup.startServices(this);
+            startup.whenReady(this::openMainActivity);
+
             // Initialize views
             ImageView boatImage = findViewById(R.id.boatImage);
             TextView titleText = findViewById(R.id.titleText);
@@ -75,21 +78,23 @@ public class SplashActivity extends AppCompatActivity {
             animatorSet.playTogether(boatFadeIn, boatSlideIn, boatRock, titleFadeIn, subtitleFadeIn, taglineFadeIn);
             animatorSet.start();
 
-            // Navigate to MainActivity after delay
-            new Handler().postDelayed(() -> {
-                try {
-                    Intent intent = new Intent(SplashActivity.this, MainActivity.class);
-                    startActivity(intent);
-                    finish();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error starting MainActivity", e);
-                    Toast.makeText(this, "Error starting app", Toast.LENGTH_SHORT).show();
-                }
-            }, SPLASH_DELAY);
-
         } catch (Exception e) {
             Log.e(TAG, "Error in onCreate", e);
             Toast.makeText(this, "App initialization failed", Toast.LENGTH_SHORT).show();
         }
     }
+
+    private void openMainActivity() {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        try {
+            Intent intent = new Intent(SplashActivity.this, MainActivity.class);
+            startActivity(intent);
+            finish();
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting MainActivity", e);
+            Toast.makeText(this, "Error starting app", Toast.LENGTH_SHORT).show();
+        }
+    }
 } 
\ No newline at end of file
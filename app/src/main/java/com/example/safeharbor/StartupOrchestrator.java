@@ -0,0 +1,146 @@
+package com.example.safeharbor;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import com.example.safeharbor.repository.BoundaryRepository;
+import com.example.safeharbor.repository.EmergencyContactRepository;
+import com.example.safeharbor.service.BorderMonitoringService;
+import com.example.safeharbor.service.NetworkMonitorService;
+import com.example.safeharbor.utils.LocationUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Staged startup. As soon as the process starts, the boundaries, the emergency contacts and a
+ * cached position are loaded in the background; the splash screen waits for that instead of a
+ * fixed delay and starts the services so the GPS is warming up while it shows.
+ *
+ * Readiness means the boundaries and contacts are loaded. Time to the first distance on screen
+ * is measured from process start and logged once.
+ */
+public final class StartupOrchestrator {
+    private static final String TAG = "Startup";
+    private static final StartupOrchestrator INSTANCE = new StartupOrchestrator();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CompletableFuture<Void> contacts = new CompletableFuture<>();
+    private CompletableFuture<Void> ready;
+    private volatile Location warmLocation;
+    private boolean servicesStarted;
+    private boolean firstDistanceReported;
+
+    private StartupOrchestrator() {
+    }
+
+    public static StartupOrchestrator getInstance() {
+        return INSTANCE;
+    }
+
+    // From Application.onCreate; later calls do nothing
+    public synchronized void start(Context context) {
+        if (ready != null) {
+            return;
+        }
+        Context app = context.getApplicationContext();
+
+        // Stage 1: boundaries, loaded once for the whole process
+        CompletableFuture<Void> boundaries = new CompletableFuture<>();
+        BoundaryRepository.getInstance(app).whenReady(snapshot -> {
+            Log.d(TAG, "Boundaries ready at " + sinceProcessStart() + " ms");
+            boundaries.complete(null);
+        });
+
+        // Stage 2: contacts, so the first SOS does not wait for the preferences file
+        // Stage 3: the evaluation thread and the platform's cached position
+        BorderEvaluator.getInstance();
+        new Thread(() -> {
+            try {
+                int count = new EmergencyContactRepository(app).getContacts().size();
+                Log.d(TAG, count + " contacts ready at " + sinceProcessStart() + " ms");
+            } catch (RuntimeException e) {
+                // A bad preferences file must not take the process down; SOSService
+                // reads the contacts again when it sends
+                Log.e(TAG, "Error loading contacts", e);
+            } finally {
+                // The splash waits on this, it must not hang on a bad preferences file
+                contacts.complete(null);
+            }
+            try {
+                warmLocation = new LocationUtils(app).getLastKnownLocation();
+            } catch (RuntimeException e) {
+                // Only a head start, the location stream delivers a fix anyway
+                Log.e(TAG, "Error reading the last known location", e);
+            }
+        }, "StartupLoader").start();
+
+        ready = CompletableFuture.allOf(boundaries, contacts);
+    }
+
+    public synchronized boolean isReady() {
+        return ready != null && ready.isDone();
+    }
+
+    // Runs callback on the main thread once ready, right away if already ready
+    public synchronized void whenReady(Runnable callback) {
+        ready.thenRun(() -> mainHandler.post(callback));
+    }
+
+    // The platform's last position from before this process started, null if there is none
+    public Location getWarmLocation() {
+        return warmLocation;
+    }
+
+    // Main thread. Starts the background services once per process, from a foreground context.
+    public void startServices(Context context) {
+        if (servicesStarted) {
+            return;
+        }
+        servicesStarted = true;
+        context.startService(new Intent(context, NetworkMonitorService.class));
+        context.startService(new Intent(context, BorderMonitoringService.class));
+        startLocationMonitoring(context);
+    }
+
+    /**
+     * Starts LocationMonitoringService, the only GPS subscriber. A location foreground service
+     * may not start before the permission is granted, so this returns false until it is.
+     */
+    public boolean startLocationMonitoring(Context context) {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            Log.d(TAG, "Location monitoring service waits for the location permission");
+            return false;
+        }
+        Intent serviceIntent = new Intent(context, LocationMonitoringService.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(serviceIntent);
+        } else {
+            context.startService(serviceIntent);
+        }
+        Log.d(TAG, "Location monitoring service started");
+        return true;
+    }
+
+    // Main thread, when a distance is shown; only the first one is logged
+    public void onDistanceShown() {
+        if (!firstDistanceReported) {
+            firstDistanceReported = true;
+            Log.i(TAG, "Time to first distance: " + sinceProcessStart() + " ms");
+        }
+    }
+
+    private static long sinceProcessStart() {
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+    }
+}
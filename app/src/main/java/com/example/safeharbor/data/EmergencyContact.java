@@ -4,6 +4,8 @@ public class EmergencyContact {
     private String name;
     private String phoneNumber;
     private boolean isPrimary;
+    // Lower numbers are alerted first
+    private int priority;
 
     public EmergencyContact() {
         // Default constructor
@@ -15,22 +17,40 @@ public class EmergencyContact {
         this.isPrimary = isPrimary;
     }
 
+    public EmergencyContact(String name, String phoneNumber, boolean isPrimary, int priority) {
+        this(name, phoneNumber, isPrimary);
+        this.priority = priority;
+    }
+
     // Override toString for easy storage
     @Override
     public String toString() {
-        return name + "," + phoneNumber + "," + isPrimary;
+        return name + "," + phoneNumber + "," + isPrimary + "," + priority;
     }
 
     // Parse from string
     public static EmergencyContact fromString(String data) {
         String[] parts = data.split(",");
         if (parts.length == 3) {
+            // Stored before contacts had a priority
             return new EmergencyContact(
                 parts[0],
                 parts[1],
                 Boolean.parseBoolean(parts[2])
             );
         }
+        if (parts.length == 4) {
+            try {
+                return new EmergencyContact(
+                    parts[0],
+                    parts[1],
+                    Boolean.parseBoolean(parts[2]),
+                    Integer.parseInt(parts[3])
+                );
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
         return null;
     }
 
@@ -58,4 +78,12 @@ public class EmergencyContact {
     public void setPrimary(boolean primary) {
         isPrimary = primary;
     }
-} 
\ No newline at end of file
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+}
\ No newline at end of file
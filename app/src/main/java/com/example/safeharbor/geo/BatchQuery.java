@@ -0,0 +1,85 @@
+package com.example.safeharbor.geo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Nearest-boundary lookups for many positions at once, such as a replayed trip or a batch of
+ * fixes delivered together. Positions go in and results come out as primitive arrays.
+ *
+ * The work is cut into contiguous runs of fixes, each handled by its own
+ * {@link NearestSegmentTracker}, so consecutive points of a track reuse each other's
+ * candidates. Batches of more than PARALLEL_THRESHOLD points are split across the fork/join
+ * pool.
+ */
+public final class BatchQuery {
+    public static final int PARALLEL_THRESHOLD = 2048;
+
+    private BatchQuery() {
+    }
+
+    /**
+     * Fills distancesKm[i] and boundaryIds[i] for the first count positions. Distances are
+     * POSITIVE_INFINITY and ids -1 when the index is empty. boundaryIds may be null.
+     */
+    public static void nearest(BoundaryIndex index, double[] lats, double[] lons, int count,
+                               double[] distancesKm, int[] boundaryIds) {
+        nearest(index, lats, lons, count, distancesKm, boundaryIds, ForkJoinPool.commonPool());
+    }
+
+    public static void nearest(BoundaryIndex index, double[] lats, double[] lons, int count,
+                               double[] distancesKm, int[] boundaryIds, ForkJoinPool pool) {
+        if (count < 0 || lats.length < count || lons.length < count || distancesKm.length < count
+                || (boundaryIds != null && boundaryIds.length < count)) {
+            throw new IllegalArgumentException("Arrays shorter than count " + count);
+        }
+        Task task = new Task(index, lats, lons, distancesKm, boundaryIds, 0, count);
+        if (count <= PARALLEL_THRESHOLD) {
+            task.compute(); // not worth waking other threads
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    private static final class Task extends RecursiveAction {
+        // Never serialized; declared because ForkJoinTask is Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final BoundaryIndex index;
+        private final double[] lats;
+        private final double[] lons;
+        private final double[] distancesKm;
+        private final int[] boundaryIds;
+        private final int from;
+        private final int to;
+
+        Task(BoundaryIndex index, double[] lats, double[] lons, double[] distancesKm, int[] boundaryIds,
+             int from, int to) {
+            this.index = index;
+            this.lats = lats;
+            this.lons = lons;
+            this.distancesKm = distancesKm;
+            this.boundaryIds = boundaryIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Task(index, lats, lons, distancesKm, boundaryIds, from, middle),
+                        new Task(index, lats, lons, distancesKm, boundaryIds, middle, to));
+                return;
+            }
+
+            NearestSegmentTracker tracker = new NearestSegmentTracker(index);
+            for (int i = from; i < to; i++) {
+                distancesKm[i] = tracker.update(lats[i], lons[i]);
+                if (boundaryIds != null) {
+                    boundaryIds[i] = tracker.getBoundaryId();
+                }
+            }
+        }
+    }
+}
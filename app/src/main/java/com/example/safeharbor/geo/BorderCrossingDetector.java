@@ -0,0 +1,228 @@
+package com.example.safeharbor.geo;
+
+/**
+ * Follows a track fix by fix and tells when it has crossed one of the watched boundaries and
+ * stayed across. The track between consecutive fixes is taken as the great circle arc between
+ * them; every time that arc crosses a line of a boundary, the side of that boundary flips.
+ * Counting flips rather than looking at the nearest segment keeps a track that wanders along
+ * a line, or passes a vertex, from flipping on noise.
+ *
+ * A track begun with {@link #start} takes its first side of each boundary from the maritime
+ * zones; otherwise it is assumed to start on the home side. A crossing is only confirmed after
+ * CONFIRM_FIXES fixes in a row that are across, clear of the line by more than their own
+ * uncertainty, and not known to be in home waters. It is reported once; going back across
+ * rearms it.
+ */
+public final class BorderCrossingDetector {
+    public static final int CONFIRM_FIXES = 2;
+    // Fixes closer to the line than this never confirm, whatever their stated accuracy
+    public static final double MIN_CLEARANCE_KM = 0.1;
+    // How far beside a line start looks for the home side; well past where the zone
+    // polygons and the lines disagree
+    private static final double PROBE_KM = 2;
+    // How much further than the nearest line start looks for a stretch to probe beside
+    private static final double PROBE_SEARCH_KM = 100;
+
+    private final BoundaryIndex index;
+    private final boolean[] watched;
+    private final BoundaryIndex.Query query;
+    private final boolean[] across;
+    private final boolean[] reported;
+    private int[] candidates = new int[64];
+
+    private boolean hasPrevious;
+    private double previousLat;
+    private double previousLon;
+    private int pendingBoundary = -1;
+    private int confirmations;
+
+    /**
+     * @param watchedBoundaries indexed by boundary id, true for the boundaries whose crossing
+     *                          matters; the others are ignored
+     */
+    public BorderCrossingDetector(BoundaryIndex index, boolean[] watchedBoundaries) {
+        if (watchedBoundaries.length != index.getBoundaryCount()) {
+            throw new IllegalArgumentException("Expected " + index.getBoundaryCount() + " boundaries, got "
+                    + watchedBoundaries.length);
+        }
+        this.index = index;
+        this.watched = watchedBoundaries.clone();
+        this.query = index.newQuery();
+        this.across = new boolean[watchedBoundaries.length];
+        this.reported = new boolean[watchedBoundaries.length];
+    }
+
+    /**
+     * Takes the next fix of the track.
+     *
+     * @param clearanceKm      how far from the line the fix must be to count, usually its
+     *                         accuracy; never less than MIN_CLEARANCE_KM
+     * @param inHomeWaters     the fix is independently known to be on the home side
+     * @return the id of the boundary whose crossing was just confirmed, otherwise -1
+     */
+    public int update(double lat, double lon, double clearanceKm, boolean inHomeWaters) {
+        if (hasPrevious) {
+            flipCrossed(previousLat, previousLon, lat, lon);
+        }
+        hasPrevious = true;
+        previousLat = lat;
+        previousLon = lon;
+
+        int boundary = -1;
+        for (int id = 0; id < across.length; id++) {
+            if (!across[id]) {
+                reported[id] = false; // back on the home side
+            } else if (boundary < 0 && !reported[id]) {
+                boundary = id;
+            }
+        }
+
+        double clearance = Math.max(MIN_CLEARANCE_KM, clearanceKm);
+        if (boundary < 0 || inHomeWaters
+                || query.findWithin(lat, lon, boundary, clearance) != Double.POSITIVE_INFINITY) {
+            confirmations = 0;
+            return -1;
+        }
+        if (boundary != pendingBoundary) {
+            pendingBoundary = boundary;
+            confirmations = 0;
+        }
+        if (++confirmations < CONFIRM_FIXES) {
+            return -1;
+        }
+        reported[boundary] = true;
+        confirmations = 0;
+        return boundary;
+    }
+
+    /**
+     * Starts the track at a fix whose side is not known, such as the first after the app
+     * starts. If the zones put the fix outside Indian waters, the points just beside the
+     * nearest stretch of watched line tell which side of it is home, and the crossings on the
+     * arc from the home one to the fix give the fix's side of every watched boundary, the same way as
+     * between two fixes. Where the zones cannot tell the sides apart the fix is taken to be on
+     * the home side. Land reads as outside, but a fix ashore is reached from the home side
+     * without crossing a line, so it is not taken as across.
+     *
+     * A boundary the track starts across is confirmed and reported like a crossing, except
+     * that one already reported stays reported while the track is still across it.
+     */
+    public void start(double lat, double lon, MaritimeZones zones) {
+        for (int id = 0; id < across.length; id++) {
+            across[id] = false;
+        }
+        if (!zones.classify(lat, lon).isIndianWaters()) {
+            double[] home = homeBeside(lat, lon, zones);
+            if (home != null) {
+                flipCrossed(home[0], home[1], lat, lon);
+            }
+        }
+        for (int id = 0; id < across.length; id++) {
+            reported[id] &= across[id];
+        }
+        hasPrevious = true;
+        previousLat = lat;
+        previousLon = lon;
+        pendingBoundary = -1;
+        confirmations = 0;
+    }
+
+    // Whether the track is currently across the given boundary, confirmed or not
+    public boolean isAcross(int boundaryId) {
+        return across[boundaryId];
+    }
+
+    // Starts a new track on the home side
+    public void reset() {
+        hasPrevious = false;
+        pendingBoundary = -1;
+        confirmations = 0;
+        for (int id = 0; id < across.length; id++) {
+            across[id] = false;
+            reported[id] = false;
+        }
+    }
+
+    /**
+     * A point just beside the nearest stretch of watched line whose two sides the zones tell
+     * apart, on the home side; null if there is none. Stretches ending ashore, or in waters the
+     * zones do not cover, have neither or both sides in Indian waters and are passed over.
+     */
+    private double[] homeBeside(double lat, double lon, MaritimeZones zones) {
+        double nearestKm = Double.POSITIVE_INFINITY;
+        for (int id = 0; id < watched.length; id++) {
+            if (watched[id]) {
+                nearestKm = Math.min(nearestKm, query.find(lat, lon, id));
+            }
+        }
+        if (nearestKm == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        int count = query.collectWithin(lat, lon, nearestKm + PROBE_SEARCH_KM, candidates);
+        if (count > candidates.length) {
+            candidates = new int[Integer.highestOneBit(count) << 1];
+            count = query.collectWithin(lat, lon, nearestKm + PROBE_SEARCH_KM, candidates);
+        }
+        double[] positive = new double[2];
+        double[] negative = new double[2];
+        int telling = 0;
+        for (int i = 0; i < count; i++) {
+            int s = candidates[i];
+            if (watched[index.getSegmentBoundaryId(s)] && homeSide(s, zones, positive, negative) != 0) {
+                candidates[telling++] = s;
+            }
+        }
+        if (telling == 0) {
+            return null;
+        }
+        query.findAmong(lat, lon, candidates, telling);
+        return homeSide(query.getSegment(), zones, positive, negative) > 0 ? positive : negative;
+    }
+
+    // 1 or -1 for the side of segment s the zones put in Indian waters, 0 if they cannot tell
+    private int homeSide(int s, MaritimeZones zones, double[] positive, double[] negative) {
+        index.pointBeside(s, PROBE_KM, positive);
+        index.pointBeside(s, -PROBE_KM, negative);
+        boolean positiveHome = zones.classify(positive[0], positive[1]).isIndianWaters();
+        boolean negativeHome = zones.classify(negative[0], negative[1]).isIndianWaters();
+        return positiveHome == negativeHome ? 0 : positiveHome ? 1 : -1;
+    }
+
+    private void flipCrossed(double lat1, double lon1, double lat2, double lon2) {
+        double lat1Rad = Math.toRadians(lat1);
+        double lon1Rad = Math.toRadians(lon1);
+        double lat2Rad = Math.toRadians(lat2);
+        double lon2Rad = Math.toRadians(lon2);
+        double px = Math.cos(lat1Rad) * Math.cos(lon1Rad);
+        double py = Math.cos(lat1Rad) * Math.sin(lon1Rad);
+        double pz = Math.sin(lat1Rad);
+        double qx = Math.cos(lat2Rad) * Math.cos(lon2Rad);
+        double qy = Math.cos(lat2Rad) * Math.sin(lon2Rad);
+        double qz = Math.sin(lat2Rad);
+
+        // Any segment the arc crosses is within half its length of the arc's midpoint
+        double mx = px + qx;
+        double my = py + qy;
+        double mz = pz + qz;
+        double mLength = Math.sqrt(mx * mx + my * my + mz * mz);
+        if (mLength < 1e-12) {
+            return; // antipodal fixes, no usable track between them
+        }
+        double midLat = Math.toDegrees(Math.asin(mz / mLength));
+        double midLon = Math.toDegrees(Math.atan2(my, mx));
+        double radiusKm = GeoMath.haversineKm(lat1, lon1, lat2, lon2) / 2 + 0.001;
+
+        int count = query.collectWithin(midLat, midLon, radiusKm, candidates);
+        if (count > candidates.length) {
+            candidates = new int[Integer.highestOneBit(count) << 1];
+            count = query.collectWithin(midLat, midLon, radiusKm, candidates);
+        }
+        for (int i = 0; i < count; i++) {
+            int s = candidates[i];
+            int id = index.getSegmentBoundaryId(s);
+            if (watched[id] && index.arcCrosses(s, px, py, pz, qx, qy, qz)) {
+                across[id] = !across[id];
+            }
+        }
+    }
+}
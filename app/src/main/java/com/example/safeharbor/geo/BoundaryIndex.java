@@ -0,0 +1,669 @@
+package com.example.safeharbor.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable STR-packed R-tree over the segments of every maritime boundary line.
+ *
+ * Segments are sorted into Sort-Tile-Recursive order once at build time and then grouped
+ * NODE_CAPACITY at a time into bounding boxes, level by level, up to a single root. A
+ * nearest-segment query descends the tree and skips every node whose box lower bound is
+ * already farther away than the best segment found, so it touches O(log n) nodes instead of
+ * every vertex of every boundary.
+ *
+ * Besides latitude and longitude every segment keeps its end points and plane normal as unit
+ * vectors in parallel arrays, so a query only does trigonometry for the query point itself.
+ * A {@link Query} holds the per-query state and can be reused from fix to fix, which makes
+ * the whole search allocation free.
+ *
+ * Segments are evaluated in two tiers. A flat screen measures the straight 3D chord from a
+ * to b, which with the arc's sagitta subtracted is a proven lower bound on the angle to the
+ * arc and needs no trigonometry or square root. Only segments that this bound cannot rule out
+ * against the best distance so far, or the limit of a bounded search, get the exact
+ * spherical evaluation.
+ */
+public final class BoundaryIndex {
+    private static final int NODE_CAPACITY = 16;
+
+    private final String[] boundaryNames;
+
+    // Segments in STR order
+    private final double[] segLat1;
+    private final double[] segLon1;
+    private final double[] segLat2;
+    private final double[] segLon2;
+    private final int[] segBoundary;
+
+    // The same segments as unit vectors a and b with unit normal n = a x b, zero if degenerate
+    private final double[] segAx;
+    private final double[] segAy;
+    private final double[] segAz;
+    private final double[] segBx;
+    private final double[] segBy;
+    private final double[] segBz;
+    private final double[] segNx;
+    private final double[] segNy;
+    private final double[] segNz;
+    // How far the arc bulges away from its chord, 1 - cos(half the arc's angle)
+    private final double[] segSagitta;
+
+    // levels[0] boxes the segments, the last level holds the root. Node i of a level covers
+    // items [i * NODE_CAPACITY, (i + 1) * NODE_CAPACITY) of the level below it.
+    private final double[][] levelMinLat;
+    private final double[][] levelMinLon;
+    private final double[][] levelMaxLat;
+    private final double[][] levelMaxLon;
+
+    public static final class Nearest {
+        public final double distanceKm;
+        public final String boundaryName;
+        public final int segment;
+
+        Nearest(double distanceKm, String boundaryName, int segment) {
+            this.distanceKm = distanceKm;
+            this.boundaryName = boundaryName;
+            this.segment = segment;
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Integer> boundaryIds = new LinkedHashMap<>();
+        private double[] lat1 = new double[64];
+        private double[] lon1 = new double[64];
+        private double[] lat2 = new double[64];
+        private double[] lon2 = new double[64];
+        private int[] boundary = new int[64];
+        private int count;
+
+        public Builder addLine(String boundaryName, double[] lats, double[] lons, int offset, int length) {
+            int id = boundaryId(boundaryName);
+            for (int i = offset; i < offset + length - 1; i++) {
+                addSegment(id, lats[i], lons[i], lats[i + 1], lons[i + 1]);
+            }
+            return this;
+        }
+
+        public Builder addLine(String boundaryName, double[] lats, double[] lons) {
+            return addLine(boundaryName, lats, lons, 0, Math.min(lats.length, lons.length));
+        }
+
+        // Points are {lat, lon} pairs, as produced by the CSV loaders
+        public Builder addLine(String boundaryName, List<double[]> points) {
+            int id = boundaryId(boundaryName);
+            for (int i = 0; i < points.size() - 1; i++) {
+                double[] p1 = points.get(i);
+                double[] p2 = points.get(i + 1);
+                if (p1 != null && p2 != null && p1.length >= 2 && p2.length >= 2) {
+                    addSegment(id, p1[0], p1[1], p2[0], p2[1]);
+                }
+            }
+            return this;
+        }
+
+        public BoundaryIndex build() {
+            return new BoundaryIndex(this);
+        }
+
+        private int boundaryId(String boundaryName) {
+            Integer id = boundaryIds.get(boundaryName);
+            if (id == null) {
+                id = boundaryIds.size();
+                boundaryIds.put(boundaryName, id);
+            }
+            return id;
+        }
+
+        private void addSegment(int id, double la1, double lo1, double la2, double lo2) {
+            if (count == boundary.length) {
+                int capacity = count * 2;
+                lat1 = Arrays.copyOf(lat1, capacity);
+                lon1 = Arrays.copyOf(lon1, capacity);
+                lat2 = Arrays.copyOf(lat2, capacity);
+                lon2 = Arrays.copyOf(lon2, capacity);
+                boundary = Arrays.copyOf(boundary, capacity);
+            }
+            lat1[count] = la1;
+            lon1[count] = lo1;
+            lat2[count] = la2;
+            lon2[count] = lo2;
+            boundary[count] = id;
+            count++;
+        }
+    }
+
+    public static BoundaryIndex fromMap(Map<String, List<List<double[]>>> boundaries) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, List<List<double[]>>> entry : boundaries.entrySet()) {
+            for (List<double[]> line : entry.getValue()) {
+                if (line != null) {
+                    builder.addLine(entry.getKey(), line);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private BoundaryIndex(Builder builder) {
+        boundaryNames = builder.boundaryIds.keySet().toArray(new String[0]);
+
+        int n = builder.count;
+        Integer[] order = strOrder(builder, n);
+
+        segLat1 = new double[n];
+        segLon1 = new double[n];
+        segLat2 = new double[n];
+        segLon2 = new double[n];
+        segBoundary = new int[n];
+        segAx = new double[n];
+        segAy = new double[n];
+        segAz = new double[n];
+        segBx = new double[n];
+        segBy = new double[n];
+        segBz = new double[n];
+        segNx = new double[n];
+        segNy = new double[n];
+        segNz = new double[n];
+        segSagitta = new double[n];
+        double[] minLat = new double[n];
+        double[] minLon = new double[n];
+        double[] maxLat = new double[n];
+        double[] maxLon = new double[n];
+        for (int i = 0; i < n; i++) {
+            int s = order[i];
+            segLat1[i] = builder.lat1[s];
+            segLon1[i] = builder.lon1[s];
+            segLat2[i] = builder.lat2[s];
+            segLon2[i] = builder.lon2[s];
+            segBoundary[i] = builder.boundary[s];
+            setUnitVectors(i);
+
+            double[] latRange = GeoMath.arcLatitudeRange(segLat1[i], segLon1[i], segLat2[i], segLon2[i]);
+            minLat[i] = latRange[0];
+            maxLat[i] = latRange[1];
+            minLon[i] = Math.min(segLon1[i], segLon2[i]);
+            maxLon[i] = Math.max(segLon1[i], segLon2[i]);
+        }
+
+        List<double[][]> levels = new ArrayList<>();
+        int size = n;
+        do {
+            int parents = (size + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            double[] pMinLat = new double[parents];
+            double[] pMinLon = new double[parents];
+            double[] pMaxLat = new double[parents];
+            double[] pMaxLon = new double[parents];
+            for (int p = 0; p < parents; p++) {
+                int from = p * NODE_CAPACITY;
+                int to = Math.min(from + NODE_CAPACITY, size);
+                pMinLat[p] = Double.POSITIVE_INFINITY;
+                pMinLon[p] = Double.POSITIVE_INFINITY;
+                pMaxLat[p] = Double.NEGATIVE_INFINITY;
+                pMaxLon[p] = Double.NEGATIVE_INFINITY;
+                for (int c = from; c < to; c++) {
+                    pMinLat[p] = Math.min(pMinLat[p], minLat[c]);
+                    pMinLon[p] = Math.min(pMinLon[p], minLon[c]);
+                    pMaxLat[p] = Math.max(pMaxLat[p], maxLat[c]);
+                    pMaxLon[p] = Math.max(pMaxLon[p], maxLon[c]);
+                }
+            }
+            levels.add(new double[][]{pMinLat, pMinLon, pMaxLat, pMaxLon});
+            minLat = pMinLat;
+            minLon = pMinLon;
+            maxLat = pMaxLat;
+            maxLon = pMaxLon;
+            size = parents;
+        } while (size > 1);
+
+        levelMinLat = new double[levels.size()][];
+        levelMinLon = new double[levels.size()][];
+        levelMaxLat = new double[levels.size()][];
+        levelMaxLon = new double[levels.size()][];
+        for (int i = 0; i < levels.size(); i++) {
+            levelMinLat[i] = levels.get(i)[0];
+            levelMinLon[i] = levels.get(i)[1];
+            levelMaxLat[i] = levels.get(i)[2];
+            levelMaxLon[i] = levels.get(i)[3];
+        }
+    }
+
+    private void setUnitVectors(int i) {
+        double lat1 = Math.toRadians(segLat1[i]);
+        double lon1 = Math.toRadians(segLon1[i]);
+        double lat2 = Math.toRadians(segLat2[i]);
+        double lon2 = Math.toRadians(segLon2[i]);
+        double ax = Math.cos(lat1) * Math.cos(lon1);
+        double ay = Math.cos(lat1) * Math.sin(lon1);
+        double az = Math.sin(lat1);
+        double bx = Math.cos(lat2) * Math.cos(lon2);
+        double by = Math.cos(lat2) * Math.sin(lon2);
+        double bz = Math.sin(lat2);
+        segAx[i] = ax;
+        segAy[i] = ay;
+        segAz[i] = az;
+        segBx[i] = bx;
+        segBy[i] = by;
+        segBz[i] = bz;
+
+        double nx = ay * bz - az * by;
+        double ny = az * bx - ax * bz;
+        double nz = ax * by - ay * bx;
+        double nLength = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (nLength >= 1e-12) {
+            segNx[i] = nx / nLength;
+            segNy[i] = ny / nLength;
+            segNz[i] = nz / nLength;
+        }
+
+        // |a + b| = 2 cos(half angle)
+        double mx = ax + bx;
+        double my = ay + by;
+        double mz = az + bz;
+        segSagitta[i] = Math.max(0, 1 - Math.sqrt(mx * mx + my * my + mz * mz) / 2);
+    }
+
+    // Sort-Tile-Recursive: slice by longitude, then sort each slice by latitude
+    private static Integer[] strOrder(Builder builder, int n) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        double[] centerLat = new double[n];
+        double[] centerLon = new double[n];
+        for (int i = 0; i < n; i++) {
+            centerLat[i] = (builder.lat1[i] + builder.lat2[i]) / 2;
+            centerLon[i] = (builder.lon1[i] + builder.lon2[i]) / 2;
+        }
+
+        Arrays.sort(order, (a, b) -> Double.compare(centerLon[a], centerLon[b]));
+        int leaves = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int) Math.ceil(Math.sqrt(leaves));
+        int sliceSize = slices * NODE_CAPACITY;
+        for (int from = 0; from < n; from += sliceSize) {
+            int to = Math.min(from + sliceSize, n);
+            Arrays.sort(order, from, to, (a, b) -> Double.compare(centerLat[a], centerLat[b]));
+        }
+        return order;
+    }
+
+    public List<String> getBoundaryNames() {
+        return Collections.unmodifiableList(Arrays.asList(boundaryNames));
+    }
+
+    public int getBoundaryCount() {
+        return boundaryNames.length;
+    }
+
+    public int getSegmentCount() {
+        return segBoundary.length;
+    }
+
+    // Heap taken by the segment and node arrays, for reporting
+    public long getHeapBytes() {
+        long bytes = (14L * Double.BYTES + Integer.BYTES) * segBoundary.length;
+        for (double[] boxes : levelMinLat) {
+            bytes += 4L * Double.BYTES * boxes.length;
+        }
+        return bytes;
+    }
+
+    public boolean isEmpty() {
+        return segBoundary.length == 0;
+    }
+
+    // Box around every segment, from the root node. Inverted (+/- infinity) when empty.
+    public double getMinLat() {
+        return isEmpty() ? Double.POSITIVE_INFINITY : levelMinLat[levelMinLat.length - 1][0];
+    }
+
+    public double getMinLon() {
+        return isEmpty() ? Double.POSITIVE_INFINITY : levelMinLon[levelMinLon.length - 1][0];
+    }
+
+    public double getMaxLat() {
+        return isEmpty() ? Double.NEGATIVE_INFINITY : levelMaxLat[levelMaxLat.length - 1][0];
+    }
+
+    public double getMaxLon() {
+        return isEmpty() ? Double.NEGATIVE_INFINITY : levelMaxLon[levelMaxLon.length - 1][0];
+    }
+
+    // Id of a boundary for Query.find, -1 when it is unknown
+    public int getBoundaryId(String boundaryName) {
+        for (int id = 0; id < boundaryNames.length; id++) {
+            if (boundaryNames[id].equals(boundaryName)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public String getBoundaryName(int boundaryId) {
+        return boundaryNames[boundaryId];
+    }
+
+    // Boundary of a segment number as stored by Query.collectWithin
+    int getSegmentBoundaryId(int segment) {
+        return segBoundary[segment];
+    }
+
+    /**
+     * Whether the arc between unit vectors p and q crosses segment s. A point exactly on a
+     * line counts as being on its negative side, so a track through a vertex or along the line
+     * is counted once and consistently.
+     */
+    boolean arcCrosses(int s, double px, double py, double pz, double qx, double qy, double qz) {
+        double nx = segNx[s];
+        double ny = segNy[s];
+        double nz = segNz[s];
+        if ((px * nx + py * ny + pz * nz > 0) == (qx * nx + qy * ny + qz * nz > 0)) {
+            return false; // degenerate segments have n = 0 and end up here too
+        }
+        // The segment's ends must be on either side of the track's great circle
+        double mx = py * qz - pz * qy;
+        double my = pz * qx - px * qz;
+        double mz = px * qy - py * qx;
+        double ax = segAx[s];
+        double ay = segAy[s];
+        double az = segAz[s];
+        double bx = segBx[s];
+        double by = segBy[s];
+        double bz = segBz[s];
+        if ((ax * mx + ay * my + az * mz > 0) == (bx * mx + by * my + bz * mz > 0)) {
+            return false;
+        }
+        // Two great circles meet twice; rule out the meeting on the far side of the globe
+        return (ax + bx) * (px + qx) + (ay + by) * (py + qy) + (az + bz) * (pz + qz) > 0;
+    }
+
+    /**
+     * The point offsetKm square to the middle of segment s, on the positive side of its great
+     * circle for a positive offset; stored into latLon. A degenerate segment gives its middle.
+     */
+    void pointBeside(int s, double offsetKm, double[] latLon) {
+        double mx = segAx[s] + segBx[s];
+        double my = segAy[s] + segBy[s];
+        double mz = segAz[s] + segBz[s];
+        double mLength = Math.sqrt(mx * mx + my * my + mz * mz);
+        // The normal is square to both ends, so this stays on the unit sphere
+        double angle = offsetKm / GeoMath.EARTH_RADIUS_KM;
+        double cos = Math.cos(angle) / mLength;
+        double sin = Math.sin(angle);
+        double x = mx * cos + segNx[s] * sin;
+        double y = my * cos + segNy[s] * sin;
+        double z = mz * cos + segNz[s] * sin;
+        latLon[0] = Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, z))));
+        latLon[1] = Math.toDegrees(Math.atan2(y, x));
+    }
+
+    // A reusable query, for callers that look up every fix and want to allocate nothing
+    public Query newQuery() {
+        return new Query();
+    }
+
+    // Distance to the closest segment of any boundary, POSITIVE_INFINITY when empty
+    public double distanceKm(double lat, double lon) {
+        return new Query().find(lat, lon);
+    }
+
+    /**
+     * Distance to the closest segment of any boundary if it is under limitKm, otherwise
+     * POSITIVE_INFINITY. Everything beyond the limit is pruned, so this is much cheaper than
+     * an unbounded query when the boat is far from every border.
+     */
+    public double distanceWithinKm(double lat, double lon, double limitKm) {
+        return new Query().findWithin(lat, lon, limitKm);
+    }
+
+    // Distance to the closest segment of one boundary, POSITIVE_INFINITY when it is unknown
+    public double distanceKm(double lat, double lon, String boundaryName) {
+        int id = getBoundaryId(boundaryName);
+        if (id < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return new Query().find(lat, lon, id);
+    }
+
+    public Nearest nearest(double lat, double lon) {
+        Query query = new Query();
+        query.find(lat, lon);
+        if (query.segment < 0) {
+            return null;
+        }
+        return new Nearest(query.distanceKm, boundaryNames[segBoundary[query.segment]], query.segment);
+    }
+
+    /**
+     * Search state for one caller. Not thread safe; each thread that queries the index keeps
+     * its own.
+     */
+    public final class Query {
+        private double lat;
+        private double lon;
+        private double cosLat;
+        private double px;
+        private double py;
+        private double pz;
+        private int boundaryFilter;
+        private double bestAngle;
+        private double distanceKm;
+        private int segment;
+
+        // Output of collectWithin
+        private int[] collected;
+        private int collectedCount;
+
+        private Query() {
+        }
+
+        public double find(double lat, double lon) {
+            return run(lat, lon, -1, Double.POSITIVE_INFINITY);
+        }
+
+        // Closest segment of one boundary, by id from getBoundaryId
+        public double find(double lat, double lon, int boundaryId) {
+            return run(lat, lon, boundaryId, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Closest segment only if it is under limitKm, otherwise POSITIVE_INFINITY. Everything
+         * the flat screen puts past the limit is skipped, so for a threshold check only the
+         * few segments near the threshold get an exact evaluation.
+         */
+        public double findWithin(double lat, double lon, double limitKm) {
+            return run(lat, lon, -1, limitKm);
+        }
+
+        public double findWithin(double lat, double lon, int boundaryId, double limitKm) {
+            return run(lat, lon, boundaryId, limitKm);
+        }
+
+        /**
+         * Stores every segment closer than limitKm into segments and returns how many there
+         * are. The count can exceed segments.length, in which case only the first ones are
+         * stored and the caller should retry with a bigger array or a smaller limit.
+         */
+        public int collectWithin(double lat, double lon, double limitKm, int[] segments) {
+            setPoint(lat, lon);
+            boundaryFilter = -1;
+            bestAngle = limitKm / GeoMath.EARTH_RADIUS_KM;
+            collected = segments;
+            collectedCount = 0;
+            if (segBoundary.length > 0) {
+                collect(levelMinLat.length - 1, 0);
+            }
+            collected = null;
+            return collectedCount;
+        }
+
+        // Closest of the given segments, as returned by collectWithin
+        public double findAmong(double lat, double lon, int[] segments, int count) {
+            setPoint(lat, lon);
+            bestAngle = Double.POSITIVE_INFINITY;
+            segment = -1;
+            for (int i = 0; i < count; i++) {
+                int s = segments[i];
+                double angle = angleTo(s);
+                if (angle < bestAngle) {
+                    bestAngle = angle;
+                    segment = s;
+                }
+            }
+            distanceKm = segment >= 0 ? bestAngle * GeoMath.EARTH_RADIUS_KM : Double.POSITIVE_INFINITY;
+            return distanceKm;
+        }
+
+        public double getDistanceKm() {
+            return distanceKm;
+        }
+
+        // Segment found by the last search, -1 if there was none
+        public int getSegment() {
+            return segment;
+        }
+
+        public int getBoundaryId() {
+            return segment >= 0 ? segBoundary[segment] : -1;
+        }
+
+        private void setPoint(double lat, double lon) {
+            double latRad = Math.toRadians(lat);
+            double lonRad = Math.toRadians(lon);
+            this.lat = lat;
+            this.lon = lon;
+            this.cosLat = Math.cos(latRad);
+            this.px = cosLat * Math.cos(lonRad);
+            this.py = cosLat * Math.sin(lonRad);
+            this.pz = Math.sin(latRad);
+        }
+
+        private double run(double lat, double lon, int boundaryFilter, double limitKm) {
+            setPoint(lat, lon);
+            this.boundaryFilter = boundaryFilter;
+            this.bestAngle = limitKm / GeoMath.EARTH_RADIUS_KM;
+            this.segment = -1;
+
+            if (segBoundary.length > 0) {
+                visit(levelMinLat.length - 1, 0);
+            }
+            distanceKm = segment >= 0 ? bestAngle * GeoMath.EARTH_RADIUS_KM : Double.POSITIVE_INFINITY;
+            return distanceKm;
+        }
+
+        private void visit(int level, int node) {
+            if (lowerBound(level, node) >= bestAngle * GeoMath.EARTH_RADIUS_KM) {
+                return;
+            }
+            if (level == 0) {
+                scanSegments(node);
+                return;
+            }
+
+            int below = level - 1;
+            int from = node * NODE_CAPACITY;
+            int to = Math.min(from + NODE_CAPACITY, levelMinLat[below].length);
+
+            // Descend into the most promising child first so the others prune against it
+            int first = from;
+            double firstBound = Double.POSITIVE_INFINITY;
+            for (int c = from; c < to; c++) {
+                double bound = lowerBound(below, c);
+                if (bound < firstBound) {
+                    firstBound = bound;
+                    first = c;
+                }
+            }
+            visit(below, first);
+            for (int c = from; c < to; c++) {
+                if (c != first) {
+                    visit(below, c);
+                }
+            }
+        }
+
+        private void scanSegments(int leaf) {
+            int from = leaf * NODE_CAPACITY;
+            int to = Math.min(from + NODE_CAPACITY, segBoundary.length);
+            for (int s = from; s < to; s++) {
+                if (boundaryFilter >= 0 && segBoundary[s] != boundaryFilter) {
+                    continue;
+                }
+                if (bestAngle < Double.POSITIVE_INFINITY && chordDistanceSquared(s) >= square(bestAngle + segSagitta[s])) {
+                    continue;
+                }
+                double angle = angleTo(s);
+                if (angle < bestAngle) {
+                    bestAngle = angle;
+                    segment = s;
+                }
+            }
+        }
+
+        // Like visit, but keeps every segment under the fixed limit in bestAngle
+        private void collect(int level, int node) {
+            if (lowerBound(level, node) >= bestAngle * GeoMath.EARTH_RADIUS_KM) {
+                return;
+            }
+            if (level == 0) {
+                int from = node * NODE_CAPACITY;
+                int to = Math.min(from + NODE_CAPACITY, segBoundary.length);
+                for (int s = from; s < to; s++) {
+                    if (chordDistanceSquared(s) < square(bestAngle + segSagitta[s]) && angleTo(s) < bestAngle) {
+                        if (collectedCount < collected.length) {
+                            collected[collectedCount] = s;
+                        }
+                        collectedCount++;
+                    }
+                }
+                return;
+            }
+            int from = node * NODE_CAPACITY;
+            int to = Math.min(from + NODE_CAPACITY, levelMinLat[level - 1].length);
+            for (int c = from; c < to; c++) {
+                collect(level - 1, c);
+            }
+        }
+
+        private double angleTo(int s) {
+            return GeoMath.angleToArc(px, py, pz,
+                    segAx[s], segAy[s], segAz[s],
+                    segBx[s], segBy[s], segBz[s],
+                    segNx[s], segNy[s], segNz[s]);
+        }
+
+        // Squared distance from p to the straight chord of segment s. Every point of the arc
+        // is at most the sagitta farther out, and an angle is never shorter than its chord.
+        private double chordDistanceSquared(int s) {
+            double ax = segAx[s];
+            double ay = segAy[s];
+            double az = segAz[s];
+            double dx = segBx[s] - ax;
+            double dy = segBy[s] - ay;
+            double dz = segBz[s] - az;
+            double wx = px - ax;
+            double wy = py - ay;
+            double wz = pz - az;
+            double lengthSquared = dx * dx + dy * dy + dz * dz;
+            double t = lengthSquared > 0 ? (wx * dx + wy * dy + wz * dz) / lengthSquared : 0;
+            t = Math.max(0, Math.min(1, t));
+            wx -= t * dx;
+            wy -= t * dy;
+            wz -= t * dz;
+            return wx * wx + wy * wy + wz * wz;
+        }
+
+        private double lowerBound(int level, int node) {
+            return GeoMath.boxLowerBoundKm(lat, cosLat, lon,
+                    levelMinLat[level][node], levelMinLon[level][node],
+                    levelMaxLat[level][node], levelMaxLon[level][node]);
+        }
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.safeharbor.geo;
+
+/**
+ * The boundaries at several levels of detail, coarsest first, ending with the full resolution
+ * index. Each coarse level is a Douglas-Peucker simplification whose vertices were dropped
+ * only within a known tolerance, so the distance at that level minus the tolerance is a lower
+ * bound on the true distance. A lookup starts at the coarsest level and refines only while
+ * that bound is under the caller's threshold, so a boat far out pays for a few hundred
+ * segments instead of every vertex of the EEZ lines.
+ */
+public final class BoundaryLevels {
+    // Roughly 5 km and 500 m, then full resolution
+    public static final double[] DEFAULT_TOLERANCES_KM = {5, 0.5};
+
+    // Simplification bounds vertex deviation; this covers the arcs between vertices bulging
+    // slightly differently from the arcs that replaced them
+    private static final double SLACK_KM = 0.05;
+
+    private final BoundaryIndex[] levels;
+    private final double[] tolerancesKm;
+
+    private BoundaryLevels(BoundaryIndex[] levels, double[] tolerancesKm) {
+        this.levels = levels;
+        this.tolerancesKm = tolerancesKm;
+    }
+
+    public static BoundaryLevels build(BoundaryPack pack, BoundaryIndex full, double... tolerancesKm) {
+        BoundaryIndex[] levels = new BoundaryIndex[tolerancesKm.length + 1];
+        double[] bounds = new double[tolerancesKm.length + 1];
+        for (int i = 0; i < tolerancesKm.length; i++) {
+            levels[i] = pack.simplified(tolerancesKm[i]).toIndex();
+            bounds[i] = tolerancesKm[i] + SLACK_KM;
+        }
+        levels[tolerancesKm.length] = full;
+        return new BoundaryLevels(levels, bounds);
+    }
+
+    // No coarse levels, every lookup is exact
+    public static BoundaryLevels exactOnly(BoundaryIndex full) {
+        return new BoundaryLevels(new BoundaryIndex[]{full}, new double[]{0});
+    }
+
+    /**
+     * Distance to the named boundary, exact whenever it is under refineBelowKm. Above that it
+     * may come from a coarse level and be off by up to getToleranceKm of that level, but it
+     * is never reported under refineBelowKm when the true distance is over it, or the other
+     * way round.
+     */
+    public double distanceKm(double lat, double lon, String boundaryName, double refineBelowKm) {
+        for (int i = 0; i < levels.length - 1; i++) {
+            double distance = levels[i].distanceKm(lat, lon, boundaryName);
+            if (distance - tolerancesKm[i] > refineBelowKm) {
+                return distance;
+            }
+        }
+        return levels[levels.length - 1].distanceKm(lat, lon, boundaryName);
+    }
+
+    // Same for the nearest boundary of all
+    public double distanceKm(double lat, double lon, double refineBelowKm) {
+        for (int i = 0; i < levels.length - 1; i++) {
+            double distance = levels[i].distanceKm(lat, lon);
+            if (distance - tolerancesKm[i] > refineBelowKm) {
+                return distance;
+            }
+        }
+        return levels[levels.length - 1].distanceKm(lat, lon);
+    }
+
+    // Heap taken by the coarse levels; the full resolution index belongs to the caller
+    public long getCoarseHeapBytes() {
+        long bytes = 0;
+        for (int i = 0; i < levels.length - 1; i++) {
+            bytes += levels[i].getHeapBytes();
+        }
+        return bytes;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public BoundaryIndex getLevel(int level) {
+        return levels[level];
+    }
+
+    public double getToleranceKm(int level) {
+        return tolerancesKm[level];
+    }
+}
@@ -0,0 +1,406 @@
+package com.example.safeharbor.geo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Boundary lines as flat coordinate arrays, decoded from the binary pack that the
+ * compileBoundaryPack Gradle task builds from the boundary assets with {@link #writeTo}. The
+ * pack is
+ * <pre>
+ *   int magic "SHBP", int version, int crc32 of everything after the header,
+ *   int boundaryCount, int lineCount, int pointCount,
+ *   boundaryCount x (short length, UTF-8 name),
+ *   lineCount x (int boundaryId, int firstPoint, int pointCount),
+ *   padding to 8 bytes, double[pointCount] latitudes, double[pointCount] longitudes
+ * </pre>
+ * all little-endian.
+ */
+public final class BoundaryPack {
+    public static final String ASSET_NAME = "boundaries.bin";
+
+    private static final int MAGIC = 0x50424853; // "SHBP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    public final String[] boundaryNames;
+    public final int[] lineBoundary;
+    public final int[] lineStart;
+    public final int[] lineLength;
+    public final double[] lats;
+    public final double[] lons;
+    public final int checksum;
+
+    public BoundaryPack(String[] boundaryNames, int[] lineBoundary, int[] lineStart, int[] lineLength,
+                        double[] lats, double[] lons, int checksum) {
+        this.boundaryNames = boundaryNames;
+        this.lineBoundary = lineBoundary;
+        this.lineStart = lineStart;
+        this.lineLength = lineLength;
+        this.lats = lats;
+        this.lons = lons;
+        this.checksum = checksum;
+    }
+
+    public static BoundaryPack read(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+            throw new IOException("Not a boundary pack");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported boundary pack version " + version);
+        }
+        int checksum = in.getInt();
+        int boundaryCount = in.getInt();
+        int lineCount = in.getInt();
+        int pointCount = in.getInt();
+        // The counts are outside the checksum; check them before sizing arrays from them
+        if (boundaryCount < 0 || lineCount < 0 || pointCount < 0
+                || 2L * boundaryCount + 12L * lineCount + 16L * pointCount > in.remaining()) {
+            throw new IOException("Truncated boundary pack");
+        }
+        if (crc32(in.duplicate()) != checksum) {
+            throw new IOException("Boundary pack checksum mismatch");
+        }
+
+        try {
+            String[] names = new String[boundaryCount];
+            for (int i = 0; i < boundaryCount; i++) {
+                byte[] name = new byte[in.getShort() & 0xFFFF];
+                in.get(name);
+                names[i] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            int[] lineBoundary = new int[lineCount];
+            int[] lineStart = new int[lineCount];
+            int[] lineLength = new int[lineCount];
+            for (int i = 0; i < lineCount; i++) {
+                lineBoundary[i] = in.getInt();
+                lineStart[i] = in.getInt();
+                lineLength[i] = in.getInt();
+                if (lineBoundary[i] < 0 || lineBoundary[i] >= boundaryCount
+                        || lineStart[i] < 0 || lineLength[i] < 0
+                        || lineStart[i] + lineLength[i] > pointCount) {
+                    throw new IOException("Corrupt line table entry " + i);
+                }
+            }
+
+            int base = buffer.position();
+            in.position(base + alignTo8(in.position() - base));
+            double[] lats = new double[pointCount];
+            double[] lons = new double[pointCount];
+            in.asDoubleBuffer().get(lats);
+            in.position(in.position() + pointCount * 8);
+            in.asDoubleBuffer().get(lons);
+
+            return new BoundaryPack(names, lineBoundary, lineStart, lineLength, lats, lons, checksum);
+        } catch (RuntimeException e) {
+            throw new IOException("Truncated boundary pack", e);
+        }
+    }
+
+    // Writes the pack in the layout read by read, checksum included
+    public void writeTo(OutputStream out) throws IOException {
+        byte[][] names = new byte[boundaryNames.length][];
+        int bodySize = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = boundaryNames[i].getBytes(StandardCharsets.UTF_8);
+            bodySize += 2 + names[i].length;
+        }
+        bodySize += lineStart.length * 12;
+        bodySize = alignTo8(HEADER_SIZE + bodySize) - HEADER_SIZE;
+        bodySize += lats.length * 16;
+
+        ByteBuffer body = ByteBuffer.allocate(bodySize).order(ByteOrder.LITTLE_ENDIAN);
+        for (byte[] name : names) {
+            body.putShort((short) name.length).put(name);
+        }
+        for (int i = 0; i < lineStart.length; i++) {
+            body.putInt(lineBoundary[i]).putInt(lineStart[i]).putInt(lineLength[i]);
+        }
+        body.position(alignTo8(HEADER_SIZE + body.position()) - HEADER_SIZE);
+        for (double lat : lats) {
+            body.putDouble(lat);
+        }
+        for (double lon : lons) {
+            body.putDouble(lon);
+        }
+        body.flip();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(crc32(body.duplicate()))
+                .putInt(boundaryNames.length).putInt(lineStart.length).putInt(lats.length);
+        out.write(header.array());
+        out.write(body.array());
+    }
+
+    /**
+     * Collects every line feature of a GeoJSON document into a pack, grouping lines by the
+     * value of {@code nameProperty}. Polygon features contribute their rings as lines.
+     */
+    public static BoundaryPack fromGeoJson(GeoJsonReader reader, String nameProperty) throws IOException {
+        List<String> names = new ArrayList<>();
+        int lineCount = 0;
+        int pointCount = 0;
+        int[] lineBoundary = new int[16];
+        int[] lineStart = new int[16];
+        int[] lineLength = new int[16];
+        double[] lats = new double[1024];
+        double[] lons = new double[1024];
+
+        while (reader.nextFeature()) {
+            String name = reader.getProperty(nameProperty);
+            if (name == null) {
+                name = "Unnamed boundary";
+            }
+            int boundary = names.indexOf(name);
+            if (boundary < 0) {
+                boundary = names.size();
+                names.add(name);
+            }
+
+            for (int ring = 0; ring < reader.getRingCount(); ring++) {
+                int length = reader.getRingLength(ring);
+                if (length < 2) {
+                    continue;
+                }
+                if (lineCount == lineStart.length) {
+                    lineBoundary = Arrays.copyOf(lineBoundary, lineCount * 2);
+                    lineStart = Arrays.copyOf(lineStart, lineCount * 2);
+                    lineLength = Arrays.copyOf(lineLength, lineCount * 2);
+                }
+                if (pointCount + length > lats.length) {
+                    int capacity = Math.max(lats.length * 2, pointCount + length);
+                    lats = Arrays.copyOf(lats, capacity);
+                    lons = Arrays.copyOf(lons, capacity);
+                }
+                System.arraycopy(reader.getLats(), reader.getRingStart(ring), lats, pointCount, length);
+                System.arraycopy(reader.getLons(), reader.getRingStart(ring), lons, pointCount, length);
+                lineBoundary[lineCount] = boundary;
+                lineStart[lineCount] = pointCount;
+                lineLength[lineCount] = length;
+                lineCount++;
+                pointCount += length;
+            }
+        }
+
+        return new BoundaryPack(names.toArray(new String[0]),
+                Arrays.copyOf(lineBoundary, lineCount), Arrays.copyOf(lineStart, lineCount),
+                Arrays.copyOf(lineLength, lineCount), Arrays.copyOf(lats, pointCount),
+                Arrays.copyOf(lons, pointCount), 0);
+    }
+
+    // Adds the lines of every boundary in other that this pack does not already have
+    public BoundaryPack withNewBoundariesFrom(BoundaryPack other) {
+        List<String> names = new ArrayList<>(Arrays.asList(boundaryNames));
+        int[] otherToMerged = new int[other.boundaryNames.length];
+        int extraLines = 0;
+        int extraPoints = 0;
+        for (int b = 0; b < other.boundaryNames.length; b++) {
+            if (names.contains(other.boundaryNames[b])) {
+                otherToMerged[b] = -1;
+            } else {
+                otherToMerged[b] = names.size();
+                names.add(other.boundaryNames[b]);
+            }
+        }
+        for (int i = 0; i < other.getLineCount(); i++) {
+            if (otherToMerged[other.lineBoundary[i]] >= 0) {
+                extraLines++;
+                extraPoints += other.lineLength[i];
+            }
+        }
+        if (extraLines == 0) {
+            return this;
+        }
+
+        int lines = getLineCount();
+        int[] mergedBoundary = Arrays.copyOf(lineBoundary, lines + extraLines);
+        int[] mergedStart = Arrays.copyOf(lineStart, lines + extraLines);
+        int[] mergedLength = Arrays.copyOf(lineLength, lines + extraLines);
+        double[] mergedLats = Arrays.copyOf(lats, lats.length + extraPoints);
+        double[] mergedLons = Arrays.copyOf(lons, lons.length + extraPoints);
+        int point = lats.length;
+        for (int i = 0; i < other.getLineCount(); i++) {
+            int boundary = otherToMerged[other.lineBoundary[i]];
+            if (boundary < 0) {
+                continue;
+            }
+            System.arraycopy(other.lats, other.lineStart[i], mergedLats, point, other.lineLength[i]);
+            System.arraycopy(other.lons, other.lineStart[i], mergedLons, point, other.lineLength[i]);
+            mergedBoundary[lines] = boundary;
+            mergedStart[lines] = point;
+            mergedLength[lines] = other.lineLength[i];
+            lines++;
+            point += other.lineLength[i];
+        }
+        return new BoundaryPack(names.toArray(new String[0]), mergedBoundary, mergedStart, mergedLength,
+                mergedLats, mergedLons, checksum * 31 + other.checksum);
+    }
+
+    // Only the lines of the named boundaries; names this pack does not have are ignored
+    public BoundaryPack onlyBoundaries(Set<String> names) {
+        int[] kept = new int[boundaryNames.length];
+        List<String> keptNames = new ArrayList<>();
+        for (int b = 0; b < boundaryNames.length; b++) {
+            kept[b] = names.contains(boundaryNames[b]) ? keptNames.size() : -1;
+            if (kept[b] >= 0) {
+                keptNames.add(boundaryNames[b]);
+            }
+        }
+        int lines = 0;
+        int points = 0;
+        for (int i = 0; i < getLineCount(); i++) {
+            if (kept[lineBoundary[i]] >= 0) {
+                lines++;
+                points += lineLength[i];
+            }
+        }
+
+        int[] keptBoundary = new int[lines];
+        int[] keptStart = new int[lines];
+        int[] keptLength = new int[lines];
+        double[] keptLats = new double[points];
+        double[] keptLons = new double[points];
+        int line = 0;
+        int point = 0;
+        for (int i = 0; i < getLineCount(); i++) {
+            if (kept[lineBoundary[i]] < 0) {
+                continue;
+            }
+            System.arraycopy(lats, lineStart[i], keptLats, point, lineLength[i]);
+            System.arraycopy(lons, lineStart[i], keptLons, point, lineLength[i]);
+            keptBoundary[line] = kept[lineBoundary[i]];
+            keptStart[line] = point;
+            keptLength[line] = lineLength[i];
+            line++;
+            point += lineLength[i];
+        }
+        return new BoundaryPack(keptNames.toArray(new String[0]), keptBoundary, keptStart, keptLength,
+                keptLats, keptLons, checksum);
+    }
+
+    // Identifies the boundary geometry, for keying caches derived from it
+    public int contentHash() {
+        int hash = Arrays.hashCode(boundaryNames);
+        hash = 31 * hash + Arrays.hashCode(lineBoundary);
+        hash = 31 * hash + Arrays.hashCode(lineStart);
+        hash = 31 * hash + Arrays.hashCode(lats);
+        hash = 31 * hash + Arrays.hashCode(lons);
+        return hash;
+    }
+
+    public int getLineCount() {
+        return lineStart.length;
+    }
+
+    // Heap taken by the coordinate and line arrays, for reporting
+    public long getHeapBytes() {
+        return 2L * Double.BYTES * lats.length + 3L * Integer.BYTES * lineStart.length;
+    }
+
+    public BoundaryIndex toIndex() {
+        BoundaryIndex.Builder builder = new BoundaryIndex.Builder();
+        for (int i = 0; i < lineStart.length; i++) {
+            builder.addLine(boundaryNames[lineBoundary[i]], lats, lons, lineStart[i], lineLength[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The same lines Douglas-Peucker simplified on the sphere, so that every dropped vertex
+     * is within toleranceKm of the segment that replaced it. End points are always kept.
+     */
+    public BoundaryPack simplified(double toleranceKm) {
+        boolean[] keep = new boolean[lats.length];
+        int[] stack = new int[64];
+        int kept = 0;
+        for (int line = 0; line < lineStart.length; line++) {
+            int first = lineStart[line];
+            int last = first + lineLength[line] - 1;
+            if (last < first) {
+                continue;
+            }
+            keep[first] = true;
+            keep[last] = true;
+
+            // Explicit stack of [from, to] spans, the lines are far too long to recurse on
+            int top = 0;
+            stack[top++] = first;
+            stack[top++] = last;
+            while (top > 0) {
+                int to = stack[--top];
+                int from = stack[--top];
+                int farthest = -1;
+                double farthestKm = toleranceKm;
+                for (int i = from + 1; i < to; i++) {
+                    double deviation = GeoMath.distanceToSegmentKm(lats[i], lons[i],
+                            lats[from], lons[from], lats[to], lons[to]);
+                    if (deviation > farthestKm) {
+                        farthestKm = deviation;
+                        farthest = i;
+                    }
+                }
+                if (farthest >= 0) {
+                    keep[farthest] = true;
+                    if (top + 4 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = from;
+                    stack[top++] = farthest;
+                    stack[top++] = farthest;
+                    stack[top++] = to;
+                }
+            }
+        }
+        for (boolean k : keep) {
+            if (k) {
+                kept++;
+            }
+        }
+
+        double[] keptLats = new double[kept];
+        double[] keptLons = new double[kept];
+        int[] keptStart = new int[lineStart.length];
+        int[] keptLength = new int[lineStart.length];
+        int next = 0;
+        for (int line = 0; line < lineStart.length; line++) {
+            keptStart[line] = next;
+            for (int i = lineStart[line]; i < lineStart[line] + lineLength[line]; i++) {
+                if (keep[i]) {
+                    keptLats[next] = lats[i];
+                    keptLons[next] = lons[i];
+                    next++;
+                }
+            }
+            keptLength[line] = next - keptStart[line];
+        }
+        return new BoundaryPack(boundaryNames, lineBoundary, keptStart, keptLength, keptLats, keptLons, checksum);
+    }
+
+    // CRC32.update(ByteBuffer) needs API 26, so mapped files go through a small array. Also
+    // used for the DistanceField checksum.
+    static int crc32(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        while (data.hasRemaining()) {
+            int length = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static int alignTo8(int offset) {
+        return (offset + 7) & ~7;
+    }
+}
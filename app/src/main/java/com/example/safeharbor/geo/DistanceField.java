@@ -0,0 +1,236 @@
+package com.example.safeharbor.geo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Precomputed raster of lower bounds on the distance to the nearest boundary segment.
+ *
+ * Each cell stores, in tenths of a kilometre and rounded down, a distance that no point of the
+ * cell can be closer than. Reading it is one array access, so a fix that is clearly far from
+ * every border skips the exact search entirely; only when the bound falls under a threshold
+ * does the caller need {@link BoundaryIndex}.
+ *
+ * Building is hierarchical. One distance-limited query at the centre of a block of cells
+ * bounds every cell of the block, because distance to a set is 1-Lipschitz. Blocks close to a
+ * border are split in four and retried, down to a query per cell within NEAR_KM of a boundary.
+ *
+ * The raster for the bundled boundaries is built by the compileBoundaryPack Gradle task and
+ * shipped as {@link #ASSET_NAME}. The file is
+ * <pre>
+ *   int magic "HSDF", int version, int source hash, int rows, int cols,
+ *   int crc32 of everything after it,
+ *   double minLat, double minLon, double step,
+ *   double data minLat, data minLon, data maxLat, data maxLon,
+ *   short[rows * cols] cells, row by row
+ * </pre>
+ * all little-endian.
+ */
+public final class DistanceField {
+    public static final String ASSET_NAME = "distance_field.bin";
+    public static final double DEFAULT_STEP_DEGREES = 0.02; // about 2 km
+
+    private static final int MAGIC = 0x46445348; // "HSDF"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 80;
+    private static final int CHECKSUM_OFFSET = 20;
+    private static final double UNIT_KM = 0.1;
+    private static final int TOP_BLOCK = 32;
+    // Cells closer than this get their own exact query, farther ones a Lipschitz bound
+    private static final double NEAR_KM = 10;
+    // Bounds saturate here, nothing needs to know a border is more than 1000 km away
+    private static final double FAR_CAP_KM = 1000;
+    // How far past the boundary data the raster extends, in degrees
+    private static final double MARGIN_DEGREES = 1.0;
+
+    private final int sourceHash;
+    private final double minLat;
+    private final double minLon;
+    private final double step;
+    private final int rows;
+    private final int cols;
+    private final ShortBuffer cells;
+
+    // Box of the boundary data itself, for lookups that fall outside the raster
+    private final double dataMinLat;
+    private final double dataMinLon;
+    private final double dataMaxLat;
+    private final double dataMaxLon;
+
+    private DistanceField(int sourceHash, double minLat, double minLon, double step, int rows, int cols,
+                          double dataMinLat, double dataMinLon, double dataMaxLat, double dataMaxLon,
+                          ShortBuffer cells) {
+        this.sourceHash = sourceHash;
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.step = step;
+        this.rows = rows;
+        this.cols = cols;
+        this.dataMinLat = dataMinLat;
+        this.dataMinLon = dataMinLon;
+        this.dataMaxLat = dataMaxLat;
+        this.dataMaxLon = dataMaxLon;
+        this.cells = cells;
+    }
+
+    public static DistanceField build(BoundaryIndex index, int sourceHash, double step) {
+        double minLat = index.getMinLat() - MARGIN_DEGREES;
+        double minLon = index.getMinLon() - MARGIN_DEGREES;
+        int rows = (int) Math.ceil((index.getMaxLat() + MARGIN_DEGREES - minLat) / step);
+        int cols = (int) Math.ceil((index.getMaxLon() + MARGIN_DEGREES - minLon) / step);
+
+        Filler filler = new Filler(index, minLat, minLon, step, cols, new short[rows * cols]);
+        for (int r = 0; r < rows; r += TOP_BLOCK) {
+            for (int c = 0; c < cols; c += TOP_BLOCK) {
+                filler.fill(r, Math.min(r + TOP_BLOCK, rows), c, Math.min(c + TOP_BLOCK, cols), FAR_CAP_KM);
+            }
+        }
+        return new DistanceField(sourceHash, minLat, minLon, step, rows, cols,
+                index.getMinLat(), index.getMinLon(), index.getMaxLat(), index.getMaxLon(),
+                ShortBuffer.wrap(filler.values));
+    }
+
+    private static final class Filler {
+        private final BoundaryIndex.Query query;
+        private final double minLat;
+        private final double minLon;
+        private final double step;
+        private final int cols;
+        private final short[] values;
+        private final double cellRadius;
+
+        Filler(BoundaryIndex index, double minLat, double minLon, double step, int cols, short[] values) {
+            this.query = index.newQuery();
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.step = step;
+            this.cols = cols;
+            this.values = values;
+            this.cellRadius = l1HalfDiagonalKm(step, step);
+        }
+
+        // Fills rows [r0, r1) and columns [c0, c1), splitting the block while it is near a border
+        void fill(int r0, int r1, int c0, int c1, double limitKm) {
+            double centerLat = minLat + (r0 + r1) * step / 2;
+            double centerLon = minLon + (c0 + c1) * step / 2;
+            double distance = query.findWithin(centerLat, centerLon, limitKm);
+            if (Double.isInfinite(distance)) {
+                distance = limitKm; // nothing closer than the limit
+            }
+
+            boolean singleCell = r1 - r0 == 1 && c1 - c0 == 1;
+            double radius = l1HalfDiagonalKm((r1 - r0) * step, (c1 - c0) * step);
+            if (singleCell || distance - radius > NEAR_KM) {
+                for (int r = r0; r < r1; r++) {
+                    for (int c = c0; c < c1; c++) {
+                        double lat = minLat + (r + 0.5) * step;
+                        double lon = minLon + (c + 0.5) * step;
+                        // Distance to a set changes no faster than the distance travelled
+                        double bound = distance - l1DistanceKm(lat, lon, centerLat, centerLon) - cellRadius;
+                        values[r * cols + c] = quantize(bound);
+                    }
+                }
+                return;
+            }
+
+            int rMid = r1 - r0 > 1 ? (r0 + r1) / 2 : r1;
+            int cMid = c1 - c0 > 1 ? (c0 + c1) / 2 : c1;
+            fillPart(r0, rMid, c0, cMid);
+            fillPart(r0, rMid, cMid, c1);
+            fillPart(rMid, r1, c0, cMid);
+            fillPart(rMid, r1, cMid, c1);
+        }
+
+        private void fillPart(int r0, int r1, int c0, int c1) {
+            if (r0 < r1 && c0 < c1) {
+                double radius = l1HalfDiagonalKm((r1 - r0) * step, (c1 - c0) * step);
+                fill(r0, r1, c0, c1, NEAR_KM + radius + cellRadius);
+            }
+        }
+    }
+
+    /**
+     * Reads a raster written by writeTo, typically from a memory-mapped file, without copying.
+     * The whole file is checked against its checksum first, so a torn or truncated file is an
+     * IOException rather than wrong bounds.
+     */
+    public static DistanceField read(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("Not a distance field");
+        }
+        int sourceHash = in.getInt();
+        int rows = in.getInt();
+        int cols = in.getInt();
+        int checksum = in.getInt();
+        if (rows <= 0 || cols <= 0 || in.remaining() != HEADER_SIZE - CHECKSUM_OFFSET - 4 + (long) rows * cols * 2) {
+            throw new IOException("Truncated distance field");
+        }
+        if (BoundaryPack.crc32(in.duplicate()) != checksum) {
+            throw new IOException("Distance field checksum mismatch");
+        }
+        double minLat = in.getDouble();
+        double minLon = in.getDouble();
+        double step = in.getDouble();
+        double dataMinLat = in.getDouble();
+        double dataMinLon = in.getDouble();
+        double dataMaxLat = in.getDouble();
+        double dataMaxLon = in.getDouble();
+        ShortBuffer cells = in.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        return new DistanceField(sourceHash, minLat, minLon, step, rows, cols,
+                dataMinLat, dataMinLon, dataMaxLat, dataMaxLon, cells);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + rows * cols * 2).order(ByteOrder.LITTLE_ENDIAN);
+        file.putInt(MAGIC).putInt(VERSION).putInt(sourceHash).putInt(rows).putInt(cols).putInt(0);
+        file.putDouble(minLat).putDouble(minLon).putDouble(step);
+        file.putDouble(dataMinLat).putDouble(dataMinLon).putDouble(dataMaxLat).putDouble(dataMaxLon);
+        for (int i = 0; i < rows * cols; i++) {
+            file.putShort(cells.get(i));
+        }
+        file.position(CHECKSUM_OFFSET + 4);
+        file.putInt(CHECKSUM_OFFSET, BoundaryPack.crc32(file));
+        out.write(file.array());
+    }
+
+    /**
+     * Distance in kilometres that the nearest boundary is guaranteed not to be closer than.
+     * Within NEAR_KM of a border it is at most about one cell diagonal below the exact value.
+     */
+    public double lowerBoundKm(double lat, double lon) {
+        int r = (int) Math.floor((lat - minLat) / step);
+        int c = (int) Math.floor((lon - minLon) / step);
+        if (r < 0 || r >= rows || c < 0 || c >= cols) {
+            return GeoMath.boxLowerBoundKm(lat, lon, dataMinLat, dataMinLon, dataMaxLat, dataMaxLon);
+        }
+        return cells.get(r * cols + c) * UNIT_KM;
+    }
+
+    public int getSourceHash() {
+        return sourceHash;
+    }
+
+    public int getCellCount() {
+        return rows * cols;
+    }
+
+    private static short quantize(double boundKm) {
+        if (boundKm <= 0) {
+            return 0;
+        }
+        return (short) Math.min(Short.MAX_VALUE, Math.floor(boundKm / UNIT_KM));
+    }
+
+    // Walking along a meridian and then a parallel is never shorter than the great circle
+    private static double l1DistanceKm(double lat1, double lon1, double lat2, double lon2) {
+        return GeoMath.EARTH_RADIUS_KM * Math.toRadians(Math.abs(lat1 - lat2) + Math.abs(lon1 - lon2));
+    }
+
+    private static double l1HalfDiagonalKm(double heightDegrees, double widthDegrees) {
+        return GeoMath.EARTH_RADIUS_KM * Math.toRadians((heightDegrees + widthDegrees) / 2);
+    }
+}
@@ -0,0 +1,629 @@
+package com.example.safeharbor.geo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pull-based streaming reader for GeoJSON feature collections.
+ *
+ * The document is tokenised straight from the Reader through a fixed char buffer and no JSON
+ * tree is ever built. Each call to {@link #nextFeature()} consumes one feature and leaves its
+ * coordinates in reusable primitive arrays, so memory is bounded by the largest single feature
+ * and, beyond that, by the point budget given to the constructor. Only the property keys asked
+ * for are kept; every other value is skipped without being materialised.
+ *
+ * A bare array of positions (like eez_coordinates.json) is read as a single line feature.
+ */
+public final class GeoJsonReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final String[] wantedProperties;
+    private final Map<String, String> properties = new HashMap<>();
+    private final int maxPoints;
+    private final StringBuilder text = new StringBuilder();
+
+    private String geometryType;
+    private int pointCount;
+    private double[] lats = new double[256];
+    private double[] lons = new double[256];
+    private int ringCount;
+    private int[] ringStarts = new int[16];
+    private int partCount;
+    private int[] partStarts = new int[4];
+
+    // Whether we are inside the "features" array, or the document is a bare coordinate array
+    private boolean inFeatures;
+    private boolean bareCoordinates;
+    private boolean started;
+    private boolean finished;
+
+    public GeoJsonReader(Reader in, int maxPoints, String... wantedProperties) {
+        this.in = in;
+        this.maxPoints = maxPoints;
+        this.wantedProperties = wantedProperties;
+    }
+
+    public GeoJsonReader(Reader in, String... wantedProperties) {
+        this(in, Integer.MAX_VALUE, wantedProperties);
+    }
+
+    /**
+     * Advances to the next feature that has a geometry.
+     *
+     * @return false once the document is exhausted
+     */
+    public boolean nextFeature() throws IOException {
+        if (!started) {
+            started = true;
+            if (!openDocument()) {
+                return false;
+            }
+            if (bareCoordinates) {
+                resetFeature();
+                geometryType = "LineString";
+                readCoordinates();
+                finished = true;
+                return true;
+            }
+            if (!inFeatures) {
+                return true; // single Feature or geometry document, already read
+            }
+        }
+
+        while (inFeatures && !finished) {
+            int c = peekToken();
+            if (c == ']') {
+                position++;
+                inFeatures = false;
+                skipRestOfObject();
+                break;
+            }
+            if (c == ',') {
+                position++;
+                continue;
+            }
+            resetFeature();
+            readFeatureObject();
+            if (pointCount > 0) {
+                return true;
+            }
+        }
+        finished = true;
+        return false;
+    }
+
+    public String getGeometryType() {
+        return geometryType;
+    }
+
+    public String getProperty(String key) {
+        return properties.get(key);
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    // Latitudes of every point of the current feature, valid up to getPointCount()
+    public double[] getLats() {
+        return lats;
+    }
+
+    public double[] getLons() {
+        return lons;
+    }
+
+    // A ring is one LineString or one polygon ring
+    public int getRingCount() {
+        return ringCount;
+    }
+
+    public int getRingStart(int ring) {
+        return ringStarts[ring];
+    }
+
+    public int getRingLength(int ring) {
+        int end = ring + 1 < ringCount ? ringStarts[ring + 1] : pointCount;
+        return end - ringStarts[ring];
+    }
+
+    // A part is one polygon (its outer ring followed by its holes) or one line of a multi-line
+    public int getPartCount() {
+        return partCount;
+    }
+
+    public int getPartFirstRing(int part) {
+        return partStarts[part];
+    }
+
+    public int getPartRingCount(int part) {
+        int end = part + 1 < partCount ? partStarts[part + 1] : ringCount;
+        return end - partStarts[part];
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void resetFeature() {
+        geometryType = null;
+        properties.clear();
+        pointCount = 0;
+        ringCount = 0;
+        partCount = 0;
+    }
+
+    // Reads up to the first feature. Returns false for an empty document.
+    private boolean openDocument() throws IOException {
+        int c = peekToken();
+        if (c == -1) {
+            return false;
+        }
+        if (c == '[') {
+            bareCoordinates = true;
+            return true;
+        }
+        expect('{');
+        resetFeature();
+        while (true) {
+            c = peekToken();
+            if (c == '}') {
+                position++;
+                return pointCount > 0;
+            }
+            if (c == ',') {
+                position++;
+                continue;
+            }
+            String key = readString();
+            expect(':');
+            if ("features".equals(key)) {
+                expect('[');
+                inFeatures = true;
+                return true;
+            }
+            readFeatureMember(key);
+        }
+    }
+
+    private void readFeatureObject() throws IOException {
+        expect('{');
+        while (true) {
+            int c = peekToken();
+            if (c == '}') {
+                position++;
+                return;
+            }
+            if (c == ',') {
+                position++;
+                continue;
+            }
+            String key = readString();
+            expect(':');
+            readFeatureMember(key);
+        }
+    }
+
+    // Members shared by Feature objects and bare geometry objects
+    private void readFeatureMember(String key) throws IOException {
+        switch (key) {
+            case "geometry":
+                if (peekToken() == 'n') {
+                    skipValue();
+                } else {
+                    readGeometryObject();
+                }
+                break;
+            case "properties":
+                if (peekToken() == '{') {
+                    readProperties();
+                } else {
+                    skipValue();
+                }
+                break;
+            case "type":
+                String type = readScalar();
+                if (!"Feature".equals(type) && !"FeatureCollection".equals(type)) {
+                    geometryType = type;
+                }
+                break;
+            case "coordinates":
+                readCoordinates();
+                break;
+            default:
+                skipValue();
+        }
+    }
+
+    private void readGeometryObject() throws IOException {
+        expect('{');
+        while (true) {
+            int c = peekToken();
+            if (c == '}') {
+                position++;
+                return;
+            }
+            if (c == ',') {
+                position++;
+                continue;
+            }
+            String key = readString();
+            expect(':');
+            if ("type".equals(key)) {
+                geometryType = readScalar();
+            } else if ("coordinates".equals(key)) {
+                readCoordinates();
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    private void readProperties() throws IOException {
+        expect('{');
+        while (true) {
+            int c = peekToken();
+            if (c == '}') {
+                position++;
+                return;
+            }
+            if (c == ',') {
+                position++;
+                continue;
+            }
+            String key = readString();
+            expect(':');
+            if (isWanted(key) && peekToken() != '{' && peekToken() != '[') {
+                properties.put(key, readScalar());
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    private boolean isWanted(String key) {
+        for (String wanted : wantedProperties) {
+            if (wanted.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void readCoordinates() throws IOException {
+        int rank = readCoordinateArray();
+        if (rank == 0) {
+            return;
+        }
+        if (rank == 1) {
+            // A Point: give it a ring of its own so every geometry has at least one
+            addRingStart(pointCount - 1);
+        }
+        if (rank <= 2) {
+            addPartStart(0);
+        }
+    }
+
+    /**
+     * Reads one nesting level of a coordinates array and returns its rank: 1 for a position,
+     * 2 for a list of positions (a ring), 3 for a list of rings (a polygon), and so on.
+     */
+    private int readCoordinateArray() throws IOException {
+        expect('[');
+        int c = peekToken();
+        if (c == ']') {
+            position++;
+            return 0; // empty, contributes nothing
+        }
+        if (c != '[') {
+            readPosition();
+            return 1;
+        }
+
+        int firstPoint = pointCount;
+        int firstRing = ringCount;
+        int childRank = 0;
+        while (true) {
+            c = peekToken();
+            if (c == ']') {
+                position++;
+                break;
+            }
+            if (c == ',') {
+                position++;
+                continue;
+            }
+            int rank = readCoordinateArray();
+            if (rank > 0) {
+                childRank = rank;
+            }
+        }
+
+        if (childRank == 0) {
+            return 0;
+        }
+        if (childRank == 1) {
+            addRingStart(firstPoint);
+        } else if (childRank == 2) {
+            addPartStart(firstRing);
+        }
+        return childRank + 1;
+    }
+
+    // The opening bracket has been consumed
+    private void readPosition() throws IOException {
+        double lon = readNumber();
+        expect(',');
+        double lat = readNumber();
+        while (peekToken() == ',') {
+            position++;
+            readNumber(); // altitude
+        }
+        expect(']');
+
+        if (pointCount == maxPoints) {
+            throw new IOException("Feature exceeds the budget of " + maxPoints + " points");
+        }
+        if (pointCount == lats.length) {
+            int capacity = (int) Math.min((long) pointCount * 2, maxPoints);
+            lats = Arrays.copyOf(lats, capacity);
+            lons = Arrays.copyOf(lons, capacity);
+        }
+        lats[pointCount] = lat;
+        lons[pointCount] = lon;
+        pointCount++;
+    }
+
+    private void addRingStart(int point) {
+        if (ringCount == ringStarts.length) {
+            ringStarts = Arrays.copyOf(ringStarts, ringCount * 2);
+        }
+        ringStarts[ringCount++] = point;
+    }
+
+    private void addPartStart(int ring) {
+        if (partCount == partStarts.length) {
+            partStarts = Arrays.copyOf(partStarts, partCount * 2);
+        }
+        partStarts[partCount++] = ring;
+    }
+
+    // Parses a JSON number in place, without building a String for it
+    private double readNumber() throws IOException {
+        int c = peekToken();
+        boolean negative = false;
+        if (c == '-') {
+            negative = true;
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean any = false;
+        while ((c = peek()) != -1) {
+            if (c >= '0' && c <= '9') {
+                any = true;
+                // Digits past the 18th cannot change a coordinate in any meaningful way
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (fraction) {
+                        scale--;
+                    }
+                } else if (!fraction) {
+                    scale++;
+                }
+                position++;
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+                position++;
+            } else {
+                break;
+            }
+        }
+        if (!any) {
+            throw syntaxError("number");
+        }
+        if (c == 'e' || c == 'E') {
+            position++;
+            boolean negativeExponent = false;
+            c = peek();
+            if (c == '+' || c == '-') {
+                negativeExponent = c == '-';
+                position++;
+            }
+            int exponent = 0;
+            while ((c = peek()) >= '0' && c <= '9') {
+                exponent = Math.min(exponent * 10 + (c - '0'), 1000);
+                position++;
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        double value = mantissa;
+        if (scale < 0) {
+            value = -scale < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-scale] : value * Math.pow(10, scale);
+        } else if (scale > 0) {
+            value = scale < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[scale] : value * Math.pow(10, scale);
+        }
+        return negative ? -value : value;
+    }
+
+    // Reads a string, number, boolean or null as text. Returns null for JSON null.
+    private String readScalar() throws IOException {
+        int c = peekToken();
+        if (c == '"') {
+            return readString();
+        }
+        text.setLength(0);
+        while ((c = peek()) != -1 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+            text.append((char) c);
+            position++;
+        }
+        String value = text.toString();
+        return "null".equals(value) ? null : value;
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("closing quote");
+            }
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n': text.append('\n'); break;
+                    case 't': text.append('\t'); break;
+                    case 'r': text.append('\r'); break;
+                    case 'b': text.append('\b'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            code = code * 16 + Character.digit(read(), 16);
+                        }
+                        text.append((char) code);
+                        break;
+                    default:
+                        text.append((char) c);
+                }
+            } else {
+                text.append((char) c);
+            }
+        }
+    }
+
+    private void skipValue() throws IOException {
+        int c = peekToken();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = peekToken();
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == -1) {
+                    throw syntaxError("end of value");
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                position++;
+            } while (depth > 0);
+        } else {
+            while ((c = peek()) != -1 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+                position++;
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        expect('"');
+        int c;
+        while ((c = read()) != '"') {
+            if (c == -1) {
+                throw syntaxError("closing quote");
+            }
+            if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    // Skips whatever members of the top-level object follow the "features" array
+    private void skipRestOfObject() throws IOException {
+        while (true) {
+            int c = peekToken();
+            if (c == -1) {
+                return;
+            }
+            if (c == '}') {
+                position++;
+                return;
+            }
+            if (c == ',') {
+                position++;
+                continue;
+            }
+            readString();
+            expect(':');
+            skipValue();
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peekToken() != expected) {
+            throw syntaxError("'" + expected + "'");
+        }
+        position++;
+    }
+
+    private IOException syntaxError(String expected) {
+        return new IOException("Malformed GeoJSON, expected " + expected);
+    }
+
+    private int peekToken() throws IOException {
+        int c;
+        while ((c = peek()) != -1 && isWhitespace(c)) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.safeharbor.geo;
+
+/**
+ * Spherical geometry helpers shared by the border engine. All distances are in kilometres
+ * and all coordinates are in degrees.
+ */
+public final class GeoMath {
+    public static final double EARTH_RADIUS_KM = 6371;
+
+    private GeoMath() {
+    }
+
+    public static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+
+        double sinLat = Math.sin(latDistance / 2);
+        double sinLon = Math.sin(lonDistance / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    // Great-circle distance from a point to the minor arc between two vertices
+    public static double distanceToSegmentKm(double lat, double lon,
+                                             double lat1, double lon1,
+                                             double lat2, double lon2) {
+        double pLat = Math.toRadians(lat);
+        double pLon = Math.toRadians(lon);
+        double aLat = Math.toRadians(lat1);
+        double aLon = Math.toRadians(lon1);
+        double bLat = Math.toRadians(lat2);
+        double bLon = Math.toRadians(lon2);
+        double px = Math.cos(pLat) * Math.cos(pLon);
+        double py = Math.cos(pLat) * Math.sin(pLon);
+        double pz = Math.sin(pLat);
+        double ax = Math.cos(aLat) * Math.cos(aLon);
+        double ay = Math.cos(aLat) * Math.sin(aLon);
+        double az = Math.sin(aLat);
+        double bx = Math.cos(bLat) * Math.cos(bLon);
+        double by = Math.cos(bLat) * Math.sin(bLon);
+        double bz = Math.sin(bLat);
+
+        double nx = ay * bz - az * by;
+        double ny = az * bx - ax * bz;
+        double nz = ax * by - ay * bx;
+        double nLength = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (nLength < 1e-12) {
+            // Degenerate segment, both vertices are (nearly) the same point
+            nx = 0;
+            ny = 0;
+            nz = 0;
+        } else {
+            nx /= nLength;
+            ny /= nLength;
+            nz /= nLength;
+        }
+        return EARTH_RADIUS_KM * angleToArc(px, py, pz, ax, ay, az, bx, by, bz, nx, ny, nz);
+    }
+
+    /**
+     * Angle in radians from unit vector p to the minor arc from a to b, where n is the unit
+     * normal a x b, or zero for a degenerate arc. Does no trigonometry beyond one asin, so
+     * callers that keep vertices as unit vectors pay only for the query point's sin/cos.
+     */
+    public static double angleToArc(double px, double py, double pz,
+                                    double ax, double ay, double az,
+                                    double bx, double by, double bz,
+                                    double nx, double ny, double nz) {
+        // The foot of the perpendicular is on the arc when p is on the inner side of both
+        // planes n x a and b x n; these triple products are zero for a degenerate arc
+        double sideA = px * (ny * az - nz * ay) + py * (nz * ax - nx * az) + pz * (nx * ay - ny * ax);
+        double sideB = px * (by * nz - bz * ny) + py * (bz * nx - bx * nz) + pz * (bx * ny - by * nx);
+        if (sideA > 0 && sideB > 0) {
+            return Math.asin(Math.min(1, Math.abs(px * nx + py * ny + pz * nz)));
+        }
+
+        // Otherwise the nearer end point, from the chord length which stays precise up close
+        double dax = px - ax;
+        double day = py - ay;
+        double daz = pz - az;
+        double dbx = px - bx;
+        double dby = py - by;
+        double dbz = pz - bz;
+        double chordSquared = Math.min(dax * dax + day * day + daz * daz, dbx * dbx + dby * dby + dbz * dbz);
+        return 2 * Math.asin(Math.min(1, Math.sqrt(chordSquared) / 2));
+    }
+
+    /**
+     * Lower bound of the great-circle distance from a point to anything inside a latitude /
+     * longitude box. Used to prune index nodes, so it must never overestimate.
+     */
+    public static double boxLowerBoundKm(double lat, double lon,
+                                         double minLat, double minLon,
+                                         double maxLat, double maxLon) {
+        return boxLowerBoundKm(lat, Math.cos(Math.toRadians(lat)), lon, minLat, minLon, maxLat, maxLon);
+    }
+
+    /**
+     * As above, with the cosine of the query latitude worked out once by the caller, and no
+     * trigonometry per box: asin(x) >= x and sin(x) >= x - x^3 / 6 keep it a lower bound.
+     */
+    public static double boxLowerBoundKm(double lat, double cosLat, double lon,
+                                         double minLat, double minLon,
+                                         double maxLat, double maxLon) {
+        double latGap = 0;
+        if (lat < minLat) {
+            latGap = minLat - lat;
+        } else if (lat > maxLat) {
+            latGap = lat - maxLat;
+        }
+
+        double lonGap = 0;
+        if (lon < minLon || lon > maxLon) {
+            lonGap = Math.min(wrapDegrees(minLon - lon), wrapDegrees(lon - maxLon));
+        }
+
+        double bound = Math.toRadians(latGap);
+        if (lonGap > 0 && lonGap < 90) {
+            // Distance to the nearest bounding meridian's great circle, asin(cosLat sin(gap))
+            double gap = Math.toRadians(lonGap);
+            bound = Math.max(bound, cosLat * (gap - gap * gap * gap / 6));
+        }
+        return EARTH_RADIUS_KM * bound;
+    }
+
+    /**
+     * Highest and lowest latitude reached by the minor arc between two vertices. A great-circle
+     * arc bulges towards the pole, so its extent can exceed the latitudes of its end points.
+     */
+    public static double[] arcLatitudeRange(double lat1, double lon1, double lat2, double lon2) {
+        double minLat = Math.min(lat1, lat2);
+        double maxLat = Math.max(lat1, lat2);
+
+        double[] a = toUnitVector(lat1, lon1);
+        double[] b = toUnitVector(lat2, lon2);
+        double[] n = cross(a, b);
+        double nLength = Math.sqrt(dot(n, n));
+        if (nLength < 1e-12) {
+            return new double[]{minLat, maxLat};
+        }
+        n[0] /= nLength;
+        n[1] /= nLength;
+        n[2] /= nLength;
+
+        // Northern-most point of the whole great circle, the southern-most one is its antipode
+        double[] vertex = {-n[2] * n[0], -n[2] * n[1], 1 - n[2] * n[2]};
+        double vertexLength = Math.sqrt(dot(vertex, vertex));
+        if (vertexLength < 1e-12) {
+            // The arc lies on the equator
+            return new double[]{minLat, maxLat};
+        }
+        for (int sign = 1; sign >= -1; sign -= 2) {
+            double[] v = {sign * vertex[0] / vertexLength, sign * vertex[1] / vertexLength, sign * vertex[2] / vertexLength};
+            if (dot(cross(a, v), n) >= 0 && dot(cross(v, b), n) >= 0) {
+                double vertexLat = Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, v[2]))));
+                minLat = Math.min(minLat, vertexLat);
+                maxLat = Math.max(maxLat, vertexLat);
+            }
+        }
+        return new double[]{minLat, maxLat};
+    }
+
+    private static double wrapDegrees(double degrees) {
+        double wrapped = degrees % 360;
+        return wrapped < 0 ? wrapped + 360 : wrapped;
+    }
+
+    private static double[] toUnitVector(double lat, double lon) {
+        double latRad = Math.toRadians(lat);
+        double lonRad = Math.toRadians(lon);
+        double cosLat = Math.cos(latRad);
+        return new double[]{cosLat * Math.cos(lonRad), cosLat * Math.sin(lonRad), Math.sin(latRad)};
+    }
+
+    private static double[] cross(double[] a, double[] b) {
+        return new double[]{
+                a[1] * b[2] - a[2] * b[1],
+                a[2] * b[0] - a[0] * b[2],
+                a[0] * b[1] - a[1] * b[0]
+        };
+    }
+
+    private static double dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+}
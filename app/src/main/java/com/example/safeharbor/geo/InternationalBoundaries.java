@@ -0,0 +1,40 @@
+package com.example.safeharbor.geo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The boundary lines India shares with a neighbour, by name. Only these are borders a boat
+ * must not cross. Everything else in the boundary data is India's own: the straight baselines
+ * along the coast, the 200 NM limit of the EEZ, which opens onto the high seas, and the
+ * connection lines that close the gaps between them.
+ *
+ * The names are listed rather than matched by pattern, so a new line in the data is not a
+ * border until someone adds it here.
+ */
+public final class InternationalBoundaries {
+    public static final Set<String> NAMES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "Pakistan - India",
+            "Sri Lanka - India",
+            "Maldives - India",
+            "Bangladesh - India",
+            "India - Bangladesh")));
+
+    private InternationalBoundaries() {
+    }
+
+    public static boolean contains(String boundaryName) {
+        return NAMES.contains(boundaryName);
+    }
+
+    // Indexed by boundary id, true for the international ones
+    public static boolean[] flags(BoundaryIndex index) {
+        boolean[] international = new boolean[index.getBoundaryCount()];
+        for (int id = 0; id < international.length; id++) {
+            international[id] = contains(index.getBoundaryName(id));
+        }
+        return international;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.safeharbor.geo;
+
+/**
+ * Tells which Indian maritime zone a position is in, from the 12 NM territorial sea and the
+ * EEZ polygons. Both polygons stop at the coastline, so land also reads as outside.
+ */
+public final class MaritimeZones {
+    public static final String TERRITORIAL_SEA_ASSET = "india_12nm.geojson";
+    public static final String EEZ_ASSET = "india_eez.geojson";
+
+    public enum Zone {
+        TERRITORIAL_SEA("Indian territorial waters (12 NM)"),
+        EXCLUSIVE_ECONOMIC_ZONE("Indian EEZ"),
+        OUTSIDE("Outside Indian waters");
+
+        private final String label;
+
+        Zone(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public boolean isIndianWaters() {
+            return this != OUTSIDE;
+        }
+    }
+
+    private final PolygonGrid territorialSea;
+    private final PolygonGrid exclusiveEconomicZone;
+
+    public MaritimeZones(PolygonGrid territorialSea, PolygonGrid exclusiveEconomicZone) {
+        this.territorialSea = territorialSea;
+        this.exclusiveEconomicZone = exclusiveEconomicZone;
+    }
+
+    public long getHeapBytes() {
+        return territorialSea.getHeapBytes() + exclusiveEconomicZone.getHeapBytes();
+    }
+
+    public Zone classify(double lat, double lon) {
+        if (territorialSea.contains(lat, lon)) {
+            return Zone.TERRITORIAL_SEA;
+        }
+        if (exclusiveEconomicZone.contains(lat, lon)) {
+            return Zone.EXCLUSIVE_ECONOMIC_ZONE;
+        }
+        return Zone.OUTSIDE;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.safeharbor.geo;
+
+/**
+ * Nearest boundary segment for a stream of fixes from one moving boat.
+ *
+ * A full search anchors the tracker at a fix p0 with nearest distance d0 and keeps every
+ * segment within d0 + 2M of it, M being a margin picked from d0. While the boat stays within
+ * M of p0 its nearest distance is at most d0 + M, and by the triangle inequality any segment
+ * left out is farther than that, so the nearest segment is always among the kept ones. Only
+ * when the boat has moved more than M from the anchor does the tracker search the whole index
+ * again. Fixes 5 s apart move tens of metres, so most updates scan a handful of segments.
+ *
+ * Not thread safe, like the {@link BoundaryIndex.Query} it uses.
+ */
+public final class NearestSegmentTracker {
+    private static final double MIN_MARGIN_KM = 0.25;
+    private static final double MAX_MARGIN_KM = 5;
+    private static final int MAX_CANDIDATES = 512;
+
+    private final BoundaryIndex.Query query;
+    private final int[] candidates = new int[MAX_CANDIDATES];
+    private int candidateCount;
+
+    private boolean anchored;
+    private double anchorLat;
+    private double anchorLon;
+    private double marginKm;
+
+    private double distanceKm = Double.POSITIVE_INFINITY;
+    private int segment = -1;
+    private int boundaryId = -1;
+
+    private long updateCount;
+    private long fullSearchCount;
+
+    public NearestSegmentTracker(BoundaryIndex index) {
+        this.query = index.newQuery();
+    }
+
+    // Distance in km to the nearest segment of any boundary, POSITIVE_INFINITY if there is none
+    public double update(double lat, double lon) {
+        updateCount++;
+        if (anchored && GeoMath.haversineKm(anchorLat, anchorLon, lat, lon) <= marginKm) {
+            query.findAmong(lat, lon, candidates, candidateCount);
+        } else {
+            reanchor(lat, lon);
+        }
+        distanceKm = query.getDistanceKm();
+        segment = query.getSegment();
+        boundaryId = query.getBoundaryId();
+        return distanceKm;
+    }
+
+    // Forgets the anchor, e.g. after a gap in fixes, so the next update searches everything
+    public void reset() {
+        anchored = false;
+    }
+
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public int getSegment() {
+        return segment;
+    }
+
+    public int getBoundaryId() {
+        return boundaryId;
+    }
+
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    public long getFullSearchCount() {
+        return fullSearchCount;
+    }
+
+    private void reanchor(double lat, double lon) {
+        fullSearchCount++;
+        anchored = false;
+        double nearest = query.find(lat, lon);
+        if (Double.isInfinite(nearest)) {
+            return;
+        }
+
+        double margin = Math.max(MIN_MARGIN_KM, Math.min(MAX_MARGIN_KM, nearest / 10));
+        while (margin >= MIN_MARGIN_KM / 4) {
+            // The extra millimetre keeps the nearest segment itself in despite rounding
+            int count = query.collectWithin(lat, lon, nearest + 2 * margin + 1e-6, candidates);
+            if (count <= MAX_CANDIDATES) {
+                candidateCount = count;
+                anchorLat = lat;
+                anchorLon = lon;
+                marginKm = margin;
+                anchored = true;
+                break;
+            }
+            // Too many segments around, a busy stretch of border; try a tighter margin
+            margin /= 2;
+        }
+        // collectWithin reused the query, so work the answer for this fix out again
+        if (anchored) {
+            query.findAmong(lat, lon, candidates, candidateCount);
+        } else {
+            query.find(lat, lon);
+        }
+    }
+}
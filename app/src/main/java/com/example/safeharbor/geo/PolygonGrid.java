@@ -0,0 +1,246 @@
+package com.example.safeharbor.geo;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Constant-time inside/outside test for a (multi)polygon, using the even-odd rule in
+ * longitude/latitude space as GeoJSON defines polygons.
+ *
+ * The polygon's bounding box is cut into a uniform grid sized to about one edge per cell.
+ * Every cell knows the edges that touch it and whether its centre is inside, which is worked
+ * out once per row by a sorted ray sweep. A query inside a cell without edges is a single
+ * lookup; otherwise only the cell's own edges are tested against the short segment between the
+ * query point and the cell centre, each crossing flipping the centre's answer.
+ */
+public final class PolygonGrid {
+    private static final int MAX_CELLS_PER_SIDE = 1024;
+
+    private final double minLat;
+    private final double minLon;
+    private final double maxLat;
+    private final double maxLon;
+    private final int rows;
+    private final int cols;
+    private final double cellHeight;
+    private final double cellWidth;
+
+    // Edge e runs from (edgeLat[2e], edgeLon[2e]) to (edgeLat[2e + 1], edgeLon[2e + 1])
+    private final double[] edgeLat;
+    private final double[] edgeLon;
+
+    // Edges touching cell c are cellEdges[cellEdgeStart[c] .. cellEdgeStart[c + 1])
+    private final int[] cellEdgeStart;
+    private final int[] cellEdges;
+    private final boolean[] centerInside;
+
+    private PolygonGrid(double[] edgeLat, double[] edgeLon, int edgeCount) {
+        this.edgeLat = edgeLat;
+        this.edgeLon = edgeLon;
+
+        double la0 = Double.POSITIVE_INFINITY;
+        double lo0 = Double.POSITIVE_INFINITY;
+        double la1 = Double.NEGATIVE_INFINITY;
+        double lo1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < edgeCount * 2; i++) {
+            la0 = Math.min(la0, edgeLat[i]);
+            lo0 = Math.min(lo0, edgeLon[i]);
+            la1 = Math.max(la1, edgeLat[i]);
+            lo1 = Math.max(lo1, edgeLon[i]);
+        }
+        minLat = la0;
+        minLon = lo0;
+        maxLat = la1;
+        maxLon = lo1;
+
+        double height = Math.max(maxLat - minLat, 1e-9);
+        double width = Math.max(maxLon - minLon, 1e-9);
+        double side = Math.sqrt(Math.max(edgeCount, 1) * width / height);
+        cols = clamp((int) Math.ceil(side));
+        rows = clamp((int) Math.ceil(Math.max(edgeCount, 1) / (double) cols));
+        cellHeight = height / rows;
+        cellWidth = width / cols;
+
+        int cells = rows * cols;
+        cellEdgeStart = new int[cells + 1];
+        int[] rowEdgeStart = new int[rows + 1];
+
+        // Counting pass, then a filling pass into compressed row/cell edge lists
+        for (int e = 0; e < edgeCount; e++) {
+            int r0 = row(Math.min(edgeLat[2 * e], edgeLat[2 * e + 1]));
+            int r1 = row(Math.max(edgeLat[2 * e], edgeLat[2 * e + 1]));
+            int c0 = col(Math.min(edgeLon[2 * e], edgeLon[2 * e + 1]));
+            int c1 = col(Math.max(edgeLon[2 * e], edgeLon[2 * e + 1]));
+            for (int r = r0; r <= r1; r++) {
+                rowEdgeStart[r + 1]++;
+                for (int c = c0; c <= c1; c++) {
+                    cellEdgeStart[r * cols + c + 1]++;
+                }
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            rowEdgeStart[r + 1] += rowEdgeStart[r];
+        }
+        for (int c = 0; c < cells; c++) {
+            cellEdgeStart[c + 1] += cellEdgeStart[c];
+        }
+        int[] rowEdges = new int[rowEdgeStart[rows]];
+        cellEdges = new int[cellEdgeStart[cells]];
+        int[] rowFill = Arrays.copyOf(rowEdgeStart, rows);
+        int[] cellFill = Arrays.copyOf(cellEdgeStart, cells);
+        for (int e = 0; e < edgeCount; e++) {
+            int r0 = row(Math.min(edgeLat[2 * e], edgeLat[2 * e + 1]));
+            int r1 = row(Math.max(edgeLat[2 * e], edgeLat[2 * e + 1]));
+            int c0 = col(Math.min(edgeLon[2 * e], edgeLon[2 * e + 1]));
+            int c1 = col(Math.max(edgeLon[2 * e], edgeLon[2 * e + 1]));
+            for (int r = r0; r <= r1; r++) {
+                rowEdges[rowFill[r]++] = e;
+                for (int c = c0; c <= c1; c++) {
+                    cellEdges[cellFill[r * cols + c]++] = e;
+                }
+            }
+        }
+
+        centerInside = new boolean[cells];
+        double[] crossings = new double[16];
+        for (int r = 0; r < rows; r++) {
+            double y = minLat + (r + 0.5) * cellHeight;
+            int count = 0;
+            for (int i = rowEdgeStart[r]; i < rowEdgeStart[r + 1]; i++) {
+                int e = rowEdges[i];
+                double y1 = edgeLat[2 * e];
+                double y2 = edgeLat[2 * e + 1];
+                if ((y1 > y) != (y2 > y)) {
+                    if (count == crossings.length) {
+                        crossings = Arrays.copyOf(crossings, count * 2);
+                    }
+                    double x1 = edgeLon[2 * e];
+                    double x2 = edgeLon[2 * e + 1];
+                    crossings[count++] = x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+                }
+            }
+            Arrays.sort(crossings, 0, count);
+
+            // A centre is inside when an odd number of crossings lie west of it
+            int west = 0;
+            for (int c = 0; c < cols; c++) {
+                double x = minLon + (c + 0.5) * cellWidth;
+                while (west < count && crossings[west] < x) {
+                    west++;
+                }
+                centerInside[r * cols + c] = (west & 1) == 1;
+            }
+        }
+    }
+
+    /**
+     * Builds a grid from every Polygon and MultiPolygon feature left in the reader. All rings
+     * of all features are combined under the even-odd rule.
+     */
+    public static PolygonGrid fromGeoJson(GeoJsonReader reader) throws IOException {
+        double[] edgeLat = new double[1024];
+        double[] edgeLon = new double[1024];
+        int edgeCount = 0;
+
+        while (reader.nextFeature()) {
+            String type = reader.getGeometryType();
+            if (!"Polygon".equals(type) && !"MultiPolygon".equals(type)) {
+                continue;
+            }
+            double[] lats = reader.getLats();
+            double[] lons = reader.getLons();
+            for (int ring = 0; ring < reader.getRingCount(); ring++) {
+                int start = reader.getRingStart(ring);
+                int length = reader.getRingLength(ring);
+                if (length < 3) {
+                    continue;
+                }
+                for (int i = 0; i < length; i++) {
+                    // The last edge closes the ring when the file does not repeat the first point
+                    int a = start + i;
+                    int b = start + (i + 1) % length;
+                    if (lats[a] == lats[b] && lons[a] == lons[b]) {
+                        continue;
+                    }
+                    if (2 * edgeCount + 2 > edgeLat.length) {
+                        edgeLat = Arrays.copyOf(edgeLat, edgeLat.length * 2);
+                        edgeLon = Arrays.copyOf(edgeLon, edgeLon.length * 2);
+                    }
+                    edgeLat[2 * edgeCount] = lats[a];
+                    edgeLon[2 * edgeCount] = lons[a];
+                    edgeLat[2 * edgeCount + 1] = lats[b];
+                    edgeLon[2 * edgeCount + 1] = lons[b];
+                    edgeCount++;
+                }
+            }
+        }
+        return new PolygonGrid(Arrays.copyOf(edgeLat, 2 * edgeCount), Arrays.copyOf(edgeLon, 2 * edgeCount), edgeCount);
+    }
+
+    public boolean contains(double lat, double lon) {
+        if (lat < minLat || lat > maxLat || lon < minLon || lon > maxLon) {
+            return false;
+        }
+        int r = row(lat);
+        int c = col(lon);
+        int cell = r * cols + c;
+        boolean inside = centerInside[cell];
+        if (cellEdgeStart[cell] == cellEdgeStart[cell + 1]) {
+            return inside;
+        }
+
+        double centerLat = minLat + (r + 0.5) * cellHeight;
+        double centerLon = minLon + (c + 0.5) * cellWidth;
+        for (int i = cellEdgeStart[cell]; i < cellEdgeStart[cell + 1]; i++) {
+            int e = cellEdges[i];
+            if (crosses(lon, lat, centerLon, centerLat,
+                    edgeLon[2 * e], edgeLat[2 * e], edgeLon[2 * e + 1], edgeLat[2 * e + 1])) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    public int getEdgeCount() {
+        return edgeLat.length / 2;
+    }
+
+    public int getCellCount() {
+        return centerInside.length;
+    }
+
+    // Heap taken by the edge and cell arrays, for reporting
+    public long getHeapBytes() {
+        return 2L * Double.BYTES * edgeLat.length + (long) Integer.BYTES * (cellEdgeStart.length + cellEdges.length)
+                + centerInside.length;
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) ((lat - minLat) / cellHeight)));
+    }
+
+    private int col(double lon) {
+        return Math.max(0, Math.min(cols - 1, (int) ((lon - minLon) / cellWidth)));
+    }
+
+    private static int clamp(int cells) {
+        return Math.max(1, Math.min(MAX_CELLS_PER_SIDE, cells));
+    }
+
+    // Whether segment p1-p2 crosses segment q1-q2, half-open at q2 so a shared vertex counts once
+    private static boolean crosses(double p1x, double p1y, double p2x, double p2y,
+                                   double q1x, double q1y, double q2x, double q2y) {
+        double d1 = orientation(q1x, q1y, q2x, q2y, p1x, p1y);
+        double d2 = orientation(q1x, q1y, q2x, q2y, p2x, p2y);
+        if ((d1 > 0) == (d2 > 0)) {
+            return false;
+        }
+        double d3 = orientation(p1x, p1y, p2x, p2y, q1x, q1y);
+        double d4 = orientation(p1x, p1y, p2x, p2y, q2x, q2y);
+        return (d3 > 0) != (d4 > 0);
+    }
+
+    private static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+}
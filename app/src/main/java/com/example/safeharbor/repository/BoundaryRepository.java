@@ -0,0 +1,166 @@
+package com.example.safeharbor.repository;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.safeharbor.geo.BoundaryIndex;
+import com.example.safeharbor.geo.BoundaryLevels;
+import com.example.safeharbor.geo.BoundaryPack;
+import com.example.safeharbor.geo.DistanceField;
+import com.example.safeharbor.geo.InternationalBoundaries;
+import com.example.safeharbor.geo.MaritimeZones;
+import com.example.safeharbor.utils.BoundaryAssets;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The boundary data of the process, loaded once and shared by every activity and service.
+ * The first getInstance starts loading in the background; callers then wait for the snapshot
+ * with {@link #await}, get called back with {@link #whenReady}, or check {@link #getIfReady}.
+ *
+ * The maritime zones and the distance raster take longer and come after the boundaries. They
+ * are optional: until they are ready their getters return null and callers fall back to the
+ * exact index. The raster covers the international boundaries only, like the alerts it screens
+ * for.
+ */
+public final class BoundaryRepository {
+    private static final String TAG = "BoundaryRepository";
+
+    private static volatile BoundaryRepository instance;
+
+    // Immutable, safe to use from any thread
+    public static final class Snapshot {
+        // Null when the assets could not be read; the index is empty then
+        public final BoundaryPack pack;
+        public final BoundaryIndex index;
+        // Only the lines shared with a neighbour, see InternationalBoundaries; null with pack
+        public final BoundaryPack internationalPack;
+        public final BoundaryIndex internationalIndex;
+        public final BoundaryLevels levels;
+        public final long loadMillis;
+
+        Snapshot(BoundaryPack pack, BoundaryIndex index, BoundaryPack internationalPack,
+                 BoundaryIndex internationalIndex, BoundaryLevels levels, long loadMillis) {
+            this.pack = pack;
+            this.index = index;
+            this.internationalPack = internationalPack;
+            this.internationalIndex = internationalIndex;
+            this.levels = levels;
+            this.loadMillis = loadMillis;
+        }
+
+        public long getHeapBytes() {
+            return (pack != null ? pack.getHeapBytes() + internationalPack.getHeapBytes() : 0)
+                    + index.getHeapBytes() + internationalIndex.getHeapBytes() + levels.getCoarseHeapBytes();
+        }
+    }
+
+    private final Context context;
+    private final CompletableFuture<Snapshot> snapshot = new CompletableFuture<>();
+    private volatile MaritimeZones maritimeZones;
+    private volatile DistanceField distanceField;
+
+    private BoundaryRepository(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static BoundaryRepository getInstance(Context context) {
+        BoundaryRepository repository = instance;
+        if (repository == null) {
+            synchronized (BoundaryRepository.class) {
+                repository = instance;
+                if (repository == null) {
+                    repository = new BoundaryRepository(context);
+                    repository.startLoading();
+                    instance = repository;
+                }
+            }
+        }
+        return repository;
+    }
+
+    // Blocks until the boundaries are loaded; never on the main thread
+    public Snapshot await() {
+        return snapshot.join();
+    }
+
+    // The boundaries if they are loaded already, otherwise null
+    public Snapshot getIfReady() {
+        return snapshot.getNow(null);
+    }
+
+    // Runs callback with the snapshot, on the loading thread or right away if it is loaded
+    public void whenReady(Consumer<Snapshot> callback) {
+        snapshot.thenAccept(callback);
+    }
+
+    public MaritimeZones getMaritimeZones() {
+        return maritimeZones;
+    }
+
+    public DistanceField getDistanceField() {
+        return distanceField;
+    }
+
+    private void startLoading() {
+        new Thread(() -> {
+            Snapshot loaded = loadSnapshot();
+            snapshot.complete(loaded);
+            Log.d(TAG, "Boundaries ready in " + loaded.loadMillis + " ms: " + loaded.index.getSegmentCount()
+                    + " segments, " + loaded.getHeapBytes() / 1024 + " KB");
+
+            if (loaded.pack != null && !loaded.internationalIndex.isEmpty()) {
+                try {
+                    distanceField = BoundaryAssets.loadDistanceField(context, loaded.internationalPack,
+                            loaded.internationalIndex);
+                } catch (IOException | RuntimeException e) {
+                    // A bad raster only costs the shortcut, the exact search still works
+                    Log.e(TAG, "Error loading distance field", e);
+                }
+            }
+        }, "BoundaryLoader").start();
+
+        // The zone polygons are large, grid them alongside the boundaries
+        new Thread(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                MaritimeZones zones = BoundaryAssets.loadMaritimeZones(context);
+                maritimeZones = zones;
+                Log.d(TAG, "Maritime zones ready in " + (SystemClock.elapsedRealtime() - start) + " ms, "
+                        + zones.getHeapBytes() / 1024 + " KB");
+            } catch (IOException | RuntimeException e) {
+                // A bad asset must not take the process down, the zones stay unknown
+                Log.e(TAG, "Error loading maritime zones", e);
+            }
+        }, "MaritimeZonesLoader").start();
+    }
+
+    private Snapshot loadSnapshot() {
+        long start = SystemClock.elapsedRealtime();
+        BoundaryPack pack = null;
+        BoundaryIndex index;
+        BoundaryPack internationalPack = null;
+        BoundaryIndex internationalIndex;
+        BoundaryLevels levels;
+        try {
+            pack = BoundaryAssets.loadBoundaries(context);
+            index = pack.toIndex();
+            internationalPack = pack.onlyBoundaries(InternationalBoundaries.NAMES);
+            internationalIndex = internationalPack.toIndex();
+            levels = BoundaryLevels.build(pack, index, BoundaryLevels.DEFAULT_TOLERANCES_KM);
+        } catch (IOException | RuntimeException e) {
+            // Waiters must not hang on a bad asset, they get an empty index instead
+            Log.e(TAG, "Error loading boundaries", e);
+            pack = null;
+            index = new BoundaryIndex.Builder().build();
+            internationalPack = null;
+            internationalIndex = index;
+            levels = BoundaryLevels.exactOnly(index);
+        }
+        return new Snapshot(pack, index, internationalPack, internationalIndex, levels,
+                SystemClock.elapsedRealtime() - start);
+    }
+}
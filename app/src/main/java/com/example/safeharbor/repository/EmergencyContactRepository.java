@@ -4,6 +4,8 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import com.example.safeharbor.data.EmergencyContact;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -11,6 +13,11 @@ import java.util.Set;
 public class EmergencyContactRepository {
     private static final String PREFS_NAME = "EmergencyContacts";
     private static final String KEY_CONTACTS = "contacts";
+    // Primary contacts first, then by priority; the name keeps the order stable
+    private static final Comparator<EmergencyContact> ALERT_ORDER = Comparator
+            .comparing((EmergencyContact contact) -> !contact.isPrimary())
+            .thenComparingInt(EmergencyContact::getPriority)
+            .thenComparing(EmergencyContact::getName);
     private final SharedPreferences prefs;
 
     public EmergencyContactRepository(Context context) {
@@ -25,6 +32,7 @@ public class EmergencyContactRepository {
         prefs.edit().putStringSet(KEY_CONTACTS, contactStrings).apply();
     }
 
+    // In the order they are alerted
     public List<EmergencyContact> getContacts() {
         Set<String> contactStrings = prefs.getStringSet(KEY_CONTACTS, new HashSet<>());
         List<EmergencyContact> contacts = new ArrayList<>();
@@ -35,15 +43,27 @@ public class EmergencyContactRepository {
                 contacts.add(contact);
             }
         }
+        contacts.sort(ALERT_ORDER);
         return contacts;
     }
 
+    // Priority for a contact added after all existing ones
+    public int getNextPriority() {
+        int next = 0;
+        for (EmergencyContact contact : getContacts()) {
+            next = Math.max(next, contact.getPriority() + 1);
+        }
+        return next;
+    }
+
     public void addContact(EmergencyContact newContact) {
         List<EmergencyContact> contacts = getContacts();
         // Check for duplicates
         for (int i = 0; i < contacts.size(); i++) {
             if (contacts.get(i).getPhoneNumber().equals(newContact.getPhoneNumber())) {
-                contacts.set(i, newContact); // Replace existing contact
+                // Replace existing contact, keeping its place in the alert order
+                newContact.setPriority(contacts.get(i).getPriority());
+                contacts.set(i, newContact);
                 saveContacts(contacts);
                 return;
             }
@@ -52,6 +72,33 @@ public class EmergencyContactRepository {
         saveContacts(contacts);
     }
 
+    /**
+     * Moves a contact one place earlier (direction -1) or later (+1) in the alert order and
+     * renumbers every priority to match. Primary contacts always come first, so a contact only
+     * changes places with one of its own kind; returns false if there is none that way.
+     */
+    public boolean moveContact(String phoneNumber, int direction) {
+        List<EmergencyContact> contacts = getContacts();
+        int from = -1;
+        for (int i = 0; i < contacts.size(); i++) {
+            if (contacts.get(i).getPhoneNumber().equals(phoneNumber)) {
+                from = i;
+                break;
+            }
+        }
+        int to = from + direction;
+        if (from < 0 || to < 0 || to >= contacts.size()
+                || contacts.get(to).isPrimary() != contacts.get(from).isPrimary()) {
+            return false;
+        }
+        Collections.swap(contacts, from, to);
+        for (int i = 0; i < contacts.size(); i++) {
+            contacts.get(i).setPriority(i);
+        }
+        saveContacts(contacts);
+        return true;
+    }
+
     public void removeContact(String phoneNumber) {
         List<EmergencyContact> contacts = getContacts();
         contacts.removeIf(contact -> contact.getPhoneNumber().equals(phoneNumber));
@@ -4,25 +4,40 @@ import android.app.Service;
 import android.content.Intent;
 import android.location.Location;
 import android.os.IBinder;
-import android.os.Handler;
-import android.os.Looper;
+import android.util.Log;
 import androidx.annotation.Nullable;
-import com.example.safeharbor.utils.LocationUtils;
+import com.example.safeharbor.BorderEvaluator;
+import com.example.safeharbor.LocationHub;
+import com.example.safeharbor.geo.BorderCrossingDetector;
+import com.example.safeharbor.geo.BoundaryIndex;
+import com.example.safeharbor.geo.InternationalBoundaries;
+import com.example.safeharbor.geo.MaritimeZones;
+import com.example.safeharbor.repository.BoundaryRepository;
 import android.widget.Toast;
 
+import java.util.List;
+
+/**
+ * Sends an SOS automatically when the boat has crossed an international maritime boundary.
+ * It has no timer of its own: every fix from the shared stream is fed to a
+ * {@link BorderCrossingDetector}, and nothing runs between fixes.
+ */
 public class BorderMonitoringService extends Service {
-    private static final long CHECK_INTERVAL = 60000; // Check every minute
-    private static final float BORDER_DISTANCE_THRESHOLD = 0; // 0 km from border
-    private Handler handler;
-    private LocationUtils locationUtils;
+    private static final String TAG = "BorderMonitoring";
+
+    private final BorderEvaluator evaluator = BorderEvaluator.getInstance();
     private boolean isMonitoring = false;
+    // Used on the evaluation thread only
+    private BoundaryIndex boundaryIndex;
+    private BorderCrossingDetector crossingDetector;
+    // The track's first side comes from the zones, which load separately; until they are
+    // ready the boat is taken to be at home
+    private boolean startedFromZones;
+    private BoundaryRepository boundaryRepository;
 
-    @Override
-    public void onCreate() {
-        super.onCreate();
-        handler = new Handler(Looper.getMainLooper());
-        locationUtils = new LocationUtils(this);
-    }
+    // Fixes come from the shared stream as LocationMonitoringService receives them, on the
+    // evaluation thread
+    private final LocationHub.Listener locationListener = this::checkBorderCrossing;
 
     @Nullable
     @Override
@@ -40,52 +55,56 @@ public class BorderMonitoringService extends Service {
 
     private void startMonitoring() {
         isMonitoring = true;
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                checkBorderDistance();
-                if (isMonitoring) {
-                    handler.postDelayed(this, CHECK_INTERVAL);
-                }
-            }
+        // Subscribed only once the boundaries are loaded, on the evaluation thread, so no fix
+        // reaches the listener before the detector exists
+        evaluator.post(() -> {
+            loadBoundaries();
+            LocationHub.getInstance().subscribe(locationListener);
         });
     }
 
-    private void checkBorderDistance() {
-        Location currentLocation = locationUtils.getLastKnownLocation();
-        if (currentLocation != null) {
-            float distanceToBorder = calculateDistanceToBorder(currentLocation);
-            
-            if (distanceToBorder <= BORDER_DISTANCE_THRESHOLD) {
-                triggerSOS();
-            }
-        }
+    // Shared with the activity and the other services, loaded once per process
+    private void loadBoundaries() {
+        boundaryRepository = BoundaryRepository.getInstance(this);
+        boundaryIndex = boundaryRepository.await().index;
+        crossingDetector = new BorderCrossingDetector(boundaryIndex, InternationalBoundaries.flags(boundaryIndex));
     }
 
-    private float calculateDistanceToBorder(Location location) {
-        // This is a simplified example. In a real app, you would:
-        // 1. Have a list of border coordinates
-        // 2. Calculate the minimum distance to any border segment
-        // For demonstration, we'll use a simple point as border
-        Location borderPoint = new Location("");
-        borderPoint.setLatitude(12.3456); // Example border point
-        borderPoint.setLongitude(78.9012);
-        
-        return location.distanceTo(borderPoint) / 1000; // Convert meters to kilometers
+    private void checkBorderCrossing(List<Location> locations) {
+        MaritimeZones zones = boundaryRepository.getMaritimeZones();
+        for (Location location : locations) {
+            double lat = location.getLatitude();
+            double lon = location.getLongitude();
+            if (!startedFromZones && zones != null) {
+                crossingDetector.start(lat, lon, zones);
+                startedFromZones = true;
+            }
+            // A fix inside Indian waters cannot be across; land also reads as outside, so
+            // the zones can only veto a crossing here, never report one
+            boolean inIndianWaters = zones != null && zones.classify(lat, lon).isIndianWaters();
+            double accuracyKm = location.hasAccuracy() ? location.getAccuracy() / 1000.0 : 0;
+            int boundaryId = crossingDetector.update(lat, lon, accuracyKm, inIndianWaters);
+            if (boundaryId >= 0) {
+                triggerSOS(boundaryIndex.getBoundaryName(boundaryId));
+            }
+        }
     }
 
-    private void triggerSOS() {
+    private void triggerSOS(String boundaryName) {
+        Log.w(TAG, "Confirmed crossing of " + boundaryName + ", sending SOS");
         Intent sosIntent = new Intent(this, SOSService.class);
         sosIntent.setAction("SEND_SOS");
         startService(sosIntent);
-        
-        Toast.makeText(this, "Border distance alert! Sending SOS...", Toast.LENGTH_LONG).show();
+
+        evaluator.postToMain(() ->
+                Toast.makeText(this, "Crossed the " + boundaryName + " border! Sending SOS...", Toast.LENGTH_LONG).show());
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         isMonitoring = false;
-        handler.removeCallbacksAndMessages(null);
+        // Queued behind a subscription that may still be waiting for the boundaries
+        evaluator.post(() -> LocationHub.getInstance().unsubscribe(locationListener));
     }
-} 
\ No newline at end of file
+}
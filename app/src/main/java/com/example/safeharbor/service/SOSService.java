@@ -2,31 +2,26 @@ package com.example.safeharbor.service;
 
 import android.Manifest;
 import android.app.Service;
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.IBinder;
-import android.telephony.SmsManager;
 import android.widget.Toast;
 import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
+import com.example.safeharbor.LocationHub;
 import com.example.safeharbor.data.EmergencyContact;
 import com.example.safeharbor.repository.EmergencyContactRepository;
+import com.example.safeharbor.sos.SmsDispatcher;
+import com.example.safeharbor.sos.SosBeacon;
+import com.example.safeharbor.sos.SosCodec;
 import com.example.safeharbor.utils.LocationUtils;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
-import java.util.Set;
 import android.util.Log;
-import java.util.ArrayList;
 
 public class SOSService extends Service {
     private static final String TAG = "SOSService";
-    private static final String OFFLINE_PREFS = "OfflineMessages";
     private EmergencyContactRepository contactRepository;
     private LocationUtils locationUtils;
 
@@ -52,6 +47,8 @@ public class SOSService extends Service {
             handleSOS();
         } else if (intent != null && "RETRY_MESSAGES".equals(intent.getAction())) {
             retrySendingMessages();
+        } else if (intent != null && "STOP_SOS_TRACKING".equals(intent.getAction())) {
+            SosBeacon.getInstance(this).stop();
         }
         return START_STICKY;
     }
@@ -66,7 +63,7 @@ public class SOSService extends Service {
             return;
         }
 
-        // Get emergency contacts
+        // Get emergency contacts, in the order they are alerted
         List<EmergencyContact> contacts = contactRepository.getContacts();
         if (contacts.isEmpty()) {
             Log.w(TAG, "No emergency contacts found");
@@ -75,85 +72,37 @@ public class SOSService extends Service {
         }
 
         // Get current location
-        Location location = locationUtils.getLastKnownLocation();
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
-                .format(new Date());
-
-        // Create and send message
-        String message = createSOSMessage(location, timestamp);
-        EmergencyContact contact = contacts.get(0); // We only have one contact
-        sendSOSMessage(contact.getPhoneNumber(), message);
-    }
-
-    private void sendSOSMessage(String phoneNumber, String message) {
-        Log.d(TAG, "Attempting to send SOS message to: " + phoneNumber);
-        
-        try {
-            SmsManager smsManager = SmsManager.getDefault();
-            ArrayList<String> messageParts = smsManager.divideMessage(message);
-            
-            if (messageParts.size() > 1) {
-                // For long messages that need to be split
-                smsManager.sendMultipartTextMessage(
-                    phoneNumber,
-                    null,
-                    messageParts,
-                    null,
-                    null
-                );
-            } else {
-                // For single messages
-                smsManager.sendTextMessage(
-                    phoneNumber,
-                    null,
-                    message,
-                    null,
-                    null
-                );
-            }
-            
-            Log.d(TAG, "SOS message sent successfully");
-            Toast.makeText(this, "SOS alert sent to emergency contact", Toast.LENGTH_LONG).show();
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to send SOS message", e);
-            Toast.makeText(this, "Failed to send SOS. Saving for retry when possible.", Toast.LENGTH_LONG).show();
-            storeOfflineMessage(phoneNumber, message);
+        // The shared stream has the freshest fix; the platform cache only if it has none yet
+        Location location = LocationHub.getInstance().getLastLocation();
+        if (location == null) {
+            location = locationUtils.getLastKnownLocation();
         }
-    }
 
-    private String createSOSMessage(Location location, String timestamp) {
-        StringBuilder message = new StringBuilder();
-        message.append("🆘 EMERGENCY SOS ALERT!\n");
-        message.append("Time: ").append(timestamp).append("\n\n");
-        
-        if (location != null) {
-            message.append("Current Location:\n");
-            message.append(String.format(Locale.US, "Latitude: %.6f\n", location.getLatitude()));
-            message.append(String.format(Locale.US, "Longitude: %.6f\n\n", location.getLongitude()));
-            
-            // Add Google Maps link
-            message.append("View location on map:\n");
-            message.append(String.format(Locale.US, 
-                "https://www.google.com/maps?q=%.6f,%.6f",
-                location.getLatitude(), location.getLongitude()
-            ));
-        } else {
-            message.append("Location: Not available\n");
-            message.append("Please contact authorities immediately!");
+        // One GSM-7 segment, so each recipient's alert is a single SMS
+        String message = createSOSMessage(location);
+        // Every contact at once, in priority order; each is retried until the radio confirms it
+        List<String> phoneNumbers = new ArrayList<>(contacts.size());
+        for (EmergencyContact contact : contacts) {
+            phoneNumbers.add(contact.getPhoneNumber());
         }
-        
-        return message.toString();
+        long group = SmsDispatcher.getInstance(this).sendToAll(phoneNumbers, message);
+        Log.d(TAG, "SOS queued for " + phoneNumbers.size() + " contacts as group " + group);
+        // Then keep them posted on where the boat drifts
+        SosBeacon.getInstance(this).start(phoneNumbers);
+        Toast.makeText(this, "Sending SOS alert to " + phoneNumbers.size()
+                + (phoneNumbers.size() == 1 ? " emergency contact..." : " emergency contacts..."), Toast.LENGTH_LONG).show();
     }
 
-    private void storeOfflineMessage(String phoneNumber, String message) {
-        Log.d(TAG, "Storing message for offline sending");
-        SharedPreferences prefs = getSharedPreferences(OFFLINE_PREFS, Context.MODE_PRIVATE);
-        Set<String> messages = prefs.getStringSet("messages", new HashSet<>());
-        Set<String> updatedMessages = new HashSet<>(messages);
-        updatedMessages.add(phoneNumber + "||" + message);
-        prefs.edit().putStringSet("messages", updatedMessages).apply();
-        
-        Log.d(TAG, "Message stored successfully");
+    private String createSOSMessage(Location location) {
+        long now = System.currentTimeMillis();
+        if (location == null) {
+            return SosCodec.encode(SosCodec.Report.withoutPosition(now));
+        }
+        return SosCodec.encode(new SosCodec.Report(now,
+                location.getLatitude(), location.getLongitude(), location.getTime(),
+                location.hasSpeed() ? SosCodec.toKnots(location.getSpeed()) : Double.NaN,
+                location.hasBearing() ? Math.round(location.getBearing()) : -1,
+                location.hasAccuracy() ? Math.round(location.getAccuracy()) : -1));
     }
 
     private void retrySendingMessages() {
@@ -164,22 +113,6 @@ public class SOSService extends Service {
             return;
         }
 
-        SharedPreferences prefs = getSharedPreferences(OFFLINE_PREFS, Context.MODE_PRIVATE);
-        Set<String> messages = prefs.getStringSet("messages", new HashSet<>());
-        Set<String> remainingMessages = new HashSet<>();
-
-        for (String entry : messages) {
-            String[] parts = entry.split("\\|\\|");
-            if (parts.length == 2) {
-                try {
-                    sendSOSMessage(parts[0], parts[1]);
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to retry sending message", e);
-                    remainingMessages.add(entry);
-                }
-            }
-        }
-
-        prefs.edit().putStringSet("messages", remainingMessages).apply();
+        SmsDispatcher.getInstance(this).resumePending();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.example.safeharbor.sos;
+
+import java.util.Random;
+
+/**
+ * Retry delays that double per attempt up to a cap, with "equal jitter": half the delay is
+ * fixed and the other half random. Phones that lost signal together then do not all retry
+ * at the same instant when the cell comes back, and no retry comes much sooner than planned.
+ */
+public final class Backoff {
+    private final long baseMillis;
+    private final long maxMillis;
+    private final Random random;
+
+    public Backoff(long baseMillis, long maxMillis, Random random) {
+        if (baseMillis <= 0 || maxMillis < baseMillis) {
+            throw new IllegalArgumentException("Bad backoff range " + baseMillis + ".." + maxMillis);
+        }
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.random = random;
+    }
+
+    // Delay before the retry that follows failed attempt number attempt, counted from 1
+    public long delayMillis(int attempt) {
+        int doublings = Math.max(0, Math.min(attempt - 1, 30));
+        long ceiling = Math.min(maxMillis, baseMillis << doublings);
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.safeharbor.sos;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Wakes {@link SosBeacon} when a beacon is due. Declared in the manifest, so the alarm still
+ * reaches it after the process was killed, and tracking is picked up again after a reboot,
+ * which clears every alarm.
+ */
+public class BeaconAlarmReceiver extends BroadcastReceiver {
+    static final String ACTION_WAKE = "com.example.safeharbor.BEACON_ALARM";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (ACTION_WAKE.equals(intent.getAction()) || Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            SosBeacon.getInstance(context).onAlarm();
+        }
+    }
+}
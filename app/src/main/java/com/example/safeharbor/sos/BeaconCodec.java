@@ -0,0 +1,243 @@
+package com.example.safeharbor.sos;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The follow-up beacons sent while an SOS is active, and their reader for a rescuer's tool.
+ * Like the SOS itself each beacon is one GSM-7 SMS, and it carries as much of the recent drift
+ * track as fits:
+ * <pre>
+ *   SOS+ SafeHarbor #3
+ *   POS 8.51234N 76.91234E
+ *   UTC 2024-03-01 04:12:09Z
+ *   BAT 35%
+ *   TRK hgcKbaQbJa...
+ *   maps.google.com/?q=8.51234,76.91234
+ * </pre>
+ * POS and UTC are the newest fix. TRK walks back from it, one older fix after another, each as
+ * three numbers: seconds earlier in tens, then how far south and west in 1e-4 degrees (about
+ * 11 m), every one relative to the fix before it. A drifting boat moves little between fixes,
+ * so a fix usually takes three to six characters and a dozen or more fit.
+ *
+ * The numbers are zig-zag encoded so small negatives stay small, then written five bits at a
+ * time, lowest first, from two 32 character alphabets: all but the last character of a number
+ * come from the first, the last from the second. That needs no separators and uses only
+ * letters, digits, '+' and '*', which no SMS app rewrites.
+ */
+public final class BeaconCodec {
+    private static final String HEADER = "SOS+ SafeHarbor #";
+    private static final String MORE_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ012345";
+    private static final String LAST_DIGITS = "abcdefghijklmnopqrstuvwxyz6789+*";
+    private static final double DEGREE_UNITS = 1e4;
+    private static final long TIME_UNIT_MS = 10_000;
+
+    public static final class Fix {
+        public final long timeMillis;
+        public final double latitude;
+        public final double longitude;
+
+        public Fix(long timeMillis, double latitude, double longitude) {
+            this.timeMillis = timeMillis;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    public static final class Beacon {
+        public final int sequence;
+        // -1 when the phone did not say
+        public final int batteryPercent;
+        // Newest first; empty when the boat had no fix
+        public final List<Fix> track;
+        // When it was sent if there is no fix, otherwise the newest fix's time
+        public final long timeMillis;
+
+        Beacon(int sequence, int batteryPercent, List<Fix> track, long timeMillis) {
+            this.sequence = sequence;
+            this.batteryPercent = batteryPercent;
+            this.track = track;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    private BeaconCodec() {
+    }
+
+    /**
+     * Encodes the newest fixes that fit one SMS. newestFirst may hold more than fit; the
+     * oldest are left out. With no fixes the beacon only says the phone is still alive. If the
+     * beacon does not fit even without a track, which takes a position far out of range, the
+     * map link is left out too, and if that is still too long it goes out whole in several parts.
+     */
+    public static String encode(int sequence, int batteryPercent, List<Fix> newestFirst, long nowMillis) {
+        String encoded = encode(sequence, batteryPercent, newestFirst, nowMillis, true);
+        if (SosCodec.isSingleSegment(encoded)) {
+            return encoded;
+        }
+        String withoutLink = encode(sequence, batteryPercent, newestFirst, nowMillis, false);
+        return SosCodec.isSingleSegment(withoutLink) ? withoutLink : encoded;
+    }
+
+    private static String encode(int sequence, int batteryPercent, List<Fix> newestFirst, long nowMillis,
+                                 boolean withLink) {
+        StringBuilder text = new StringBuilder(SosCodec.SEGMENT_CHARS);
+        text.append(HEADER).append(sequence).append('\n');
+        if (newestFirst.isEmpty()) {
+            text.append("POS UNKNOWN\n");
+        } else {
+            Fix newest = newestFirst.get(0);
+            text.append("POS ").append(SosCodec.formatPosition(newest.latitude, newest.longitude)).append('\n');
+        }
+        long timeMillis = newestFirst.isEmpty() ? nowMillis : newestFirst.get(0).timeMillis;
+        text.append("UTC ").append(SosCodec.timeFormat().format(new Date(timeMillis))).append('\n');
+        if (batteryPercent >= 0) {
+            text.append("BAT ").append(Math.min(batteryPercent, 100)).append("%\n");
+        }
+        if (newestFirst.isEmpty()) {
+            text.setLength(text.length() - 1);
+            return text.toString();
+        }
+
+        Fix newest = newestFirst.get(0);
+        String link = SosCodec.MAP_LINK + String.format(Locale.US, "%.5f,%.5f", newest.latitude, newest.longitude);
+        // What the track may take: the rest of the segment after "TRK " and, before the link, its newline
+        int budget = SosCodec.SEGMENT_CHARS - text.length() - 4 - (withLink ? 1 + link.length() : 0);
+        StringBuilder track = new StringBuilder(Math.max(budget, 0));
+        StringBuilder next = new StringBuilder(24);
+        // Deltas between quantised positions, so rounding never accumulates along the track
+        long time = quantiseTime(timeMillis);
+        long lat = quantiseDegrees(newest.latitude);
+        long lon = quantiseDegrees(newest.longitude);
+        for (int i = 1; i < newestFirst.size(); i++) {
+            Fix fix = newestFirst.get(i);
+            long fixTime = quantiseTime(fix.timeMillis);
+            long fixLat = Math.round(fix.latitude * DEGREE_UNITS);
+            long fixLon = Math.round(fix.longitude * DEGREE_UNITS);
+            next.setLength(0);
+            writeNumber(next, time - fixTime);
+            writeNumber(next, lat - fixLat);
+            writeNumber(next, lon - fixLon);
+            if (track.length() + next.length() > budget) {
+                break;
+            }
+            track.append(next);
+            time = fixTime;
+            lat = fixLat;
+            lon = fixLon;
+        }
+        if (track.length() > 0) {
+            text.append("TRK ").append(track).append('\n');
+        }
+        if (withLink) {
+            text.append(link);
+        } else {
+            text.setLength(text.length() - 1);
+        }
+        return text.toString();
+    }
+
+    // Whether text is a beacon from this app, without reading the rest of it
+    public static boolean isBeacon(String text) {
+        return text.startsWith(HEADER);
+    }
+
+    // Null if text is not a beacon from this app or cannot be read
+    public static Beacon decode(String text) {
+        String[] lines = text.trim().split("\r?\n");
+        if (lines.length < 3 || !lines[0].trim().startsWith(HEADER)) {
+            return null;
+        }
+        try {
+            int sequence = Integer.parseInt(lines[0].trim().substring(HEADER.length()));
+            int batteryPercent = -1;
+            long timeMillis = -1;
+            Fix newest = null;
+            String track = "";
+            for (int i = 1; i < lines.length; i++) {
+                String line = lines[i].trim();
+                if (line.startsWith("POS ")) {
+                    String[] parts = line.substring(4).split(" ");
+                    if (parts.length == 2) {
+                        newest = new Fix(0, SosCodec.parseHemisphere(parts[0], 'N', 'S'),
+                                SosCodec.parseHemisphere(parts[1], 'E', 'W'));
+                    }
+                } else if (line.startsWith("UTC ")) {
+                    timeMillis = SosCodec.timeFormat().parse(line.substring(4)).getTime();
+                } else if (line.startsWith("BAT ")) {
+                    batteryPercent = Integer.parseInt(line.substring(4).replace("%", ""));
+                } else if (line.startsWith("TRK ")) {
+                    track = line.substring(4);
+                }
+            }
+            if (timeMillis < 0) {
+                return null;
+            }
+            if (newest == null) {
+                return new Beacon(sequence, batteryPercent, Collections.emptyList(), timeMillis);
+            }
+
+            List<Fix> fixes = new ArrayList<>();
+            fixes.add(new Fix(timeMillis, newest.latitude, newest.longitude));
+            long time = quantiseTime(timeMillis);
+            long lat = quantiseDegrees(newest.latitude);
+            long lon = quantiseDegrees(newest.longitude);
+            int[] position = {0};
+            while (position[0] < track.length()) {
+                time -= readNumber(track, position);
+                lat -= readNumber(track, position);
+                lon -= readNumber(track, position);
+                fixes.add(new Fix(time * TIME_UNIT_MS, lat / DEGREE_UNITS, lon / DEGREE_UNITS));
+            }
+            return new Beacon(sequence, batteryPercent, fixes, timeMillis);
+        } catch (ParseException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long quantiseTime(long timeMillis) {
+        return Math.floorDiv(timeMillis, TIME_UNIT_MS);
+    }
+
+    // The newest fix is written to 1e-5 degrees; both sides round it the same way from there
+    private static long quantiseDegrees(double degrees) {
+        long fine = Math.round(degrees * 1e5);
+        return Math.floorDiv(fine + 5, 10);
+    }
+
+    private static void writeNumber(StringBuilder out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while (zigzag >= 32) {
+            out.append(MORE_DIGITS.charAt((int) (zigzag & 31)));
+            zigzag >>>= 5;
+        }
+        out.append(LAST_DIGITS.charAt((int) zigzag));
+    }
+
+    private static long readNumber(String text, int[] position) {
+        long zigzag = 0;
+        int shift = 0;
+        while (true) {
+            if (position[0] >= text.length() || shift > 60) {
+                throw new IllegalArgumentException("Truncated track");
+            }
+            char c = text.charAt(position[0]++);
+            int digit = LAST_DIGITS.indexOf(c);
+            if (digit >= 0) {
+                zigzag |= (long) digit << shift;
+                break;
+            }
+            digit = MORE_DIGITS.indexOf(c);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Bad track character " + c);
+            }
+            zigzag |= (long) digit << shift;
+            shift += 5;
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
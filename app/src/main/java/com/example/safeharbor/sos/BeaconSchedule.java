@@ -0,0 +1,40 @@
+package com.example.safeharbor.sos;
+
+/**
+ * How long to wait before the next follow-up beacon. The aim is a beacon for about every
+ * quarter nautical mile the boat drifts, so a fast drift is reported often and a boat that is
+ * barely moving does not spend its battery saying so. A low battery stretches the interval: a
+ * phone that lasts the night is worth more than a denser track.
+ */
+public final class BeaconSchedule {
+    public static final long MIN_INTERVAL_MS = 3 * 60_000;
+    public static final long MAX_INTERVAL_MS = 30 * 60_000;
+    // Even on a nearly flat battery a beacon goes out this often
+    public static final long MAX_LOW_BATTERY_INTERVAL_MS = 2 * 3_600_000L;
+
+    private static final double NM_PER_BEACON = 0.25;
+    // For when the drift is not known yet; wind and current move a boat about this fast
+    private static final double DEFAULT_DRIFT_KNOTS = 1.0;
+    // Below this a fix's own noise looks like drift
+    private static final double MIN_DRIFT_KNOTS = 0.2;
+
+    private BeaconSchedule() {
+    }
+
+    /**
+     * @param driftKnots     speed over ground from the recent track, NaN when unknown
+     * @param batteryPercent remaining charge, negative when unknown
+     */
+    public static long intervalMillis(double driftKnots, int batteryPercent) {
+        double knots = Double.isNaN(driftKnots) ? DEFAULT_DRIFT_KNOTS : Math.max(driftKnots, MIN_DRIFT_KNOTS);
+        long interval = (long) (NM_PER_BEACON / knots * 3_600_000);
+        interval = Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, interval));
+
+        if (batteryPercent >= 0 && batteryPercent < 15) {
+            interval *= 4;
+        } else if (batteryPercent >= 0 && batteryPercent < 30) {
+            interval *= 2;
+        }
+        return Math.min(interval, MAX_LOW_BATTERY_INTERVAL_MS);
+    }
+}
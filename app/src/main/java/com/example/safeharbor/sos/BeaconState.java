@@ -0,0 +1,124 @@
+package com.example.safeharbor.sos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * What an active SOS tracking mode needs to carry on after the process is killed or the phone
+ * restarts: who gets the beacons, when tracking started, the last beacon number and when the
+ * next one is due. Kept in filesDir next to the {@link SosOutbox}, as one small file that is
+ * replaced whole on every change:
+ * <pre>
+ *   int magic, int crc32 of the rest
+ *   long started, long next due, long interval   wall clock ms and ms
+ *   int sequence, int recipient count
+ *   recipients   as int byte count and UTF-8
+ * </pre>
+ * A file that does not check out reads as no tracking, which the next SOS starts afresh.
+ */
+public final class BeaconState {
+    public static final String FILE_NAME = "sos_beacon.state";
+
+    private static final int MAGIC = 0x42434E31; // "BCN1"
+    // A state file longer than this is corruption, not a list of contacts
+    private static final int MAX_BYTES = 64 * 1024;
+
+    public final List<String> phoneNumbers;
+    public final long startedMillis;
+    // Number of the last beacon sent, 0 before the first
+    public final int sequence;
+    // Wall clock time the next beacon is due, and the interval that was picked for it
+    public final long nextDueMillis;
+    public final long intervalMillis;
+
+    public BeaconState(List<String> phoneNumbers, long startedMillis, int sequence, long nextDueMillis, long intervalMillis) {
+        this.phoneNumbers = Collections.unmodifiableList(new ArrayList<>(phoneNumbers));
+        this.startedMillis = startedMillis;
+        this.sequence = sequence;
+        this.nextDueMillis = nextDueMillis;
+        this.intervalMillis = intervalMillis;
+    }
+
+    // Null if there is no file or it cannot be read
+    public static BeaconState read(File file) throws IOException {
+        if (!file.exists() || file.length() < 8 || file.length() > MAX_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.getInt() != MAGIC) {
+            return null;
+        }
+        int checksum = buffer.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.position(), buffer.remaining());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        try {
+            long startedMillis = buffer.getLong();
+            long nextDueMillis = buffer.getLong();
+            long intervalMillis = buffer.getLong();
+            int sequence = buffer.getInt();
+            int count = buffer.getInt();
+            List<String> phoneNumbers = new ArrayList<>(Math.min(Math.max(count, 0), 64));
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                phoneNumbers.add(new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8));
+                buffer.position(buffer.position() + length);
+            }
+            return new BeaconState(phoneNumbers, startedMillis, sequence, nextDueMillis, intervalMillis);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the file with this state. Written to a temporary file, synced and renamed over
+     * the old one, so a crash leaves either the old state or the new one.
+     */
+    public void write(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 32 * phoneNumbers.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(0);
+        out.writeLong(startedMillis);
+        out.writeLong(nextDueMillis);
+        out.writeLong(intervalMillis);
+        out.writeInt(sequence);
+        out.writeInt(phoneNumbers.size());
+        for (String phoneNumber : phoneNumbers) {
+            byte[] encoded = phoneNumber.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        byte[] data = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data, 8, data.length - 8);
+        ByteBuffer.wrap(data).putInt(4, (int) crc.getValue());
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            stream.write(data);
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    // Ends tracking for good; false if the file could not be removed
+    public static boolean clear(File file) {
+        return !file.exists() || file.delete();
+    }
+}
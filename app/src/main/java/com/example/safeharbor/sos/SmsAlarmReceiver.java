@@ -0,0 +1,21 @@
+package com.example.safeharbor.sos;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Wakes the {@link SmsDispatcher} for its retries and report timeouts. Declared in the
+ * manifest, so the alarm still reaches it after the process was killed, and the pending
+ * messages are picked up again after a reboot, which clears every alarm.
+ */
+public class SmsAlarmReceiver extends BroadcastReceiver {
+    static final String ACTION_WAKE = "com.example.safeharbor.SMS_ALARM";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (ACTION_WAKE.equals(intent.getAction()) || Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            SmsDispatcher.getInstance(context).onAlarm();
+        }
+    }
+}
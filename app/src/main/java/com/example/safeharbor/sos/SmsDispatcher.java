@@ -0,0 +1,591 @@
+package com.example.safeharbor.sos;
+
+import android.app.Activity;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.SmsManager;
+import android.telephony.SmsMessage;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.example.safeharbor.OfflineMessageStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sends SOS messages and follows each one until the network confirms it. Every part of every
+ * attempt carries its own sent and delivered PendingIntent; a message counts as sent when the
+ * radio reports RESULT_OK for all its parts, and stays in the outbox until every part is
+ * reported delivered. Errors, attempts the radio never reports on and sent messages that get
+ * no delivery report are retried with exponential backoff and jitter, and straight away when
+ * the phone gets back into service.
+ *
+ * The timeouts and retries run on an AlarmManager alarm on the elapsed realtime clock, which
+ * keeps counting and fires in deep sleep and Doze, where a Handler's uptime clock stops. The
+ * CPU is held awake for a few seconds per attempt, until the radio has reported on it. Every
+ * attempt is recorded in the outbox with its retry time, so an alarm that finds the process
+ * gone, or a reboot, carries on with the same count. A message is given up on after
+ * MAX_ATTEMPTS attempts, after MAX_UNCONFIRMED_SENDS sends with no delivery report, or a day
+ * after it was raised, and a follow-up beacon as soon as a newer one is sent; that is recorded
+ * in the outbox too.
+ *
+ * An SOS to several contacts is journaled with one fsync and then handed to the radio for all
+ * of them at once, in priority order, without waiting on any recipient's report; each is
+ * followed on its own. Such a fan-out is a group whose time to its last recipient is logged.
+ *
+ * Must be created and used on the main thread. State is kept per message, so the time from
+ * raising an SOS to its delivery can be read back.
+ */
+public final class SmsDispatcher {
+    private static final String TAG = "SmsDispatcher";
+    private static final String ACTION_SENT = "com.example.safeharbor.SMS_SENT";
+    private static final String ACTION_DELIVERED = "com.example.safeharbor.SMS_DELIVERED";
+    // The report intents are told apart by sms-report://<id>/<attempt>/<part>
+    private static final String REPORT_SCHEME = "sms-report";
+
+    private static final long RETRY_BASE_MS = 5_000;
+    private static final long RETRY_MAX_MS = 5 * 60_000;
+    // An attempt the radio has not reported on after this long counts as failed
+    private static final long SENT_TIMEOUT_MS = 60_000;
+    // A sent message with no delivery report after this long is sent again
+    private static final long DELIVERY_TIMEOUT_MS = 10 * 60_000;
+    // The radio reports on an attempt within seconds; the CPU is not held longer than this
+    private static final long ATTEMPT_WAKE_MS = 15_000;
+    private static final int MAX_ATTEMPTS = 60;
+    // Some networks never send delivery reports; stop resending to them after this many
+    private static final int MAX_UNCONFIRMED_SENDS = 3;
+    private static final long MAX_AGE_MS = 24 * 3_600_000L;
+    // Finished messages kept for their timings
+    private static final int MAX_FINISHED = 64;
+    // Fan-outs kept for their timings
+    private static final int MAX_GROUPS = 16;
+
+    public enum State {
+        SENDING,
+        WAITING_RETRY,
+        SENT,
+        DELIVERED,
+        GAVE_UP
+    }
+
+    // Main thread only
+    public static final class Status {
+        private final long id;
+        private final long groupId;
+        private final String phoneNumber;
+        private final String message;
+        private final long createdMillis;
+        private State state = State.SENDING;
+        private int attempts;
+        // Attempts the radio accepted every part of
+        private int sends;
+        // Elapsed realtime at which the state times out, MAX_VALUE for never
+        private long dueElapsed = Long.MAX_VALUE;
+        private int parts;
+        private int partsSent;
+        private int partsDelivered;
+        private long sentMillis;
+        private long deliveredMillis;
+        private String lastError;
+
+        Status(long id, long groupId, String phoneNumber, String message, long createdMillis) {
+            this.id = id;
+            this.groupId = groupId;
+            this.phoneNumber = phoneNumber;
+            this.message = message;
+            this.createdMillis = createdMillis;
+        }
+
+        // The outbox sequence number, negative if the message could not be journaled
+        public long getId() {
+            return id;
+        }
+
+        // The fan-out this message is part of, 0 if it was sent on its own
+        public long getGroupId() {
+            return groupId;
+        }
+
+        public String getPhoneNumber() {
+            return phoneNumber;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public int getSends() {
+            return sends;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        // From raising the SOS to the radio accepting every part, -1 until then
+        public long getMillisToSent() {
+            return sentMillis > 0 ? sentMillis - createdMillis : -1;
+        }
+
+        // From raising the SOS to the recipient's phone having every part, -1 until then
+        public long getMillisToDelivered() {
+            return deliveredMillis > 0 ? deliveredMillis - createdMillis : -1;
+        }
+    }
+
+    private static SmsDispatcher instance;
+
+    private final Context context;
+    private final AlarmManager alarmManager;
+    private final PendingIntent alarmIntent;
+    private final PowerManager.WakeLock wakeLock;
+    private final Backoff backoff = new Backoff(RETRY_BASE_MS, RETRY_MAX_MS, new Random());
+    private final LinkedHashMap<Long, Status> statuses = new LinkedHashMap<>();
+    private final LinkedHashMap<Long, List<Status>> groups = new LinkedHashMap<>();
+    private long nextUnjournaledId = -1;
+    private long nextGroupId = 1;
+    private boolean inService = true;
+    private long alarmElapsed = Long.MAX_VALUE;
+
+    private SmsDispatcher(Context context) {
+        this.context = context.getApplicationContext();
+        alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE);
+        alarmIntent = PendingIntent.getBroadcast(this.context, 0,
+                new Intent(this.context, SmsAlarmReceiver.class).setAction(SmsAlarmReceiver.ACTION_WAKE),
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        PowerManager powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "SafeHarbor:SmsAttempt");
+        wakeLock.setReferenceCounted(false);
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_SENT);
+        filter.addAction(ACTION_DELIVERED);
+        filter.addDataScheme(REPORT_SCHEME);
+        ContextCompat.registerReceiver(this.context, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onReport(intent, getResultCode());
+            }
+        }, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        TelephonyManager telephony = (TelephonyManager) this.context.getSystemService(Context.TELEPHONY_SERVICE);
+        if (telephony != null) {
+            telephony.listen(new PhoneStateListener() {
+                @Override
+                public void onServiceStateChanged(ServiceState serviceState) {
+                    onServiceState(serviceState.getState() == ServiceState.STATE_IN_SERVICE);
+                }
+            }, PhoneStateListener.LISTEN_SERVICE_STATE);
+        }
+    }
+
+    public static synchronized SmsDispatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new SmsDispatcher(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Journals the message in the outbox and starts sending it. Returns the id to look its
+     * status up by.
+     */
+    public long send(String phoneNumber, String message) {
+        long seq = OfflineMessageStore.saveMessage(context, phoneNumber, message);
+        Status status = track(seq, 0, phoneNumber, message, System.currentTimeMillis());
+        attempt(status);
+        trimFinished();
+        return status.id;
+    }
+
+    /**
+     * Sends the same message to every number, in the order given, and returns the group id to
+     * look their statuses up by with {@link #getGroup}. All are journaled before the first one
+     * is sent.
+     */
+    public long sendToAll(List<String> phoneNumbers, String message) {
+        long[] seqs = OfflineMessageStore.saveMessages(context, phoneNumbers, message);
+        long groupId = nextGroupId++;
+        long createdMillis = System.currentTimeMillis();
+        List<Status> members = new ArrayList<>(phoneNumbers.size());
+        for (int i = 0; i < seqs.length; i++) {
+            members.add(track(seqs[i], groupId, phoneNumbers.get(i), message, createdMillis));
+        }
+        groups.put(groupId, members);
+        // Only hands the parts to the radio, so no recipient waits on another
+        for (Status status : members) {
+            attempt(status);
+        }
+        Log.d(TAG, "Group " + groupId + ": " + members.size() + " recipients handed to the radio in "
+                + (System.currentTimeMillis() - createdMillis) + " ms");
+        trimFinished();
+        return groupId;
+    }
+
+    /**
+     * Sends a follow-up beacon like {@link #sendToAll}, after giving up on every older beacon
+     * that is not delivered yet, including ones left in the outbox by an earlier process. The
+     * newer position makes them worthless, and resending them would only hold up the new one.
+     * The SOS itself is never superseded.
+     */
+    public long sendBeacon(List<String> phoneNumbers, String beacon) {
+        loadPending();
+        for (Status status : new ArrayList<>(statuses.values())) {
+            if (status.state != State.DELIVERED && status.state != State.GAVE_UP
+                    && BeaconCodec.isBeacon(status.message)) {
+                giveUp(status, "superseded by a newer beacon");
+            }
+        }
+        return sendToAll(phoneNumbers, beacon);
+    }
+
+    // Picks up outbox messages nobody is working on, such as after a restart, and retries
+    // the waiting ones now
+    public void resumePending() {
+        loadPending();
+        retryWaitingNow();
+    }
+
+    // From SmsAlarmReceiver: picks up the outbox if the process was restarted for the alarm,
+    // then handles whatever is due
+    void onAlarm() {
+        alarmElapsed = Long.MAX_VALUE;
+        loadPending();
+        long now = SystemClock.elapsedRealtime();
+        for (Status status : new ArrayList<>(statuses.values())) {
+            if (status.dueElapsed > now) {
+                continue;
+            }
+            if (status.state == State.SENDING) {
+                onAttemptFailed(status, status.attempts, "no report from the radio");
+            } else if (status.state == State.WAITING_RETRY) {
+                attempt(status);
+            } else if (status.state == State.SENT) {
+                Log.w(TAG, "Message " + status.id + " has no delivery report, sending it again");
+                attempt(status);
+            }
+        }
+        scheduleAlarm();
+    }
+
+    public Status getStatus(long id) {
+        return statuses.get(id);
+    }
+
+    public List<Status> getStatuses() {
+        return new ArrayList<>(statuses.values());
+    }
+
+    // Per recipient, in the order they were sent to; empty once the group is forgotten
+    public List<Status> getGroup(long groupId) {
+        List<Status> members = groups.get(groupId);
+        return members != null ? new ArrayList<>(members) : new ArrayList<>();
+    }
+
+    private Status track(long seq, long groupId, String phoneNumber, String message, long createdMillis) {
+        Status status = new Status(seq >= 0 ? seq : nextUnjournaledId--, groupId, phoneNumber, message, createdMillis);
+        statuses.put(status.id, status);
+        return status;
+    }
+
+    // Outbox messages this process does not know yet, waiting for the retry time they were given
+    private void loadPending() {
+        try {
+            long nowMillis = System.currentTimeMillis();
+            long nowElapsed = SystemClock.elapsedRealtime();
+            for (SosOutbox.Entry entry : OfflineMessageStore.getOutbox(context).getPending()) {
+                if (!statuses.containsKey(entry.seq)) {
+                    Status status = track(entry.seq, 0, entry.phoneNumber, entry.message, entry.createdMillis);
+                    status.state = State.WAITING_RETRY;
+                    status.attempts = entry.attempts;
+                    status.sends = entry.sends;
+                    // No state waits longer than for a delivery report, whatever the clock did
+                    long delay = Math.max(0, Math.min(entry.nextAttemptMillis - nowMillis, DELIVERY_TIMEOUT_MS));
+                    status.dueElapsed = nowElapsed + delay;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read the outbox", e);
+        }
+        scheduleAlarm();
+    }
+
+    private void attempt(Status status) {
+        String reason = reasonToGiveUp(status);
+        if (reason != null) {
+            giveUp(status, reason);
+            return;
+        }
+        status.state = State.SENDING;
+        status.attempts++;
+        status.partsSent = 0;
+        status.partsDelivered = 0;
+        status.dueElapsed = SystemClock.elapsedRealtime() + SENT_TIMEOUT_MS;
+        persist(status);
+        int attempt = status.attempts;
+        wakeLock.acquire(ATTEMPT_WAKE_MS);
+
+        try {
+            SmsManager smsManager = SmsManager.getDefault();
+            ArrayList<String> parts = smsManager.divideMessage(status.message);
+            status.parts = parts.size();
+            ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+            ArrayList<PendingIntent> deliveredIntents = new ArrayList<>(parts.size());
+            for (int part = 0; part < parts.size(); part++) {
+                sentIntents.add(reportIntent(ACTION_SENT, status, part, PendingIntent.FLAG_IMMUTABLE));
+                // The delivery report PDU is added as an extra, which needs a mutable intent
+                deliveredIntents.add(reportIntent(ACTION_DELIVERED, status, part,
+                        Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? PendingIntent.FLAG_MUTABLE : 0));
+            }
+            smsManager.sendMultipartTextMessage(status.phoneNumber, null, parts, sentIntents, deliveredIntents);
+            Log.d(TAG, "Message " + status.id + " attempt " + attempt + ": " + parts.size() + " parts");
+        } catch (RuntimeException e) {
+            onAttemptFailed(status, attempt, e.toString());
+            return;
+        }
+        scheduleAlarm();
+    }
+
+    // Null while the message is still worth another attempt
+    private static String reasonToGiveUp(Status status) {
+        if (status.attempts >= MAX_ATTEMPTS) {
+            return "not sent after " + status.attempts + " attempts";
+        }
+        if (status.sends >= MAX_UNCONFIRMED_SENDS) {
+            return "sent " + status.sends + " times without a delivery report";
+        }
+        if (System.currentTimeMillis() - status.createdMillis > MAX_AGE_MS) {
+            return "not delivered within " + MAX_AGE_MS / 3_600_000 + " hours";
+        }
+        return null;
+    }
+
+    private void giveUp(Status status, String reason) {
+        status.state = State.GAVE_UP;
+        status.lastError = reason;
+        status.dueElapsed = Long.MAX_VALUE;
+        OfflineMessageStore.markGivenUp(context, status.id, reason);
+        Log.e(TAG, "Gave up on message " + status.id + " to " + status.phoneNumber + ": " + reason);
+        releaseWakeLockIfIdle();
+        scheduleAlarm();
+    }
+
+    // Records the attempt count and the wall clock time of the state's timeout in the outbox
+    private void persist(Status status) {
+        long nextAttemptMillis = status.dueElapsed == Long.MAX_VALUE ? 0
+                : System.currentTimeMillis() + status.dueElapsed - SystemClock.elapsedRealtime();
+        OfflineMessageStore.recordAttempt(context, status.id, status.attempts, status.sends, nextAttemptMillis);
+    }
+
+    private PendingIntent reportIntent(String action, Status status, int part, int mutability) {
+        Intent intent = new Intent(action)
+                .setPackage(context.getPackageName())
+                .setData(Uri.parse(REPORT_SCHEME + "://" + status.id + "/" + status.attempts + "/" + part));
+        return PendingIntent.getBroadcast(context, 0, intent, mutability | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private void onReport(Intent intent, int resultCode) {
+        Uri data = intent.getData();
+        Status status;
+        int attempt;
+        try {
+            List<String> path = data.getPathSegments();
+            status = statuses.get(Long.parseLong(data.getHost()));
+            attempt = Integer.parseInt(path.get(0));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unreadable report " + data);
+            return;
+        }
+        if (status == null || attempt != status.attempts) {
+            return; // from an attempt that was already given up on
+        }
+
+        if (ACTION_SENT.equals(intent.getAction())) {
+            if (status.state != State.SENDING) {
+                return;
+            }
+            if (resultCode != Activity.RESULT_OK) {
+                onAttemptFailed(status, attempt, "send error " + resultCode);
+            } else if (++status.partsSent == status.parts) {
+                status.state = State.SENT;
+                status.sends++;
+                status.sentMillis = System.currentTimeMillis();
+                status.dueElapsed = SystemClock.elapsedRealtime() + DELIVERY_TIMEOUT_MS;
+                persist(status);
+                Log.d(TAG, "Message " + status.id + " sent " + status.getMillisToSent() + " ms after it was raised, "
+                        + status.attempts + " attempts");
+                releaseWakeLockIfIdle();
+                scheduleAlarm();
+                onRecipientDone(status);
+            }
+        } else if (ACTION_DELIVERED.equals(intent.getAction())) {
+            onDeliveryReport(status, intent);
+        }
+    }
+
+    private void onDeliveryReport(Status status, Intent intent) {
+        byte[] pdu = intent.getByteArrayExtra("pdu");
+        if (pdu == null || status.state != State.SENT && status.state != State.SENDING) {
+            return;
+        }
+        SmsMessage report = SmsMessage.createFromPdu(pdu, intent.getStringExtra("format"));
+        // TP-Status: below 0x20 done, below 0x40 the network is still trying, above failed
+        int tpStatus = report != null ? report.getStatus() : 0;
+        if (tpStatus >= 0x40) {
+            // Accepted by the network but never reached the phone; send it again
+            Log.w(TAG, "Message " + status.id + " was not delivered, status " + tpStatus);
+            status.state = State.SENDING;
+            onAttemptFailed(status, status.attempts, "delivery failed " + tpStatus);
+        } else if (tpStatus < 0x20 && ++status.partsDelivered == status.parts) {
+            status.state = State.DELIVERED;
+            status.deliveredMillis = System.currentTimeMillis();
+            status.dueElapsed = Long.MAX_VALUE;
+            OfflineMessageStore.markDelivered(context, status.id);
+            Log.d(TAG, "Message " + status.id + " delivered " + status.getMillisToDelivered()
+                    + " ms after it was raised");
+            releaseWakeLockIfIdle();
+            scheduleAlarm();
+            onRecipientDone(status);
+        }
+    }
+
+    private void onAttemptFailed(Status status, int attempt, String error) {
+        if (attempt != status.attempts || status.state != State.SENDING) {
+            return;
+        }
+        status.state = State.WAITING_RETRY;
+        status.lastError = error;
+        long delay = backoff.delayMillis(attempt);
+        status.dueElapsed = SystemClock.elapsedRealtime() + delay;
+        persist(status);
+        Log.w(TAG, "Message " + status.id + " attempt " + attempt + " failed (" + error + "), retrying in "
+                + delay / 1000 + " s" + (inService ? "" : " or when back in service"));
+        releaseWakeLockIfIdle();
+        scheduleAlarm();
+    }
+
+    /**
+     * Sets the alarm for the earliest timeout or retry, or cancels it if nothing waits. Exact
+     * and allowed while idle, so a retry is not held back to a Doze maintenance window; where
+     * exact alarms are not allowed it falls back to an inexact one, which still fires in Doze.
+     */
+    private void scheduleAlarm() {
+        long earliest = Long.MAX_VALUE;
+        for (Status status : statuses.values()) {
+            earliest = Math.min(earliest, status.dueElapsed);
+        }
+        if (earliest == alarmElapsed) {
+            return;
+        }
+        alarmElapsed = earliest;
+        if (earliest == Long.MAX_VALUE) {
+            alarmManager.cancel(alarmIntent);
+        } else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, earliest, alarmIntent);
+        } else {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, earliest, alarmIntent);
+        }
+    }
+
+    // Lets the CPU sleep once no attempt is waiting on the radio
+    private void releaseWakeLockIfIdle() {
+        for (Status status : statuses.values()) {
+            if (status.state == State.SENDING) {
+                return;
+            }
+        }
+        if (wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+
+    // Logs the time to the last recipient once every member of the group is sent, then delivered
+    private void onRecipientDone(Status status) {
+        List<Status> members = groups.get(status.groupId);
+        if (members == null) {
+            return;
+        }
+        int sent = 0;
+        int delivered = 0;
+        long lastSent = 0;
+        long lastDelivered = 0;
+        for (Status member : members) {
+            if (member.state == State.SENT || member.state == State.DELIVERED) {
+                sent++;
+                lastSent = Math.max(lastSent, member.getMillisToSent());
+            }
+            if (member.state == State.DELIVERED) {
+                delivered++;
+                lastDelivered = Math.max(lastDelivered, member.getMillisToDelivered());
+            }
+        }
+        if (status.state == State.SENT && sent == members.size()) {
+            Log.i(TAG, "Group " + status.groupId + " sent to all " + sent + " recipients, the last "
+                    + lastSent + " ms after it was raised");
+        } else if (status.state == State.DELIVERED && delivered == members.size()) {
+            Log.i(TAG, "Group " + status.groupId + " delivered to all " + delivered + " recipients, the last "
+                    + lastDelivered + " ms after it was raised");
+        }
+    }
+
+    private void onServiceState(boolean nowInService) {
+        boolean regained = nowInService && !inService;
+        inService = nowInService;
+        if (regained) {
+            Log.d(TAG, "Back in service");
+            retryWaitingNow();
+        }
+    }
+
+    private void trimFinished() {
+        int finished = 0;
+        for (Status status : statuses.values()) {
+            if (status.state == State.DELIVERED || status.state == State.GAVE_UP) {
+                finished++;
+            }
+        }
+        // Oldest first, in insertion order
+        Iterator<Status> it = statuses.values().iterator();
+        while (finished > MAX_FINISHED && it.hasNext()) {
+            State state = it.next().state;
+            if (state == State.DELIVERED || state == State.GAVE_UP) {
+                it.remove();
+                finished--;
+            }
+        }
+        Iterator<Long> groupIds = groups.keySet().iterator();
+        while (groups.size() > MAX_GROUPS && groupIds.hasNext()) {
+            groupIds.next();
+            groupIds.remove();
+        }
+    }
+
+    private void retryWaitingNow() {
+        for (Status status : new ArrayList<>(statuses.values())) {
+            if (status.state == State.WAITING_RETRY) {
+                attempt(status);
+            }
+        }
+    }
+}
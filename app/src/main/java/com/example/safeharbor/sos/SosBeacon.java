@@ -0,0 +1,300 @@
+package com.example.safeharbor.sos;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.safeharbor.LocationHub;
+import com.example.safeharbor.StartupOrchestrator;
+import com.example.safeharbor.geo.GeoMath;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SOS tracking mode: after an SOS the same contacts get follow-up beacons with the recent drift
+ * track, at an interval from {@link BeaconSchedule}, until tracking is stopped or a day has
+ * passed.
+ *
+ * The track is collected from the {@link LocationHub} stream. Beacons are timed by an
+ * AlarmManager alarm on the elapsed realtime clock, as {@link SmsDispatcher}'s retries are, so
+ * they go out in deep sleep and Doze; {@link BeaconAlarmReceiver} is declared in the manifest,
+ * so the alarm also restarts a killed process. Where exact alarms are not allowed the alarm may
+ * come late, and a beacon that is due then goes out with the next batch of fixes instead. Must
+ * be started and stopped on the main thread.
+ *
+ * The recipients, the beacon count and when the next beacon is due are saved as a
+ * {@link BeaconState} on every change, so tracking carries on through a killed process or a
+ * restart of the phone once {@link #resume} is called; it also starts the location service
+ * again, which nothing else does before the app is opened.
+ */
+public final class SosBeacon implements LocationHub.Listener {
+    private static final String TAG = "SosBeacon";
+    // Fixes closer together than this add nothing to a drift track
+    private static final long FIX_SPACING_MS = 15_000;
+    private static final int MAX_FIXES = 64;
+    // Each beacon spreads its fixes over the time since the one before
+    private static final int FIXES_PER_BEACON = 8;
+    // Drift is measured over at least this much track
+    private static final long DRIFT_WINDOW_MS = 2 * 60_000;
+    private static final long MAX_TRACKING_MS = 24 * 3_600_000L;
+
+    private static SosBeacon instance;
+
+    private final Context context;
+    private final File stateFile;
+    private final AlarmManager alarmManager;
+    private final PendingIntent alarmIntent;
+    // Brings a beacon that fell due to the main thread from the evaluation thread
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable sendIfDue = this::sendIfDue;
+    // Oldest first; added to on the evaluation thread, read on the main thread
+    private final ArrayDeque<BeaconCodec.Fix> fixes = new ArrayDeque<>();
+    private volatile long nextDueElapsed = Long.MAX_VALUE;
+    private List<String> phoneNumbers;
+    private long startedElapsed;
+    private long startedMillis;
+    private long nextDueMillis;
+    private long lastIntervalMillis;
+    private int sequence;
+
+    private SosBeacon(Context context) {
+        this.context = context.getApplicationContext();
+        stateFile = new File(this.context.getFilesDir(), BeaconState.FILE_NAME);
+        alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE);
+        alarmIntent = PendingIntent.getBroadcast(this.context, 0,
+                new Intent(this.context, BeaconAlarmReceiver.class).setAction(BeaconAlarmReceiver.ACTION_WAKE),
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    public static synchronized SosBeacon getInstance(Context context) {
+        if (instance == null) {
+            instance = new SosBeacon(context);
+        }
+        return instance;
+    }
+
+    // Starts beacons to these numbers; another SOS while tracking only updates the recipients
+    public void start(List<String> phoneNumbers) {
+        boolean active = isActive();
+        this.phoneNumbers = new ArrayList<>(phoneNumbers);
+        if (active) {
+            save();
+            return;
+        }
+        sequence = 0;
+        startedElapsed = SystemClock.elapsedRealtime();
+        startedMillis = System.currentTimeMillis();
+        collectFixes();
+        long interval = BeaconSchedule.intervalMillis(Double.NaN, batteryPercent());
+        schedule(interval, interval);
+        Log.d(TAG, "Tracking started for " + phoneNumbers.size() + " contacts");
+    }
+
+    /**
+     * Carries on the tracking that was active when the process died or the phone restarted,
+     * with the same recipients and beacon numbers. A beacon that fell due meanwhile goes out
+     * right away. The location service is started again too if the permission allows, since
+     * after a reboot or a killed process the track would otherwise stay empty. Does nothing if
+     * tracking is not active or has run for a day.
+     */
+    public void resume() {
+        if (isActive()) {
+            return;
+        }
+        BeaconState state;
+        try {
+            state = BeaconState.read(stateFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read the tracking state", e);
+            return;
+        }
+        if (state == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long ran = Math.max(0, now - state.startedMillis);
+        if (ran > MAX_TRACKING_MS || state.phoneNumbers.isEmpty()) {
+            BeaconState.clear(stateFile);
+            return;
+        }
+        phoneNumbers = new ArrayList<>(state.phoneNumbers);
+        sequence = state.sequence;
+        startedElapsed = SystemClock.elapsedRealtime() - ran;
+        startedMillis = state.startedMillis;
+        collectFixes();
+        startLocationMonitoring();
+        // However the wall clock moved meanwhile, no wait is longer than the interval
+        schedule(Math.max(0, Math.min(state.nextDueMillis - now, state.intervalMillis)), state.intervalMillis);
+        Log.d(TAG, "Tracking resumed after beacon " + sequence + " for " + phoneNumbers.size() + " contacts");
+    }
+
+    public void stop() {
+        if (!isActive()) {
+            return;
+        }
+        LocationHub.getInstance().unsubscribe(this);
+        alarmManager.cancel(alarmIntent);
+        handler.removeCallbacks(sendIfDue);
+        nextDueElapsed = Long.MAX_VALUE;
+        phoneNumbers = null;
+        if (!BeaconState.clear(stateFile)) {
+            Log.e(TAG, "Could not remove the tracking state");
+        }
+        Log.d(TAG, "Tracking stopped after " + sequence + " beacons");
+    }
+
+    public boolean isActive() {
+        return phoneNumbers != null;
+    }
+
+    // From BeaconAlarmReceiver, also in a process restarted for the alarm or after a reboot
+    void onAlarm() {
+        resume();
+        sendIfDue();
+    }
+
+    // Evaluation thread
+    @Override
+    public void onLocations(List<Location> locations) {
+        synchronized (fixes) {
+            for (Location location : locations) {
+                BeaconCodec.Fix last = fixes.peekLast();
+                if (last == null || location.getTime() - last.timeMillis >= FIX_SPACING_MS) {
+                    fixes.addLast(new BeaconCodec.Fix(location.getTime(), location.getLatitude(), location.getLongitude()));
+                    if (fixes.size() > MAX_FIXES) {
+                        fixes.removeFirst();
+                    }
+                }
+            }
+        }
+        if (SystemClock.elapsedRealtime() >= nextDueElapsed) {
+            handler.post(sendIfDue);
+        }
+    }
+
+    private void collectFixes() {
+        synchronized (fixes) {
+            fixes.clear();
+        }
+        Location last = LocationHub.getInstance().getLastLocation();
+        if (last != null) {
+            onLocations(Collections.singletonList(last));
+        }
+        LocationHub.getInstance().subscribe(this);
+    }
+
+    private void startLocationMonitoring() {
+        try {
+            StartupOrchestrator.getInstance().startLocationMonitoring(context);
+        } catch (IllegalStateException | SecurityException e) {
+            // Android 12 and later refuse a foreground service from the background outside the
+            // alarm and boot exemptions; beacons then carry the fixes there are until the app
+            // is opened
+            Log.e(TAG, "Could not start the location service", e);
+        }
+    }
+
+    // The next beacon is due after delayMillis; intervalMillis is what the schedule picked
+    private void schedule(long delayMillis, long intervalMillis) {
+        lastIntervalMillis = intervalMillis;
+        nextDueElapsed = SystemClock.elapsedRealtime() + delayMillis;
+        nextDueMillis = System.currentTimeMillis() + delayMillis;
+        handler.removeCallbacks(sendIfDue);
+        setAlarm(nextDueElapsed);
+        save();
+    }
+
+    // Exact and allowed while idle where permitted; the inexact fallback still fires in Doze
+    private void setAlarm(long triggerElapsed) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerElapsed, alarmIntent);
+        } else {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerElapsed, alarmIntent);
+        }
+    }
+
+    // A few times an hour at most, so the small synced write does not matter on the main thread
+    private void save() {
+        try {
+            new BeaconState(phoneNumbers, startedMillis, sequence, nextDueMillis, lastIntervalMillis).write(stateFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not save the tracking state", e);
+        }
+    }
+
+    private void sendIfDue() {
+        long now = SystemClock.elapsedRealtime();
+        if (!isActive() || now < nextDueElapsed) {
+            return;
+        }
+        if (now - startedElapsed > MAX_TRACKING_MS) {
+            stop();
+            return;
+        }
+
+        List<BeaconCodec.Fix> track = recentTrack(lastIntervalMillis / FIXES_PER_BEACON);
+        int battery = batteryPercent();
+        String text = BeaconCodec.encode(++sequence, battery, track, System.currentTimeMillis());
+        SmsDispatcher.getInstance(context).sendBeacon(phoneNumbers, text);
+
+        double drift = driftKnots(track);
+        long interval = BeaconSchedule.intervalMillis(drift, battery);
+        Log.d(TAG, "Beacon " + sequence + " with " + track.size() + " fixes, drift "
+                + (Double.isNaN(drift) ? "unknown" : String.format(Locale.US, "%.1f kn", drift))
+                + ", battery " + battery + "%, next in " + interval / 60_000 + " min");
+        schedule(interval, interval);
+    }
+
+    // Newest first, at least spacingMillis apart, so a beacon covers the whole interval
+    private List<BeaconCodec.Fix> recentTrack(long spacingMillis) {
+        List<BeaconCodec.Fix> track = new ArrayList<>();
+        synchronized (fixes) {
+            Iterator<BeaconCodec.Fix> newestFirst = fixes.descendingIterator();
+            while (newestFirst.hasNext()) {
+                BeaconCodec.Fix fix = newestFirst.next();
+                if (track.isEmpty() || track.get(track.size() - 1).timeMillis - fix.timeMillis >= spacingMillis) {
+                    track.add(fix);
+                }
+            }
+        }
+        return track;
+    }
+
+    // Speed over ground between the newest fix and one at least DRIFT_WINDOW_MS older
+    private static double driftKnots(List<BeaconCodec.Fix> newestFirst) {
+        if (newestFirst.isEmpty()) {
+            return Double.NaN;
+        }
+        BeaconCodec.Fix newest = newestFirst.get(0);
+        for (BeaconCodec.Fix fix : newestFirst) {
+            long millis = newest.timeMillis - fix.timeMillis;
+            if (millis >= DRIFT_WINDOW_MS) {
+                double km = GeoMath.haversineKm(fix.latitude, fix.longitude, newest.latitude, newest.longitude);
+                return SosCodec.toKnots(km * 1000 / (millis / 1000.0));
+            }
+        }
+        return Double.NaN;
+    }
+
+    // -1 when the phone cannot tell
+    private int batteryPercent() {
+        BatteryManager battery = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        int percent = battery != null ? battery.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) : -1;
+        return percent > 0 && percent <= 100 ? percent : -1;
+    }
+}
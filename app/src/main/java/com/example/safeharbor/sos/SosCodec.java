@@ -0,0 +1,251 @@
+package com.example.safeharbor.sos;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The SOS text and its reader for the receiving side. Everything fits one 160 character SMS in
+ * the GSM 7-bit alphabet: a single character outside it, such as an emoji or a degree sign,
+ * switches the whole message to UCS-2 with 70 characters per part, and every extra part is one
+ * more thing to lose on a weak signal. For example
+ * <pre>
+ *   SOS SafeHarbor
+ *   POS 8.51234N 76.91234E
+ *   UTC 2024-03-01 04:12:09Z
+ *   AGE 3min
+ *   SOG 4.2kn COG 275
+ *   ACC 12m
+ *   maps.google.com/?q=8.51234,76.91234
+ * </pre>
+ * Times are UTC so they read the same wherever the rescuer is. AGE only appears when the fix is
+ * older than the alert, SOG, COG and ACC only when the fix has them, and without a fix POS reads
+ * UNKNOWN and there is no link. Values are clamped so the worst case for a real position is
+ * 145 characters.
+ */
+public final class SosCodec {
+    public static final int SEGMENT_CHARS = 160;
+
+    private static final String HEADER = "SOS SafeHarbor";
+    static final String MAP_LINK = "maps.google.com/?q=";
+    private static final String UNKNOWN = "UNKNOWN";
+    private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss'Z'";
+    private static final double MS_TO_KNOTS = 3600.0 / 1852.0;
+    // A fix this much older than the alert is marked with its age
+    private static final long STALE_MILLIS = 60_000;
+    // What encode leaves out, in order, when the text does not fit one SMS
+    private static final int LEAVE_OUT_ACCURACY = 1;
+    private static final int LEAVE_OUT_MOTION = 2;
+    private static final int LEAVE_OUT_LINK = 3;
+
+    // GSM 03.38 basic character set; the extension table costs two characters each and is avoided
+    private static final String GSM7_BASIC = "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+
+    public static final class Report {
+        public final long timeMillis;
+        public final boolean hasPosition;
+        public final double latitude;
+        public final double longitude;
+        public final long fixMillis;
+        // NaN, -1 and -1 when the fix does not have them
+        public final double speedKnots;
+        public final int courseDegrees;
+        public final int accuracyMeters;
+
+        public Report(long timeMillis, double latitude, double longitude, long fixMillis,
+                      double speedKnots, int courseDegrees, int accuracyMeters) {
+            this(timeMillis, true, latitude, longitude, fixMillis, speedKnots, courseDegrees, accuracyMeters);
+        }
+
+        private Report(long timeMillis, boolean hasPosition, double latitude, double longitude, long fixMillis,
+                       double speedKnots, int courseDegrees, int accuracyMeters) {
+            this.timeMillis = timeMillis;
+            this.hasPosition = hasPosition;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.fixMillis = fixMillis;
+            this.speedKnots = speedKnots;
+            this.courseDegrees = courseDegrees;
+            this.accuracyMeters = accuracyMeters;
+        }
+
+        public static Report withoutPosition(long timeMillis) {
+            return new Report(timeMillis, false, 0, 0, 0, Double.NaN, -1, -1);
+        }
+    }
+
+    private SosCodec() {
+    }
+
+    public static double toKnots(double metersPerSecond) {
+        return metersPerSecond * MS_TO_KNOTS;
+    }
+
+    /**
+     * The SOS text for a report. If it does not fit one SMS, which takes position values far
+     * out of range, the least needed lines are left out one step at a time: ACC, then SOG and
+     * COG, then the map link. If even that does not fit, the full text is returned to go out
+     * in several parts, as a late SOS beats none.
+     */
+    public static String encode(Report report) {
+        for (int leaveOut = 0; leaveOut <= LEAVE_OUT_LINK; leaveOut++) {
+            String encoded = encode(report, leaveOut);
+            if (isSingleSegment(encoded)) {
+                return encoded;
+            }
+        }
+        return encode(report, 0);
+    }
+
+    // Leaves out the lines up to and including leaveOut
+    private static String encode(Report report, int leaveOut) {
+        StringBuilder text = new StringBuilder(SEGMENT_CHARS);
+        text.append(HEADER).append('\n');
+        if (report.hasPosition) {
+            text.append("POS ").append(formatPosition(report.latitude, report.longitude)).append('\n');
+        } else {
+            text.append("POS ").append(UNKNOWN).append('\n');
+        }
+        text.append("UTC ").append(timeFormat().format(new Date(report.timeMillis))).append('\n');
+
+        if (report.hasPosition) {
+            long age = report.timeMillis - report.fixMillis;
+            if (age >= STALE_MILLIS) {
+                text.append("AGE ").append(formatAge(age)).append('\n');
+            }
+            if (!Double.isNaN(report.speedKnots) && leaveOut < LEAVE_OUT_MOTION) {
+                text.append(String.format(Locale.US, "SOG %.1fkn", Math.max(0, Math.min(report.speedKnots, 999.9))));
+                if (report.courseDegrees >= 0) {
+                    text.append(" COG ").append(report.courseDegrees % 360);
+                }
+                text.append('\n');
+            }
+            if (report.accuracyMeters >= 0 && leaveOut < LEAVE_OUT_ACCURACY) {
+                text.append("ACC ").append(Math.min(report.accuracyMeters, 9999)).append("m\n");
+            }
+            if (leaveOut < LEAVE_OUT_LINK) {
+                text.append(MAP_LINK).append(String.format(Locale.US, "%.5f,%.5f", report.latitude, report.longitude));
+                return text.toString();
+            }
+        }
+        text.setLength(text.length() - 1);
+        return text.toString();
+    }
+
+    // Null if text is not an SOS from this app or cannot be read
+    public static Report decode(String text) {
+        String[] lines = text.trim().split("\r?\n");
+        if (lines.length < 3 || !HEADER.equals(lines[0].trim())) {
+            return null;
+        }
+        boolean hasPosition = false;
+        double latitude = 0;
+        double longitude = 0;
+        long timeMillis = -1;
+        long ageMillis = 0;
+        double speedKnots = Double.NaN;
+        int courseDegrees = -1;
+        int accuracyMeters = -1;
+        try {
+            for (int i = 1; i < lines.length; i++) {
+                String line = lines[i].trim();
+                if (line.startsWith("POS ")) {
+                    String[] parts = line.substring(4).split(" ");
+                    if (parts.length == 2) {
+                        latitude = parseHemisphere(parts[0], 'N', 'S');
+                        longitude = parseHemisphere(parts[1], 'E', 'W');
+                        hasPosition = true;
+                    }
+                } else if (line.startsWith("UTC ")) {
+                    timeMillis = timeFormat().parse(line.substring(4)).getTime();
+                } else if (line.startsWith("AGE ")) {
+                    ageMillis = parseAge(line.substring(4));
+                } else if (line.startsWith("SOG ")) {
+                    String[] parts = line.split(" ");
+                    speedKnots = Double.parseDouble(parts[1].replace("kn", ""));
+                    if (parts.length == 4 && "COG".equals(parts[2])) {
+                        courseDegrees = Integer.parseInt(parts[3]);
+                    }
+                } else if (line.startsWith("ACC ")) {
+                    accuracyMeters = Integer.parseInt(line.substring(4).replace("m", ""));
+                }
+            }
+        } catch (ParseException | RuntimeException e) {
+            return null;
+        }
+        if (timeMillis < 0) {
+            return null;
+        }
+        if (!hasPosition) {
+            return Report.withoutPosition(timeMillis);
+        }
+        return new Report(timeMillis, latitude, longitude, timeMillis - ageMillis,
+                speedKnots, courseDegrees, accuracyMeters);
+    }
+
+    // Whether text goes out as one SMS in the 7-bit alphabet
+    public static boolean isSingleSegment(String text) {
+        if (text.length() > SEGMENT_CHARS) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (GSM7_BASIC.indexOf(text.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 5 decimals is about a metre, finer than any phone fix
+    static String formatPosition(double latitude, double longitude) {
+        return String.format(Locale.US, "%.5f%c %.5f%c",
+                Math.abs(latitude), latitude >= 0 ? 'N' : 'S',
+                Math.abs(longitude), longitude >= 0 ? 'E' : 'W');
+    }
+
+    static double parseHemisphere(String value, char positive, char negative) {
+        char hemisphere = value.charAt(value.length() - 1);
+        double degrees = Double.parseDouble(value.substring(0, value.length() - 1));
+        if (hemisphere == negative) {
+            return -degrees;
+        }
+        if (hemisphere != positive) {
+            throw new IllegalArgumentException("Bad hemisphere in " + value);
+        }
+        return degrees;
+    }
+
+    private static String formatAge(long ageMillis) {
+        long minutes = ageMillis / 60_000;
+        if (minutes < 120) {
+            return minutes + "min";
+        }
+        if (minutes < 48 * 60) {
+            return minutes / 60 + "h";
+        }
+        return Math.min(minutes / (24 * 60), 999) + "d";
+    }
+
+    private static long parseAge(String age) {
+        if (age.endsWith("min")) {
+            return Long.parseLong(age.substring(0, age.length() - 3)) * 60_000;
+        }
+        if (age.endsWith("h")) {
+            return Long.parseLong(age.substring(0, age.length() - 1)) * 3_600_000;
+        }
+        if (age.endsWith("d")) {
+            return Long.parseLong(age.substring(0, age.length() - 1)) * 86_400_000;
+        }
+        throw new IllegalArgumentException("Bad age " + age);
+    }
+
+    // SimpleDateFormat is not thread safe, so one per call
+    static SimpleDateFormat timeFormat() {
+        SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+}
@@ -0,0 +1,371 @@
+package com.example.safeharbor.sos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * SOS messages that have not been delivered yet, kept in an append-only journal file. A
+ * message is written and fsynced before anyone tries to send it, and only a later record marks
+ * it done or given up on, so a crash, a kill or a dead battery at any point leaves it either
+ * pending or finished, never lost. Each attempt at sending it is recorded too, so a restarted
+ * process carries on with the same attempt count and retry time.
+ *
+ * The file is a header followed by records of
+ * <pre>
+ *   int length   of everything after the checksum
+ *   int crc32    of everything after the checksum
+ *   byte type    ENQUEUED, DONE, ATTEMPT or GAVE_UP
+ *   long seq     sequence number of the message
+ *   payload      ENQUEUED: phone number, message, long creation time
+ *                ATTEMPT: int attempts, int sends, long next attempt time
+ *                GAVE_UP: reason
+ *                strings as int byte count and UTF-8
+ * </pre>
+ * On open the records are replayed; a torn or corrupt tail from a crash mid-write is cut off.
+ * Once enough messages are done the live ones are rewritten to a fresh file that replaces the
+ * old one atomically.
+ */
+public final class SosOutbox implements Closeable {
+    public static final String FILE_NAME = "sos_outbox.log";
+
+    private static final int MAGIC = 0x534F5331; // "SOS1"
+    // Magic plus the sequence number to continue from, which survives compaction
+    private static final int HEADER_BYTES = 4 + 8;
+    private static final byte TYPE_ENQUEUED = 1;
+    private static final byte TYPE_DONE = 2;
+    private static final byte TYPE_ATTEMPT = 3;
+    private static final byte TYPE_GAVE_UP = 4;
+    // Compact after this many dead records: two per finished message, one per attempt
+    private static final int COMPACT_AFTER_DEAD = 64;
+    // A record longer than this is corruption, not a message
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    public static final class Entry {
+        public final long seq;
+        public final String phoneNumber;
+        public final String message;
+        public final long createdMillis;
+        // Attempts started, and how many of them the radio accepted
+        public final int attempts;
+        public final int sends;
+        // Wall clock time the next attempt is due, 0 for right away
+        public final long nextAttemptMillis;
+
+        Entry(long seq, String phoneNumber, String message, long createdMillis) {
+            this(seq, phoneNumber, message, createdMillis, 0, 0, 0);
+        }
+
+        private Entry(long seq, String phoneNumber, String message, long createdMillis,
+                      int attempts, int sends, long nextAttemptMillis) {
+            this.seq = seq;
+            this.phoneNumber = phoneNumber;
+            this.message = message;
+            this.createdMillis = createdMillis;
+            this.attempts = attempts;
+            this.sends = sends;
+            this.nextAttemptMillis = nextAttemptMillis;
+        }
+
+        private Entry withAttempts(int attempts, int sends, long nextAttemptMillis) {
+            return new Entry(seq, phoneNumber, message, createdMillis, attempts, sends, nextAttemptMillis);
+        }
+    }
+
+    private final File file;
+    private FileChannel channel;
+    // In journal order, which is the order messages were enqueued
+    private final LinkedHashMap<Long, Entry> pending = new LinkedHashMap<>();
+    private long nextSeq = 1;
+    private int deadRecords;
+    private long discardedBytes;
+
+    private SosOutbox(File file) {
+        this.file = file;
+    }
+
+    public static SosOutbox open(File file) throws IOException {
+        SosOutbox outbox = new SosOutbox(file);
+        outbox.load();
+        return outbox;
+    }
+
+    /**
+     * Journals a message and returns its sequence number. The record is on disk when this
+     * returns, so the message can be sent right after and marked done with {@link #remove}.
+     */
+    public synchronized long enqueue(String phoneNumber, String message, long createdMillis) throws IOException {
+        Entry entry = new Entry(nextSeq, phoneNumber, message, createdMillis);
+        append(TYPE_ENQUEUED, entry.seq, payload(entry));
+        channel.force(false);
+        nextSeq++;
+        pending.put(entry.seq, entry);
+        return entry.seq;
+    }
+
+    /**
+     * Journals the same message for several recipients with a single fsync, so an SOS to N
+     * contacts does not wait for N disk flushes. Returns the sequence numbers in the order of
+     * phoneNumbers.
+     */
+    public synchronized long[] enqueueAll(List<String> phoneNumbers, String message, long createdMillis) throws IOException {
+        long[] seqs = new long[phoneNumbers.size()];
+        List<Entry> entries = new ArrayList<>(phoneNumbers.size());
+        long start = channel.position();
+        try {
+            for (int i = 0; i < seqs.length; i++) {
+                Entry entry = new Entry(nextSeq + i, phoneNumbers.get(i), message, createdMillis);
+                append(TYPE_ENQUEUED, entry.seq, payload(entry));
+                entries.add(entry);
+                seqs[i] = entry.seq;
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // None of them count; drop the ones written so they do not come back on the next open
+            channel.truncate(start);
+            throw e;
+        }
+        nextSeq += seqs.length;
+        for (Entry entry : entries) {
+            pending.put(entry.seq, entry);
+        }
+        return seqs;
+    }
+
+    /**
+     * Marks a message delivered. Not fsynced: if the record is lost the message is sent once
+     * more, which beats losing it.
+     */
+    public synchronized boolean remove(long seq) throws IOException {
+        return finish(seq, TYPE_DONE, new byte[0]);
+    }
+
+    // Marks a message given up on, with the reason kept in the journal until it is compacted
+    public synchronized boolean giveUp(long seq, String reason) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        writeString(new DataOutputStream(bytes), reason);
+        return finish(seq, TYPE_GAVE_UP, bytes.toByteArray());
+    }
+
+    /**
+     * Records how far sending a message has got: the attempts started, how many the radio
+     * accepted, and the wall clock time the next attempt is due. Not fsynced; a lost record
+     * only costs an attempt more.
+     */
+    public synchronized boolean recordAttempt(long seq, int attempts, int sends, long nextAttemptMillis) throws IOException {
+        Entry entry = pending.get(seq);
+        if (entry == null) {
+            return false;
+        }
+        append(TYPE_ATTEMPT, seq, attemptPayload(attempts, sends, nextAttemptMillis));
+        pending.put(seq, entry.withAttempts(attempts, sends, nextAttemptMillis));
+        if (++deadRecords >= COMPACT_AFTER_DEAD) {
+            compact();
+        }
+        return true;
+    }
+
+    public synchronized Entry get(long seq) {
+        return pending.get(seq);
+    }
+
+    // Pending messages, oldest first
+    public synchronized List<Entry> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    // Bytes of torn or corrupt records cut off when the journal was opened
+    public synchronized long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    // Rewrites the journal with only the pending messages
+    public synchronized void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+            out.setLength(0);
+            FileChannel tempChannel = out.getChannel();
+            writeHeader(tempChannel);
+            for (Entry entry : pending.values()) {
+                write(tempChannel, record(TYPE_ENQUEUED, entry.seq, payload(entry)));
+                if (entry.attempts > 0) {
+                    write(tempChannel, record(TYPE_ATTEMPT, entry.seq,
+                            attemptPayload(entry.attempts, entry.sends, entry.nextAttemptMillis)));
+                }
+            }
+            tempChannel.force(true);
+        }
+        channel.close();
+        if (!temp.renameTo(file)) {
+            // The old journal is untouched and still complete; carry on appending to it
+            temp.delete();
+            openChannel();
+            throw new IOException("Could not replace " + file);
+        }
+        openChannel();
+        deadRecords = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void load() throws IOException {
+        openChannel();
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            // New, or torn while the header was written; nothing in it can be pending
+            channel.truncate(0);
+            writeHeader(channel);
+            channel.force(true);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // read until full
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not an SOS outbox");
+        }
+        nextSeq = buffer.getLong();
+
+        int dead = 0;
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 9 || length > MAX_RECORD_BYTES || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+            int end = buffer.position() + length;
+            byte type = buffer.get();
+            long seq = buffer.getLong();
+            if (type == TYPE_ENQUEUED) {
+                String phoneNumber = readString(buffer);
+                String message = readString(buffer);
+                long createdMillis = buffer.getLong();
+                pending.put(seq, new Entry(seq, phoneNumber, message, createdMillis));
+            } else if (type == TYPE_ATTEMPT) {
+                Entry entry = pending.get(seq);
+                if (entry != null) {
+                    pending.put(seq, entry.withAttempts(buffer.getInt(), buffer.getInt(), buffer.getLong()));
+                }
+                dead++;
+            } else if (type == TYPE_DONE || type == TYPE_GAVE_UP) {
+                pending.remove(seq);
+                dead += 2;
+            }
+            buffer.position(end);
+            nextSeq = Math.max(nextSeq, seq + 1);
+        }
+
+        // Anything after the last good record was being written when the process died
+        if (buffer.position() < size) {
+            discardedBytes = size - buffer.position();
+            channel.truncate(buffer.position());
+            channel.force(true);
+        }
+        channel.position(channel.size());
+        deadRecords = dead;
+        if (dead >= COMPACT_AFTER_DEAD) {
+            compact();
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position(channel.size());
+    }
+
+    private void writeHeader(FileChannel target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putLong(nextSeq).flip();
+        while (header.hasRemaining()) {
+            target.write(header);
+        }
+    }
+
+    private boolean finish(long seq, byte type, byte[] payload) throws IOException {
+        if (pending.remove(seq) == null) {
+            return false;
+        }
+        append(type, seq, payload);
+        deadRecords += 2;
+        if (deadRecords >= COMPACT_AFTER_DEAD) {
+            compact();
+        }
+        return true;
+    }
+
+    private void append(byte type, long seq, byte[] payload) throws IOException {
+        write(channel, record(type, seq, payload));
+    }
+
+    private static void write(FileChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static byte[] attemptPayload(int attempts, int sends, long nextAttemptMillis) {
+        return ByteBuffer.allocate(4 + 4 + 8).putInt(attempts).putInt(sends).putLong(nextAttemptMillis).array();
+    }
+
+    private static byte[] payload(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.message.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, entry.phoneNumber);
+        writeString(out, entry.message);
+        out.writeLong(entry.createdMillis);
+        return bytes.toByteArray();
+    }
+
+    private static ByteBuffer record(byte type, long seq, byte[] payload) {
+        int length = 1 + 8 + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + length);
+        buffer.putInt(length).putInt(0).put(type).putLong(seq).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.safeharbor.track;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Compact storage for recorded tracks, at about a quarter of the {@link TrackRing} record size.
+ * Time is kept in whole seconds and positions in 1e-6 degrees (11 cm), both far finer than a
+ * phone's fix. Every value is stored as its difference from the previous fix, zig-zag encoded
+ * and written as a varint, so the small steps between consecutive fixes take a byte or two.
+ *
+ * Fixes are grouped into blocks of {@link #BLOCK_POINTS}, and each block starts over from zero,
+ * so decoding can start at any block. The file is
+ * <pre>
+ *   int magic, int fixes per block
+ *   blocks      per fix: time, latitude, longitude, speed + 1, bearing + 1, accuracy + 1,
+ *               each as the zig-zag varint of its difference from the previous fix in the block
+ *   index       per block: long time of its first fix in ms, long file offset, int fix count
+ *   footer      long index offset, int block count, int magic
+ * </pre>
+ * A reader loads only the index and finds the block for a time by binary search.
+ */
+public final class TrackCodec {
+    public static final int BLOCK_POINTS = 256;
+
+    private static final int MAGIC = 0x54524331; // "TRC1"
+    private static final int HEADER_BYTES = 8;
+    private static final int INDEX_ENTRY_BYTES = 8 + 8 + 4;
+    private static final int FOOTER_BYTES = 8 + 4 + 4;
+    private static final int FIELDS = 6;
+
+    private TrackCodec() {
+    }
+
+    /**
+     * Writes fixes, oldest first, to a stream. Only the block index stays in memory, 20 bytes
+     * per {@link #BLOCK_POINTS} fixes. The file is complete once closed.
+     */
+    public static final class Writer implements Closeable {
+        private final OutputStream out;
+        private final long[] previous = new long[FIELDS];
+        private final long[] current = new long[FIELDS];
+        private long position;
+        private long[] blockTimes = new long[16];
+        private long[] blockOffsets = new long[16];
+        private int[] blockCounts = new int[16];
+        private int blockCount;
+        private long pointCount;
+
+        public Writer(OutputStream out) throws IOException {
+            this.out = new BufferedOutputStream(out);
+            writeInt(MAGIC);
+            writeInt(BLOCK_POINTS);
+        }
+
+        public void write(TrackPoint point) throws IOException {
+            if (blockCount == 0 || blockCounts[blockCount - 1] == BLOCK_POINTS) {
+                startBlock(point);
+            }
+            quantise(point, current);
+            for (int i = 0; i < FIELDS; i++) {
+                writeVarLong(zigzag(current[i] - previous[i]));
+                previous[i] = current[i];
+            }
+            blockCounts[blockCount - 1]++;
+            pointCount++;
+        }
+
+        // Fixes written so far
+        public long getPointCount() {
+            return pointCount;
+        }
+
+        // Bytes written so far
+        public long getSize() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long indexOffset = position;
+            for (int i = 0; i < blockCount; i++) {
+                writeLong(blockTimes[i]);
+                writeLong(blockOffsets[i]);
+                writeInt(blockCounts[i]);
+            }
+            writeLong(indexOffset);
+            writeInt(blockCount);
+            writeInt(MAGIC);
+            out.close();
+        }
+
+        private void startBlock(TrackPoint first) {
+            if (blockCount == blockTimes.length) {
+                blockTimes = Arrays.copyOf(blockTimes, blockCount * 2);
+                blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+                blockCounts = Arrays.copyOf(blockCounts, blockCount * 2);
+            }
+            blockTimes[blockCount] = Math.floorDiv(first.timeMillis, 1000) * 1000;
+            blockOffsets[blockCount] = position;
+            blockCounts[blockCount] = 0;
+            blockCount++;
+            Arrays.fill(previous, 0);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+                position++;
+            }
+            out.write((int) value);
+            position++;
+        }
+
+        private void writeInt(int value) throws IOException {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                out.write(value >>> shift);
+            }
+            position += 4;
+        }
+
+        private void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+    }
+
+    /**
+     * Reads a file written by {@link Writer}. Holds the block index; each pass over the fixes
+     * reads the file through its own small buffer, so several may run at once.
+     */
+    public static final class Reader implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long[] blockTimes;
+        private final long[] blockOffsets;
+        private final int[] blockCounts;
+        private final long indexOffset;
+
+        public Reader(File path) throws IOException {
+            file = new RandomAccessFile(path, "r");
+            try {
+                channel = file.getChannel();
+                long size = channel.size();
+                if (size < HEADER_BYTES + FOOTER_BYTES || readInt(0) != MAGIC || readInt(size - 4) != MAGIC) {
+                    throw new IOException(path + " is not a complete track file");
+                }
+                ByteBuffer footer = read(size - FOOTER_BYTES, FOOTER_BYTES);
+                indexOffset = footer.getLong();
+                int count = footer.getInt();
+                if (count < 0 || indexOffset < HEADER_BYTES
+                        || indexOffset + (long) count * INDEX_ENTRY_BYTES != size - FOOTER_BYTES) {
+                    throw new IOException(path + " has a corrupt index");
+                }
+                ByteBuffer index = read(indexOffset, count * INDEX_ENTRY_BYTES);
+                blockTimes = new long[count];
+                blockOffsets = new long[count];
+                blockCounts = new int[count];
+                for (int i = 0; i < count; i++) {
+                    blockTimes[i] = index.getLong();
+                    blockOffsets[i] = index.getLong();
+                    blockCounts[i] = index.getInt();
+                }
+            } catch (IOException | RuntimeException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        public int getBlockCount() {
+            return blockCounts.length;
+        }
+
+        public long getPointCount() {
+            long total = 0;
+            for (int count : blockCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        // The whole track
+        public TrackSource source() {
+            return source(Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        // Fixes from fromMillis to toMillis, both inclusive; decoding starts at the block holding fromMillis
+        public TrackSource source(long fromMillis, long toMillis) {
+            return () -> new Cursor(findBlock(fromMillis), fromMillis, toMillis);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+
+        // The last block starting at or before timeMillis, or the first block
+        private int findBlock(long timeMillis) {
+            int found = Arrays.binarySearch(blockTimes, timeMillis);
+            if (found < 0) {
+                found = -found - 2;
+            } else {
+                // Several blocks may start in the same second
+                while (found > 0 && blockTimes[found - 1] == timeMillis) {
+                    found--;
+                }
+            }
+            return Math.max(found, 0);
+        }
+
+        private int readInt(long offset) throws IOException {
+            return read(offset, 4).getInt();
+        }
+
+        private ByteBuffer read(long offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        private final class Cursor implements TrackSource.Cursor {
+            private final long fromMillis;
+            private final long toMillis;
+            private final long[] values = new long[FIELDS];
+            private int block;
+            private int remaining;
+            private InputStream in;
+
+            Cursor(int block, long fromMillis, long toMillis) {
+                this.block = block - 1;
+                this.fromMillis = fromMillis;
+                this.toMillis = toMillis;
+            }
+
+            @Override
+            public TrackPoint next() throws IOException {
+                while (true) {
+                    while (remaining == 0) {
+                        if (++block >= blockCounts.length) {
+                            return null;
+                        }
+                        // Blocks follow each other, so one stream serves them all
+                        if (in == null) {
+                            in = new BufferedInputStream(new ChannelInput(channel, blockOffsets[block], indexOffset));
+                        }
+                        remaining = blockCounts[block];
+                        Arrays.fill(values, 0);
+                    }
+                    for (int i = 0; i < FIELDS; i++) {
+                        values[i] += unzigzag(readVarLong(in));
+                    }
+                    remaining--;
+                    TrackPoint point = toPoint(values);
+                    if (point.timeMillis > toMillis) {
+                        block = blockCounts.length;
+                        remaining = 0;
+                        return null;
+                    }
+                    if (point.timeMillis >= fromMillis) {
+                        return point;
+                    }
+                }
+            }
+
+            @Override
+            public void close() {
+                in = null;
+            }
+        }
+    }
+
+    // Reads a file region by position, leaving the channel's own position alone
+    private static final class ChannelInput extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        ChannelInput(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position)), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    private static void quantise(TrackPoint point, long[] values) {
+        values[0] = Math.floorDiv(point.timeMillis, 1000);
+        values[1] = Math.floorDiv(point.latitudeE7 + 5L, 10);
+        values[2] = Math.floorDiv(point.longitudeE7 + 5L, 10);
+        values[3] = point.speedCmps + 1L;
+        values[4] = point.bearingDecidegrees + 1L;
+        values[5] = point.accuracyDm + 1L;
+    }
+
+    private static TrackPoint toPoint(long[] values) {
+        return new TrackPoint(values[0] * 1000, (int) (values[1] * 10), (int) (values[2] * 10),
+                (int) values[3] - 1, (int) values[4] - 1, (int) values[5] - 1);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated track block");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt varint in track block");
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.safeharbor.track;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a track as GPX 1.1 or as a GeoJSON Feature for the co-op and the authorities. Fixes
+ * stream from the {@link TrackSource} straight to the writer through one reused line buffer,
+ * so memory use is the same for an hour's trip or a month's.
+ *
+ * Numbers and times are formatted by hand: a String.format or a date formatter per fix would
+ * dominate the cost of exporting hundreds of thousands of them.
+ */
+public final class TrackExporter {
+    private TrackExporter() {
+    }
+
+    public static void writeGpx(TrackSource source, Writer out, String name) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"SafeHarbor\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "<trk><name>");
+        out.write(escapeXml(name));
+        out.write("</name><trkseg>\n");
+        try (TrackSource.Cursor cursor = source.open()) {
+            for (TrackPoint point = cursor.next(); point != null; point = cursor.next()) {
+                line.setLength(0);
+                line.append("<trkpt lat=\"");
+                appendE7(line, point.latitudeE7);
+                line.append("\" lon=\"");
+                appendE7(line, point.longitudeE7);
+                line.append("\"><time>");
+                appendIsoTime(line, point.timeMillis);
+                line.append("</time></trkpt>\n");
+                out.append(line);
+            }
+        }
+        out.write("</trkseg></trk>\n</gpx>\n");
+        out.flush();
+    }
+
+    /**
+     * GeoJSON has no place for times in a geometry, so they follow as the "coordTimes" property
+     * most tools read, one per coordinate. That takes a second pass over the source. A
+     * LineString needs two positions, so a track of one fix is a Point and an empty one has a
+     * null geometry.
+     */
+    public static void writeGeoJson(TrackSource source, Writer out, String name) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        try (TrackSource.Cursor cursor = source.open()) {
+            TrackPoint first = cursor.next();
+            TrackPoint second = first != null ? cursor.next() : null;
+            if (first == null) {
+                out.write("{\"type\":\"Feature\",\"geometry\":null");
+            } else if (second == null) {
+                line.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":");
+                appendCoordinates(line, first);
+                line.append('}');
+                out.append(line);
+            } else {
+                out.write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[\n");
+                appendCoordinates(line, first);
+                out.append(line);
+                for (TrackPoint point = second; point != null; point = cursor.next()) {
+                    line.setLength(0);
+                    line.append(",\n");
+                    appendCoordinates(line, point);
+                    out.append(line);
+                }
+                out.write("]}");
+            }
+        }
+        out.write(",\"properties\":{\"name\":\"");
+        out.write(escapeJson(name));
+        out.write("\",\"coordTimes\":[");
+        try (TrackSource.Cursor cursor = source.open()) {
+            boolean first = true;
+            for (TrackPoint point = cursor.next(); point != null; point = cursor.next()) {
+                line.setLength(0);
+                line.append(first ? "\n\"" : ",\n\"");
+                appendIsoTime(line, point.timeMillis);
+                line.append('"');
+                out.append(line);
+                first = false;
+            }
+        }
+        out.write("]}}\n");
+        out.flush();
+    }
+
+    // GeoJSON puts longitude first
+    private static void appendCoordinates(StringBuilder out, TrackPoint point) {
+        out.append('[');
+        appendE7(out, point.longitudeE7);
+        out.append(',');
+        appendE7(out, point.latitudeE7);
+        out.append(']');
+    }
+
+    // Degrees with all seven decimals
+    static void appendE7(StringBuilder out, int valueE7) {
+        long value = valueE7;
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        out.append(value / 10_000_000).append('.');
+        String fraction = Long.toString(value % 10_000_000);
+        for (int i = fraction.length(); i < 7; i++) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    // yyyy-MM-ddTHH:mm:ssZ in UTC
+    static void appendIsoTime(StringBuilder out, long timeMillis) {
+        long seconds = Math.floorDiv(timeMillis, 1000);
+        long days = Math.floorDiv(seconds, 86_400);
+        int secondOfDay = Math.floorMod(seconds, 86_400);
+
+        // Civil date from days since 1970-01-01, after Howard Hinnant's civil_from_days
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        out.append(year).append('-');
+        appendTwoDigits(out, month);
+        out.append('-');
+        appendTwoDigits(out, day);
+        out.append('T');
+        appendTwoDigits(out, secondOfDay / 3600);
+        out.append(':');
+        appendTwoDigits(out, secondOfDay / 60 % 60);
+        out.append(':');
+        appendTwoDigits(out, secondOfDay % 60);
+        out.append('Z');
+    }
+
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private static String escapeXml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String escapeJson(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.safeharbor.track;
+
+/**
+ * One recorded fix, as kept in the track file: position in 1e-7 degrees, speed in cm/s,
+ * bearing in tenths of a degree and accuracy in decimetres, each -1 when the fix had none.
+ */
+public final class TrackPoint {
+    public final long timeMillis;
+    public final int latitudeE7;
+    public final int longitudeE7;
+    public final int speedCmps;
+    public final int bearingDecidegrees;
+    public final int accuracyDm;
+
+    public TrackPoint(long timeMillis, int latitudeE7, int longitudeE7,
+                      int speedCmps, int bearingDecidegrees, int accuracyDm) {
+        this.timeMillis = timeMillis;
+        this.latitudeE7 = latitudeE7;
+        this.longitudeE7 = longitudeE7;
+        this.speedCmps = speedCmps;
+        this.bearingDecidegrees = bearingDecidegrees;
+        this.accuracyDm = accuracyDm;
+    }
+
+    public double getLatitude() {
+        return latitudeE7 / 1e7;
+    }
+
+    public double getLongitude() {
+        return longitudeE7 / 1e7;
+    }
+
+    public static int toE7(double degrees) {
+        return (int) Math.round(degrees * 1e7);
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.safeharbor.track;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.safeharbor.LocationHub;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records every fix of the location stream into the {@link TrackRing} in filesDir. A fix costs
+ * a put into the mapped file; the pages are forced out to storage once every few minutes.
+ *
+ * 8 MiB holds 349,000 fixes: about three weeks at the fastest sampling rate of one fix every
+ * five seconds, and far longer at the slower rates used away from the border.
+ *
+ * When recording stops at the end of a trip, the trip's fixes are archived as a compact
+ * {@link TrackCodec} file in filesDir/tracks, so it is kept once the ring has moved on. The
+ * newest {@link #MAX_ARCHIVES} trips are kept.
+ *
+ * The file is opened on first use and the fixes are appended on the
+ * {@link com.example.safeharbor.BorderEvaluator} thread, so use it from there.
+ */
+public final class TrackRecorder implements LocationHub.Listener {
+    private static final String TAG = "TrackRecorder";
+    public static final String FILE_NAME = "track.ring";
+    public static final int CAPACITY = 8 * 1024 * 1024 / TrackRing.RECORD_BYTES;
+    // Survives a killed process without this; forcing is only for a dead battery
+    private static final long FORCE_INTERVAL_MS = 5 * 60_000;
+    public static final String ARCHIVE_DIR = "tracks";
+    private static final String ARCHIVE_SUFFIX = ".trk";
+    public static final int MAX_ARCHIVES = 30;
+
+    private static TrackRecorder instance;
+
+    // Null if the file could not be opened; then nothing is recorded
+    private final TrackRing ring;
+    private final File archiveDir;
+    private long lastForceElapsed = SystemClock.elapsedRealtime();
+    private boolean recording;
+    // Wall clock time recording started, 0 while it is stopped
+    private volatile long tripStartMillis;
+
+    private TrackRecorder(TrackRing ring, File archiveDir) {
+        this.ring = ring;
+        this.archiveDir = archiveDir;
+    }
+
+    public static synchronized TrackRecorder getInstance(Context context) {
+        if (instance == null) {
+            TrackRing ring = null;
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            try {
+                long start = SystemClock.elapsedRealtime();
+                ring = TrackRing.open(file, CAPACITY);
+                Log.d(TAG, "Track opened in " + (SystemClock.elapsedRealtime() - start) + " ms, "
+                        + (ring.getCount() - ring.getFirstIndex()) + " fixes held");
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Could not open the track file, not recording", e);
+            }
+            instance = new TrackRecorder(ring, new File(context.getApplicationContext().getFilesDir(), ARCHIVE_DIR));
+        }
+        return instance;
+    }
+
+    public void start() {
+        if (ring != null && !recording) {
+            recording = true;
+            tripStartMillis = System.currentTimeMillis();
+            LocationHub.getInstance().subscribe(this);
+        }
+    }
+
+    // Also forces what was recorded out to storage and archives the trip
+    public void stop() {
+        if (recording) {
+            recording = false;
+            LocationHub.getInstance().unsubscribe(this);
+            ring.force();
+            archiveTrip(tripStartMillis);
+            tripStartMillis = 0;
+        }
+    }
+
+    // The recorded track, null if there is none
+    public TrackRing getRing() {
+        return ring;
+    }
+
+    // Newest recorded fix, from this or an earlier run; null if there is none
+    public TrackPoint getLast() {
+        return ring != null ? ring.getLast() : null;
+    }
+
+    /**
+     * Writes the recorded fixes from fromMillis to toMillis into a compact {@link TrackCodec}
+     * file, for keeping a trip once the ring moves on or for handing it over. Any thread.
+     * Returns the number of fixes written.
+     */
+    public long archive(File target, long fromMillis, long toMillis) throws IOException {
+        if (ring == null) {
+            throw new IOException("No track recorded");
+        }
+        long start = SystemClock.elapsedRealtime();
+        TrackCodec.Writer writer = new TrackCodec.Writer(new FileOutputStream(target));
+        try (TrackSource.Cursor cursor = ring.source(fromMillis, toMillis).open()) {
+            for (TrackPoint point = cursor.next(); point != null; point = cursor.next()) {
+                writer.write(point);
+            }
+        } finally {
+            writer.close();
+        }
+        Log.d(TAG, "Archived " + writer.getPointCount() + " fixes in " + writer.getSize() + " bytes, "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        return writer.getPointCount();
+    }
+
+    /**
+     * Writes the trip being recorded, or else the newest archived one, into dir as a GPX and a
+     * GeoJSON file for sharing, and returns them; empty if there is no trip with a fix. Any
+     * thread; a long trip takes a second or so.
+     */
+    public List<File> exportLatestTrip(File dir) throws IOException {
+        long startMillis = tripStartMillis;
+        if (ring != null && startMillis > 0 && hasFix(ring.source(startMillis, Long.MAX_VALUE))) {
+            return export(ring.source(startMillis, Long.MAX_VALUE), dir, startMillis);
+        }
+        File[] archives = listArchives();
+        if (archives.length == 0) {
+            return new ArrayList<>();
+        }
+        File newest = archives[archives.length - 1];
+        try (TrackCodec.Reader reader = new TrackCodec.Reader(newest)) {
+            return export(reader.source(), dir, archiveStartMillis(newest));
+        }
+    }
+
+    private List<File> export(TrackSource source, File dir, long startMillis) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        StringBuilder name = new StringBuilder("SafeHarbor trip ");
+        TrackExporter.appendIsoTime(name, startMillis);
+        String baseName = "safeharbor-trip-" + startMillis;
+        File gpx = new File(dir, baseName + ".gpx");
+        File geoJson = new File(dir, baseName + ".geojson");
+        long start = SystemClock.elapsedRealtime();
+        try (Writer out = openWriter(gpx)) {
+            TrackExporter.writeGpx(source, out, name.toString());
+        }
+        try (Writer out = openWriter(geoJson)) {
+            TrackExporter.writeGeoJson(source, out, name.toString());
+        }
+        Log.d(TAG, "Exported " + baseName + " in " + (SystemClock.elapsedRealtime() - start) + " ms");
+        return Arrays.asList(gpx, geoJson);
+    }
+
+    private static Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static boolean hasFix(TrackSource source) throws IOException {
+        try (TrackSource.Cursor cursor = source.open()) {
+            return cursor.next() != null;
+        }
+    }
+
+    // The trip's fixes from fromMillis on, into tracks/<fromMillis>.trk; then the oldest go
+    private void archiveTrip(long fromMillis) {
+        if (!archiveDir.isDirectory() && !archiveDir.mkdirs()) {
+            Log.e(TAG, "Could not create " + archiveDir + ", trip not archived");
+            return;
+        }
+        File target = new File(archiveDir, fromMillis + ARCHIVE_SUFFIX);
+        try {
+            if (archive(target, fromMillis, Long.MAX_VALUE) == 0) {
+                target.delete();
+                return;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not archive the trip", e);
+            target.delete();
+            return;
+        }
+        File[] archives = listArchives();
+        for (int i = 0; i < archives.length - MAX_ARCHIVES; i++) {
+            archives[i].delete();
+        }
+    }
+
+    // Oldest first
+    private File[] listArchives() {
+        File[] archives = archiveDir.listFiles((dir, name) -> name.endsWith(ARCHIVE_SUFFIX));
+        if (archives == null) {
+            return new File[0];
+        }
+        Arrays.sort(archives, (a, b) -> Long.compare(archiveStartMillis(a), archiveStartMillis(b)));
+        return archives;
+    }
+
+    private static long archiveStartMillis(File archive) {
+        String name = archive.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - ARCHIVE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void onLocations(List<Location> locations) {
+        for (Location location : locations) {
+            ring.append(location.getTime(),
+                    TrackPoint.toE7(location.getLatitude()),
+                    TrackPoint.toE7(location.getLongitude()),
+                    location.hasSpeed() ? Math.round(location.getSpeed() * 100) : -1,
+                    location.hasBearing() ? Math.round(location.getBearing() * 10) % 3600 : -1,
+                    location.hasAccuracy() ? Math.round(location.getAccuracy() * 10) : -1);
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastForceElapsed >= FORCE_INTERVAL_MS) {
+            lastForceElapsed = now;
+            ring.force();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.safeharbor.track;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * The trip track: a fixed number of fixed-width fix records in a preallocated file, mapped into
+ * memory and written round-robin, so the newest fixes always fit in the same disk budget and
+ * the oldest are overwritten.
+ *
+ * Appending is two stores into the mapping, the record and then the count that publishes it.
+ * The pages belong to the kernel, so everything appended survives the process being killed;
+ * {@link #force} writes them out to survive a power loss too and is meant to be called now and
+ * then, not per fix. A record only counts once the count covers it, so a process killed
+ * mid-append leaves the previous state.
+ *
+ * Each record ends with a check over its fields and its index, written last. A power loss can
+ * write the header page out without a record's page, or half a record, and a reader can catch
+ * a slot while the writer laps it; such a slot holds a torn record or the one from the lap
+ * before, fails the check, and is skipped.
+ *
+ * The file is a header of
+ * <pre>
+ *   int magic, int record size, int capacity, int unused, long records ever appended
+ * </pre>
+ * padded to {@link #HEADER_BYTES}, then capacity records of
+ * <pre>
+ *   long time ms, int latitude e7, int longitude e7,
+ *   char speed cm/s, char bearing 0.1 degree, char accuracy dm,
+ *   char check   low 16 bits of the CRC-32 of the record's index as a long and the fields before
+ * </pre>
+ * where 0xFFFF stands for a missing value. Record n is at slot n % capacity.
+ *
+ * One thread appends; any thread may read, and a record overwritten while it was read is
+ * reported as gone, as is one that fails its check.
+ */
+public final class TrackRing implements Closeable {
+    public static final int RECORD_BYTES = 24;
+    public static final int HEADER_BYTES = 64;
+
+    private static final int MAGIC = 0x54524B32; // "TRK2"
+    private static final int COUNT_OFFSET = 16;
+    private static final char NONE = 0xFFFF;
+    // Preallocation writes zeros in chunks this big
+    private static final int ZERO_CHUNK = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    // The same as in the header; kept here so readers on other threads see it
+    private volatile long count;
+
+    private TrackRing(RandomAccessFile file, MappedByteBuffer map, int capacity, long count) {
+        this.file = file;
+        this.map = map;
+        this.capacity = capacity;
+        this.count = count;
+    }
+
+    /**
+     * Opens the track, creating it if it does not exist. A file made for a different capacity
+     * or record layout is started over. The file is written out in full when created, since a
+     * write to a sparse page of a mapping on a full disk kills the process.
+     */
+    public static TrackRing open(File path, int capacity) throws IOException {
+        long length = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            boolean valid = channel.size() == length && readHeader(channel, capacity);
+            if (!valid) {
+                preallocate(channel, length);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (!valid) {
+                map.putInt(0, MAGIC).putInt(4, RECORD_BYTES).putInt(8, capacity).putInt(12, 0).putLong(COUNT_OFFSET, 0);
+                map.force();
+            }
+            long count = map.getLong(COUNT_OFFSET);
+            if (count < 0) {
+                count = 0;
+                map.putLong(COUNT_OFFSET, 0);
+            }
+            return new TrackRing(file, map, capacity, count);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a fix. speedCmps, bearingDecidegrees and accuracyDm are -1 when the fix does not
+     * have them and are clamped to what a record holds. Writer thread only.
+     */
+    public void append(long timeMillis, int latitudeE7, int longitudeE7,
+                       int speedCmps, int bearingDecidegrees, int accuracyDm) {
+        long n = count;
+        int offset = offset(n);
+        char speed = toChar(speedCmps);
+        char bearing = toChar(bearingDecidegrees);
+        char accuracy = toChar(accuracyDm);
+        map.putLong(offset, timeMillis)
+                .putInt(offset + 8, latitudeE7)
+                .putInt(offset + 12, longitudeE7)
+                .putChar(offset + 16, speed)
+                .putChar(offset + 18, bearing)
+                .putChar(offset + 20, accuracy)
+                .putChar(offset + 22, check(n, timeMillis, latitudeE7, longitudeE7, speed, bearing, accuracy));
+        // Published only once the record is complete
+        map.putLong(COUNT_OFFSET, n + 1);
+        count = n + 1;
+    }
+
+    // Writes the appended records out to storage
+    public void force() {
+        map.force();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Index the next record will get; also the number ever appended
+    public long getCount() {
+        return count;
+    }
+
+    // Index of the oldest record still held
+    public long getFirstIndex() {
+        return Math.max(0, count - capacity);
+    }
+
+    // Null if the record has not been appended, has been overwritten or is torn
+    public TrackPoint get(long index) {
+        if (index < 0 || index >= count) {
+            return null;
+        }
+        int offset = offset(index);
+        long timeMillis = map.getLong(offset);
+        int latitudeE7 = map.getInt(offset + 8);
+        int longitudeE7 = map.getInt(offset + 12);
+        char speed = map.getChar(offset + 16);
+        char bearing = map.getChar(offset + 18);
+        char accuracy = map.getChar(offset + 20);
+        if (map.getChar(offset + 22) != check(index, timeMillis, latitudeE7, longitudeE7, speed, bearing, accuracy)) {
+            return null;
+        }
+        // The writer may have lapped us while reading
+        if (index < getFirstIndex()) {
+            return null;
+        }
+        return new TrackPoint(timeMillis, latitudeE7, longitudeE7, fromChar(speed), fromChar(bearing), fromChar(accuracy));
+    }
+
+    public TrackPoint getLast() {
+        return get(count - 1);
+    }
+
+    /**
+     * Fixes from fromMillis to toMillis, both inclusive, as held when each pass starts. Fixes
+     * appended during a pass are left for the next; ones overwritten during it or torn are
+     * skipped.
+     */
+    public TrackSource source(long fromMillis, long toMillis) {
+        return () -> new TrackSource.Cursor() {
+            private final long end = count;
+            private long index = getFirstIndex();
+
+            @Override
+            public TrackPoint next() {
+                while (index < end) {
+                    TrackPoint point = get(index++);
+                    if (point == null) {
+                        index = Math.max(index, getFirstIndex());
+                    } else if (point.timeMillis > toMillis) {
+                        index = end;
+                    } else if (point.timeMillis >= fromMillis) {
+                        return point;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        map.force();
+        file.close();
+    }
+
+    private int offset(long index) {
+        return HEADER_BYTES + (int) (index % capacity) * RECORD_BYTES;
+    }
+
+    private static boolean readHeader(FileChannel channel, int capacity) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read until full
+        }
+        return header.getInt(0) == MAGIC && header.getInt(4) == RECORD_BYTES && header.getInt(8) == capacity;
+    }
+
+    private static void preallocate(FileChannel channel, long length) throws IOException {
+        channel.truncate(0);
+        ByteBuffer zeros = ByteBuffer.allocate(ZERO_CHUNK);
+        long position = 0;
+        while (position < length) {
+            zeros.clear();
+            zeros.limit((int) Math.min(ZERO_CHUNK, length - position));
+            while (zeros.hasRemaining()) {
+                position += channel.write(zeros, position);
+            }
+        }
+        channel.force(true);
+    }
+
+    private static char check(long index, long timeMillis, int latitudeE7, int longitudeE7,
+                              char speed, char bearing, char accuracy) {
+        ByteBuffer bytes = ByteBuffer.allocate(8 + RECORD_BYTES - 2);
+        bytes.putLong(index).putLong(timeMillis).putInt(latitudeE7).putInt(longitudeE7)
+                .putChar(speed).putChar(bearing).putChar(accuracy);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.array(), 0, bytes.position());
+        return (char) crc.getValue();
+    }
+
+    private static char toChar(int value) {
+        return value < 0 ? NONE : (char) Math.min(value, NONE - 1);
+    }
+
+    private static int fromChar(char value) {
+        return value == NONE ? -1 : value;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.safeharbor.track;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A stretch of track that can be read any number of times, oldest fix first, one fix at a time,
+ * so a consumer never holds more than the fix in hand however long the trip was.
+ */
+public interface TrackSource {
+    interface Cursor extends Closeable {
+        // The next fix, null at the end
+        TrackPoint next() throws IOException;
+    }
+
+    // A new pass from the first fix
+    Cursor open() throws IOException;
+}
@@ -0,0 +1,166 @@
+package com.example.safeharbor.utils;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import com.example.safeharbor.geo.BoundaryIndex;
+import com.example.safeharbor.geo.BoundaryPack;
+import com.example.safeharbor.geo.DistanceField;
+import com.example.safeharbor.geo.GeoJsonReader;
+import com.example.safeharbor.geo.MaritimeZones;
+import com.example.safeharbor.geo.PolygonGrid;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+public class BoundaryAssets {
+    private static final String TAG = "BoundaryAssets";
+    public static final String EEZ_BOUNDARIES_ASSET = "india_eez_boundaries.geojson";
+    // Largest single feature the GeoJSON reader may buffer, about 3 MB of coordinates
+    public static final int MAX_FEATURE_POINTS = 200_000;
+
+    private BoundaryAssets() {
+    }
+
+    public static BoundaryPack loadPack(Context context) throws IOException {
+        long start = System.nanoTime();
+        BoundaryPack pack = BoundaryPack.read(mapAsset(context, BoundaryPack.ASSET_NAME));
+        Log.d(TAG, "Boundary pack loaded: " + pack.getLineCount() + " lines in "
+                + (System.nanoTime() - start) / 1000 + " us");
+        return pack;
+    }
+
+    /**
+     * The boundary lines, from the pack the build compiles out of the CSV and the EEZ boundaries
+     * GeoJSON. Only if the pack cannot be read are the EEZ boundaries streamed from the GeoJSON.
+     */
+    public static BoundaryPack loadBoundaries(Context context) throws IOException {
+        try {
+            return loadPack(context);
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading " + BoundaryPack.ASSET_NAME + ", streaming " + EEZ_BOUNDARIES_ASSET, e);
+            return loadGeoJsonPack(context, EEZ_BOUNDARIES_ASSET, "line_name");
+        }
+    }
+
+    public static BoundaryPack loadGeoJsonPack(Context context, String assetName, String nameProperty) throws IOException {
+        long start = System.nanoTime();
+        try (GeoJsonReader reader = openGeoJson(context, assetName, nameProperty)) {
+            BoundaryPack pack = BoundaryPack.fromGeoJson(reader, nameProperty);
+            Log.d(TAG, assetName + " streamed: " + pack.getLineCount() + " lines, " + pack.lats.length
+                    + " points in " + (System.nanoTime() - start) / 1000000 + " ms");
+            return pack;
+        }
+    }
+
+    public static MaritimeZones loadMaritimeZones(Context context) throws IOException {
+        long start = System.nanoTime();
+        PolygonGrid territorialSea;
+        try (GeoJsonReader reader = openGeoJson(context, MaritimeZones.TERRITORIAL_SEA_ASSET)) {
+            territorialSea = PolygonGrid.fromGeoJson(reader);
+        }
+        PolygonGrid exclusiveEconomicZone;
+        try (GeoJsonReader reader = openGeoJson(context, MaritimeZones.EEZ_ASSET)) {
+            exclusiveEconomicZone = PolygonGrid.fromGeoJson(reader);
+        }
+        Log.d(TAG, "Maritime zones gridded: " + territorialSea.getEdgeCount() + " + "
+                + exclusiveEconomicZone.getEdgeCount() + " edges in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return new MaritimeZones(territorialSea, exclusiveEconomicZone);
+    }
+
+    /**
+     * The distance raster for these boundaries. The build ships one for the bundled pack, which
+     * is mapped straight out of the APK. Only when the boundaries came from elsewhere, such as
+     * the GeoJSON fallback, is a raster built here and cached in filesDir; that takes seconds,
+     * so call this off the main thread.
+     */
+    public static DistanceField loadDistanceField(Context context, BoundaryPack pack, BoundaryIndex index) throws IOException {
+        int hash = pack.contentHash();
+        try {
+            DistanceField field = DistanceField.read(mapAsset(context, DistanceField.ASSET_NAME));
+            if (field.getSourceHash() == hash) {
+                Log.d(TAG, "Distance field mapped from the APK: " + field.getCellCount() + " cells");
+                return field;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable " + DistanceField.ASSET_NAME, e);
+        }
+
+        File file = new File(context.getFilesDir(), "distance_field_" + Integer.toHexString(hash) + ".bin");
+        if (file.exists()) {
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                DistanceField field = DistanceField.read(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+                if (field.getSourceHash() == hash) {
+                    Log.d(TAG, "Distance field mapped: " + field.getCellCount() + " cells");
+                    return field;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable " + file.getName(), e);
+            }
+        }
+
+        long start = System.nanoTime();
+        DistanceField field = DistanceField.build(index, hash, DistanceField.DEFAULT_STEP_DEGREES);
+        Log.d(TAG, "Distance field built: " + field.getCellCount() + " cells in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+
+        // Old rasters belong to boundary sets that are gone
+        File[] stale = context.getFilesDir().listFiles((dir, name) -> name.startsWith("distance_field_"));
+        if (stale != null) {
+            for (File old : stale) {
+                old.delete();
+            }
+        }
+        // Synced before the rename, so a power loss leaves either no cache or a complete one
+        File temp = new File(context.getFilesDir(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            field.writeTo(buffered);
+            buffered.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Could not cache the distance field");
+        }
+        return field;
+    }
+
+    public static GeoJsonReader openGeoJson(Context context, String assetName, String... properties) throws IOException {
+        InputStream in = context.getAssets().open(assetName, AssetManager.ACCESS_STREAMING);
+        return new GeoJsonReader(new InputStreamReader(in, StandardCharsets.UTF_8), MAX_FEATURE_POINTS, properties);
+    }
+
+    // Maps the asset straight out of the APK. Only possible for assets stored uncompressed,
+    // otherwise it is read into a buffer instead.
+    private static ByteBuffer mapAsset(Context context, String assetName) throws IOException {
+        try (AssetFileDescriptor fd = context.getAssets().openFd(assetName);
+             FileInputStream in = fd.createInputStream()) {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+        } catch (FileNotFoundException compressed) {
+            Log.w(TAG, assetName + " is compressed, reading it instead of mapping");
+            try (InputStream in = context.getAssets().open(assetName)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    out.write(chunk, 0, read);
+                }
+                return ByteBuffer.wrap(out.toByteArray());
+            }
+        }
+    }
+}
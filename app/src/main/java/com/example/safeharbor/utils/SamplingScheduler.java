@@ -0,0 +1,76 @@
+package com.example.safeharbor.utils;
+
+/**
+ * Picks how often to ask for a fix from how far the boat is from the nearest border and how
+ * fast it is going.
+ *
+ * The next fix must arrive before the boat could possibly reach the threshold distance. That
+ * time is the distance still to go, less the fixes' own uncertainty, over a worst-case speed;
+ * the interval is a fraction of it. Far out in home waters this gives minutes between fixes,
+ * and it shrinks to the fastest rate on approach.
+ *
+ * Every fix is asked for at high accuracy, however long the interval. Offshore there is no
+ * Wi-Fi or cell tower to place a balanced-power fix by, and such a fix can be kilometres out,
+ * which would use up the margin the interval is planned on.
+ */
+public class SamplingScheduler {
+    public static final long MIN_INTERVAL_MS = 5_000;
+    public static final long MAX_INTERVAL_MS = 5 * 60_000;
+
+    // A small fishing boat at full throttle, about 15 knots, for when the fix has no speed
+    private static final double MAX_BOAT_SPEED_MPS = 7.7;
+    // Speeds change; assume the boat might go this much faster than its last reading
+    private static final double SPEED_HEADROOM = 1.5;
+    // Only use part of the time to the threshold, so a late or missed fix is still in time
+    private static final double SAFETY_FACTOR = 0.5;
+    // Taken for a fix that does not report its accuracy
+    private static final double UNKNOWN_ACCURACY_M = 100;
+
+    public static final class Plan {
+        public final long intervalMillis;
+
+        Plan(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return intervalMillis / 1000 + " s";
+        }
+    }
+
+    public static final Plan INITIAL = new Plan(MIN_INTERVAL_MS);
+
+    private final double thresholdKm;
+
+    public SamplingScheduler(double thresholdKm) {
+        this.thresholdKm = thresholdKm;
+    }
+
+    /**
+     * @param distanceKm distance to the nearest border, or a lower bound on it
+     * @param speedMps   ground speed, negative or NaN when the fix has none
+     * @param accuracyM  horizontal accuracy of the fix, 0 when unknown
+     */
+    public Plan plan(double distanceKm, double speedMps, double accuracyM) {
+        double speed = speedMps >= 0 ? Math.min(MAX_BOAT_SPEED_MPS, speedMps * SPEED_HEADROOM) : MAX_BOAT_SPEED_MPS;
+        // Even a drifting boat gets carried by current and wind
+        speed = Math.max(speed, 1.0);
+
+        // This fix can be off by its accuracy, and the next one by as much again
+        double accuracy = accuracyM > 0 ? accuracyM : UNKNOWN_ACCURACY_M;
+        double marginM = (distanceKm - thresholdKm) * 1000 - 2 * accuracy;
+        if (Double.isNaN(marginM) || marginM <= 0) {
+            return INITIAL;
+        }
+        double interval = marginM / speed * SAFETY_FACTOR * 1000;
+        return new Plan((long) Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, interval)));
+    }
+
+    // Re-registering for updates has its own cost, so only do it for a real change. Keeping
+    // an interval up to a quarter too long only eats into the safety factor.
+    public static boolean shouldReschedule(Plan current, Plan next) {
+        return next.intervalMillis * 5 < current.intervalMillis * 4
+                || next.intervalMillis >= current.intervalMillis * 2;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.safeharbor.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Short, timed partial wake lock windows around units of work, instead of one lock held for
+ * the whole trip. Every window has a timeout, so a stuck callback cannot keep the CPU awake,
+ * and the hold time is added up per trip so the saving can be checked afterwards.
+ */
+public class WakeWindow {
+    private static final String TAG = "WakeWindow";
+    public static final String PREFS_NAME = "WakeLockStats";
+    public static final String KEY_LAST_TRIP_HELD_MS = "last_trip_held_ms";
+    public static final String KEY_LAST_TRIP_WINDOWS = "last_trip_windows";
+    public static final String KEY_LAST_TRIP_DURATION_MS = "last_trip_duration_ms";
+
+    // Longest a single window may hold the CPU; evaluating a batch of fixes takes milliseconds
+    private static final long WINDOW_TIMEOUT_MS = 10_000;
+    // How often the running totals are saved, in windows, so a killed trip still leaves numbers
+    private static final int SAVE_EVERY_WINDOWS = 60;
+
+    private final PowerManager.WakeLock wakeLock;
+    private final SharedPreferences prefs;
+    private final long tripStart = SystemClock.elapsedRealtime();
+    private long heldMillis;
+    private int windowCount;
+
+    public WakeWindow(Context context, String tag) {
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, tag);
+        wakeLock.setReferenceCounted(false);
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // Runs work with the CPU held awake, on the calling thread
+    public void run(Runnable work) {
+        long start = SystemClock.elapsedRealtime();
+        wakeLock.acquire(WINDOW_TIMEOUT_MS);
+        try {
+            work.run();
+        } finally {
+            if (wakeLock.isHeld()) {
+                wakeLock.release();
+            }
+            heldMillis += Math.min(WINDOW_TIMEOUT_MS, SystemClock.elapsedRealtime() - start);
+            windowCount++;
+            if (windowCount % SAVE_EVERY_WINDOWS == 0) {
+                save();
+            }
+        }
+    }
+
+    public long getHeldMillis() {
+        return heldMillis;
+    }
+
+    public int getWindowCount() {
+        return windowCount;
+    }
+
+    public long getTripMillis() {
+        return SystemClock.elapsedRealtime() - tripStart;
+    }
+
+    // Ends the trip: releases anything still held and records the totals
+    public void finish() {
+        if (wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+        save();
+        Log.d(TAG, "Trip of " + getTripMillis() / 1000 + " s held the CPU " + heldMillis + " ms over "
+                + windowCount + " windows");
+    }
+
+    private void save() {
+        prefs.edit()
+                .putLong(KEY_LAST_TRIP_HELD_MS, heldMillis)
+                .putInt(KEY_LAST_TRIP_WINDOWS, windowCount)
+                .putLong(KEY_LAST_TRIP_DURATION_MS, getTripMillis())
+                .apply();
+    }
+}
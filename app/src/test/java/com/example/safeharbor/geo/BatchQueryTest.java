@@ -0,0 +1,101 @@
+package com.example.safeharbor.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchQueryTest {
+    private static final double TOLERANCE_KM = 1e-9;
+
+    // A drifting track with the odd jump, so runs both reuse candidates and search afresh
+    private static double[][] track(Random random, int count) {
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        double lat = 15;
+        double lon = 78;
+        double heading = 0;
+        for (int i = 0; i < count; i++) {
+            heading += random.nextGaussian() * 0.2;
+            double step = random.nextInt(500) == 0 ? 0.5 : 0.0004;
+            lat = Math.max(2, Math.min(28, lat + Math.cos(heading) * step));
+            lon = Math.max(62, Math.min(94, lon + Math.sin(heading) * step));
+            lats[i] = lat;
+            lons[i] = lon;
+        }
+        return new double[][] {lats, lons};
+    }
+
+    private static void assertMatchesSinglePointQueries(BoundaryIndex index, int count, ForkJoinPool pool) {
+        double[][] track = track(new Random(count), count);
+        // Longer than count, to show nothing past it is touched
+        double[] distances = new double[count + 3];
+        int[] ids = new int[count + 3];
+        distances[count] = -1;
+        ids[count] = -2;
+        if (pool != null) {
+            BatchQuery.nearest(index, track[0], track[1], count, distances, ids, pool);
+        } else {
+            BatchQuery.nearest(index, track[0], track[1], count, distances, ids);
+        }
+
+        BoundaryIndex.Query full = index.newQuery();
+        for (int i = 0; i < count; i++) {
+            assertEquals("point " + i, full.find(track[0][i], track[1][i]), distances[i], TOLERANCE_KM);
+            assertEquals("point " + i, full.getBoundaryId(), ids[i]);
+        }
+        assertEquals(-1, distances[count], 0);
+        assertEquals(-2, ids[count]);
+    }
+
+    @Test
+    public void matchesSinglePointQueriesBelowTheThreshold() {
+        BoundaryIndex index = BoundaryIndexTest.build(BoundaryIndexTest.randomLines(new Random(10)));
+        assertMatchesSinglePointQueries(index, 1, null);
+        assertMatchesSinglePointQueries(index, BatchQuery.PARALLEL_THRESHOLD, null);
+    }
+
+    @Test
+    public void matchesSinglePointQueriesAcrossTheForkJoinSplit() {
+        BoundaryIndex index = BoundaryIndexTest.build(BoundaryIndexTest.randomLines(new Random(11)));
+        assertMatchesSinglePointQueries(index, BatchQuery.PARALLEL_THRESHOLD + 1, null);
+        assertMatchesSinglePointQueries(index, BatchQuery.PARALLEL_THRESHOLD * 5 + 7, null);
+    }
+
+    @Test
+    public void runsOnTheCallersPool() {
+        BoundaryIndex index = BoundaryIndexTest.build(BoundaryIndexTest.randomLines(new Random(12)));
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            assertMatchesSinglePointQueries(index, BatchQuery.PARALLEL_THRESHOLD * 4 + 1, pool);
+            assertMatchesSinglePointQueries(index, 100, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void idsAreOptionalAndAnEmptyIndexIsInfinitelyFar() {
+        BoundaryIndex empty = new BoundaryIndex.Builder().build();
+        int count = BatchQuery.PARALLEL_THRESHOLD + 10;
+        double[][] track = track(new Random(13), count);
+        double[] distances = new double[count];
+        BatchQuery.nearest(empty, track[0], track[1], count, distances, null);
+        for (double distance : distances) {
+            assertEquals(Double.POSITIVE_INFINITY, distance, 0);
+        }
+    }
+
+    @Test
+    public void rejectsArraysShorterThanTheCount() {
+        BoundaryIndex empty = new BoundaryIndex.Builder().build();
+        try {
+            BatchQuery.nearest(empty, new double[4], new double[4], 5, new double[5], null);
+            throw new AssertionError("Accepted arrays shorter than the count");
+        } catch (IllegalArgumentException expected) {
+            // the positions do not reach count
+        }
+    }
+}
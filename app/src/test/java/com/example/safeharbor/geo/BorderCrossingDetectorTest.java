@@ -0,0 +1,127 @@
+package com.example.safeharbor.geo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tracks across a made-up coast: land west of 78 E, Indian waters from there to a border
+ * running north along 80 E, and a baseline at 79 E that is not a border.
+ */
+public class BorderCrossingDetectorTest {
+    private static final double CLEAR_KM = 0.02;
+
+    private BoundaryIndex index;
+    private int border;
+    private MaritimeZones zones;
+    private BorderCrossingDetector detector;
+
+    // One ring, as lat, lon pairs
+    private static PolygonGrid polygon(double... latLons) throws IOException {
+        StringBuilder json = new StringBuilder(
+                "{\"type\":\"Feature\",\"properties\":{},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[");
+        for (int i = 0; i <= latLons.length; i += 2) {
+            int at = i % latLons.length;
+            json.append(i > 0 ? "," : "").append('[').append(latLons[at + 1]).append(',').append(latLons[at]).append(']');
+        }
+        try (GeoJsonReader reader = new GeoJsonReader(new StringReader(json.append("]]}}").toString()))) {
+            return PolygonGrid.fromGeoJson(reader);
+        }
+    }
+
+    private static PolygonGrid box(double minLat, double minLon, double maxLat, double maxLon) throws IOException {
+        return polygon(minLat, minLon, minLat, maxLon, maxLat, maxLon, maxLat, minLon);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        index = new BoundaryIndex.Builder()
+                .addLine("Sri Lanka - India", new double[]{7, 8.5, 9.5, 12}, new double[]{80, 80.02, 79.98, 80})
+                .addLine("India Straight Baseline", new double[]{7, 12}, new double[]{79, 79})
+                .build();
+        border = index.getBoundaryId("Sri Lanka - India");
+        // The EEZ ends at the border
+        zones = new MaritimeZones(box(7, 78, 12, 78.2), polygon(7, 78, 7, 80, 8.5, 80.02, 9.5, 79.98, 12, 80, 12, 78));
+        detector = new BorderCrossingDetector(index, InternationalBoundaries.flags(index));
+    }
+
+    private int track(double lat, double... lons) {
+        int confirmed = -1;
+        for (double lon : lons) {
+            int boundary = detector.update(lat, lon, CLEAR_KM, zones.classify(lat, lon).isIndianWaters());
+            if (boundary >= 0) {
+                assertEquals(-1, confirmed);
+                confirmed = boundary;
+            }
+        }
+        return confirmed;
+    }
+
+    @Test
+    public void confirmsACrossingOnceAndRearmsOnReturn() {
+        assertEquals(-1, track(9, 78.5, 79.5, 79.9));
+        assertEquals(border, track(9, 80.2, 80.3, 80.4, 80.5));
+        assertEquals(-1, track(9, 80.6, 79.5));
+        assertFalse(detector.isAcross(border));
+        assertEquals(border, track(9, 80.2, 80.3));
+    }
+
+    @Test
+    public void ignoresTheBaseline() {
+        assertEquals(-1, track(9, 78.5, 79.5, 78.5, 79.5));
+        assertFalse(detector.isAcross(index.getBoundaryId("India Straight Baseline")));
+    }
+
+    @Test
+    public void neverConfirmsCloseToTheLine() {
+        // The line is at 80 E here
+        assertEquals(-1, track(9, 79.9, 80.0005, 80.0005, 80.0005));
+        assertTrue(detector.isAcross(border));
+        assertEquals(-1, detector.update(9, 80.3, 50, false));
+        assertEquals(-1, detector.update(9, 80.3, 50, false));
+        assertEquals(border, track(9, 80.3, 80.3));
+    }
+
+    @Test
+    public void startsAcrossWhenTheZonesSaySo() {
+        detector.start(10, 80.5, zones);
+        assertTrue(detector.isAcross(border));
+        assertEquals(border, track(10, 80.5, 80.6));
+        assertEquals(-1, track(10, 79.5));
+        assertFalse(detector.isAcross(border));
+    }
+
+    @Test
+    public void startsAtHomeInIndianWatersAndAshore() {
+        detector.start(10, 79.5, zones);
+        assertFalse(detector.isAcross(border));
+        detector.start(10, 77.5, zones);
+        assertFalse(detector.isAcross(border));
+        assertEquals(-1, track(10, 77.5, 77.6, 77.7));
+    }
+
+    @Test
+    public void startingAgainDoesNotReportTwice() {
+        assertEquals(border, track(9, 79.5, 80.3, 80.4));
+        detector.start(9, 80.4, zones);
+        assertTrue(detector.isAcross(border));
+        assertEquals(-1, track(9, 80.4, 80.5, 80.6));
+    }
+
+    @Test
+    public void startsAtHomeWhereTheZonesCannotTell() throws IOException {
+        // Zones that cover both sides of the line alike
+        MaritimeZones everywhere = new MaritimeZones(box(0, 70, 20, 90), box(0, 70, 20, 90));
+        MaritimeZones nowhere = new MaritimeZones(box(0, 0, 1, 1), box(0, 0, 1, 1));
+        detector.start(10, 80.5, everywhere);
+        assertFalse(detector.isAcross(border));
+        detector.start(10, 80.5, nowhere);
+        assertFalse(detector.isAcross(border));
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.safeharbor.geo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the R-tree against a brute-force scan of every segment, on random boundary lines
+ * around the Indian coast and random fixes in and around them.
+ */
+public class BoundaryIndexTest {
+    private static final String[] NAMES = {"Pakistan - India", "India - Sri Lanka", "India - Maldives",
+            "India - Bangladesh", "India Straight Baseline"};
+    private static final double TOLERANCE_KM = 1e-6;
+
+    // Random walks of a few hundred vertices, some with repeated points
+    static List<double[][]> randomLines(Random random) {
+        List<double[][]> lines = new ArrayList<>();
+        for (int line = 0; line < NAMES.length * 2; line++) {
+            int count = 2 + random.nextInt(400);
+            double[] lats = new double[count];
+            double[] lons = new double[count];
+            lats[0] = 5 + random.nextDouble() * 20;
+            lons[0] = 66 + random.nextDouble() * 24;
+            for (int i = 1; i < count; i++) {
+                boolean repeat = random.nextInt(50) == 0;
+                lats[i] = repeat ? lats[i - 1] : lats[i - 1] + (random.nextDouble() - 0.5) * 0.2;
+                lons[i] = repeat ? lons[i - 1] : lons[i - 1] + (random.nextDouble() - 0.5) * 0.2;
+            }
+            lines.add(new double[][]{lats, lons});
+        }
+        return lines;
+    }
+
+    static BoundaryIndex build(List<double[][]> lines) {
+        BoundaryIndex.Builder builder = new BoundaryIndex.Builder();
+        for (int i = 0; i < lines.size(); i++) {
+            builder.addLine(NAMES[i % NAMES.length], lines.get(i)[0], lines.get(i)[1]);
+        }
+        return builder.build();
+    }
+
+    // The same lines as a pack, one boundary per name
+    static BoundaryPack pack(List<double[][]> lines) {
+        int[] lineBoundary = new int[lines.size()];
+        int[] lineStart = new int[lines.size()];
+        int[] lineLength = new int[lines.size()];
+        int total = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            lineBoundary[i] = i % NAMES.length;
+            lineStart[i] = total;
+            lineLength[i] = lines.get(i)[0].length;
+            total += lineLength[i];
+        }
+        double[] lats = new double[total];
+        double[] lons = new double[total];
+        for (int i = 0; i < lines.size(); i++) {
+            System.arraycopy(lines.get(i)[0], 0, lats, lineStart[i], lineLength[i]);
+            System.arraycopy(lines.get(i)[1], 0, lons, lineStart[i], lineLength[i]);
+        }
+        return new BoundaryPack(NAMES.clone(), lineBoundary, lineStart, lineLength, lats, lons, 0);
+    }
+
+    // Closest distance to any line, or to the lines of one name when name is not null
+    static double bruteForceKm(List<double[][]> lines, double lat, double lon, String name) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < lines.size(); i++) {
+            if (name != null && !NAMES[i % NAMES.length].equals(name)) {
+                continue;
+            }
+            double[] lats = lines.get(i)[0];
+            double[] lons = lines.get(i)[1];
+            for (int v = 0; v + 1 < lats.length; v++) {
+                best = Math.min(best, GeoMath.distanceToSegmentKm(lat, lon, lats[v], lons[v], lats[v + 1], lons[v + 1]));
+            }
+        }
+        return best;
+    }
+
+    static double[] randomFix(Random random) {
+        return new double[]{random.nextDouble() * 30, 60 + random.nextDouble() * 36};
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(1);
+        List<double[][]> lines = randomLines(random);
+        BoundaryIndex index = build(lines);
+        for (int i = 0; i < 3000; i++) {
+            double[] fix = randomFix(random);
+            double expected = bruteForceKm(lines, fix[0], fix[1], null);
+            assertEquals(expected, index.distanceKm(fix[0], fix[1]), TOLERANCE_KM);
+
+            BoundaryIndex.Nearest nearest = index.nearest(fix[0], fix[1]);
+            assertNotNull(nearest);
+            assertEquals(expected, nearest.distanceKm, TOLERANCE_KM);
+            assertEquals(expected, bruteForceKm(lines, fix[0], fix[1], nearest.boundaryName), TOLERANCE_KM);
+        }
+    }
+
+    @Test
+    public void boundaryDistanceMatchesBruteForce() {
+        Random random = new Random(2);
+        List<double[][]> lines = randomLines(random);
+        BoundaryIndex index = build(lines);
+        for (int i = 0; i < 1000; i++) {
+            double[] fix = randomFix(random);
+            String name = NAMES[i % NAMES.length];
+            assertEquals(bruteForceKm(lines, fix[0], fix[1], name), index.distanceKm(fix[0], fix[1], name), TOLERANCE_KM);
+        }
+        assertEquals(Double.POSITIVE_INFINITY, index.distanceKm(10, 70, "Nowhere"), 0);
+    }
+
+    @Test
+    public void reusedQueryMatchesBruteForce() {
+        Random random = new Random(10);
+        List<double[][]> lines = randomLines(random);
+        BoundaryIndex index = build(lines);
+        BoundaryIndex.Query query = index.newQuery();
+        int sriLanka = index.getBoundaryId("India - Sri Lanka");
+        for (int i = 0; i < 3000; i++) {
+            double[] fix = randomFix(random);
+            // Alternate filtered and unfiltered searches so no state carries over unnoticed
+            if (i % 2 == 0) {
+                assertEquals(bruteForceKm(lines, fix[0], fix[1], null), query.find(fix[0], fix[1]), TOLERANCE_KM);
+                assertEquals(query.getDistanceKm(), index.distanceKm(fix[0], fix[1]), 0);
+            } else {
+                assertEquals(bruteForceKm(lines, fix[0], fix[1], "India - Sri Lanka"),
+                        query.find(fix[0], fix[1], sriLanka), TOLERANCE_KM);
+                assertEquals(sriLanka, query.getBoundaryId());
+            }
+            assertTrue(query.getSegment() >= 0);
+        }
+    }
+
+    // The bounded searches lean on the flat chord screen to skip segments
+    @Test
+    public void boundedSearchesMatchBruteForce() {
+        Random random = new Random(11);
+        List<double[][]> lines = randomLines(random);
+        BoundaryIndex index = build(lines);
+        BoundaryIndex.Query query = index.newQuery();
+        int[] segments = new int[4096];
+        for (int i = 0; i < 1500; i++) {
+            double[] fix = randomFix(random);
+            double exact = bruteForceKm(lines, fix[0], fix[1], null);
+            double limit = random.nextDouble() * 200;
+            double within = query.findWithin(fix[0], fix[1], limit);
+            if (exact < limit - TOLERANCE_KM) {
+                assertEquals(exact, within, TOLERANCE_KM);
+            } else if (exact > limit + TOLERANCE_KM) {
+                assertEquals(Double.POSITIVE_INFINITY, within, 0);
+            }
+
+            int count = query.collectWithin(fix[0], fix[1], limit, segments);
+            assertTrue(count <= segments.length);
+            assertEquals(countWithin(lines, fix[0], fix[1], limit), count, 1);
+            if (count > 0) {
+                assertEquals(exact, query.findAmong(fix[0], fix[1], segments, count), TOLERANCE_KM);
+            }
+        }
+    }
+
+    private static int countWithin(List<double[][]> lines, double lat, double lon, double limitKm) {
+        int count = 0;
+        for (double[][] line : lines) {
+            for (int v = 0; v + 1 < line[0].length; v++) {
+                if (GeoMath.distanceToSegmentKm(lat, lon, line[0][v], line[1][v], line[0][v + 1], line[1][v + 1]) < limitKm) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void boundingBoxCoversEveryVertex() {
+        List<double[][]> lines = randomLines(new Random(3));
+        BoundaryIndex index = build(lines);
+        for (double[][] line : lines) {
+            for (int v = 0; v < line[0].length; v++) {
+                assertTrue(line[0][v] >= index.getMinLat() && line[0][v] <= index.getMaxLat());
+                assertTrue(line[1][v] >= index.getMinLon() && line[1][v] <= index.getMaxLon());
+            }
+        }
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() {
+        BoundaryIndex index = new BoundaryIndex.Builder().build();
+        assertTrue(index.isEmpty());
+        assertEquals(Double.POSITIVE_INFINITY, index.distanceKm(10, 70), 0);
+        assertNull(index.nearest(10, 70));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.safeharbor.geo;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the coarse levels never move a distance across the caller's threshold and stay
+ * within their tolerance of the brute-force distance.
+ */
+public class BoundaryLevelsTest {
+    private static final double TOLERANCE_KM = 1e-6;
+    private static final double[] THRESHOLDS_KM = {1, 5, 12, 24, 50};
+
+    @Test
+    public void levelsAgreeWithBruteForce() {
+        Random random = new Random(9);
+        List<double[][]> lines = BoundaryIndexTest.randomLines(random);
+        BoundaryPack pack = BoundaryIndexTest.pack(lines);
+        BoundaryLevels levels = BoundaryLevels.build(pack, pack.toIndex(), BoundaryLevels.DEFAULT_TOLERANCES_KM);
+        double coarsest = levels.getToleranceKm(0);
+        for (int i = 0; i < 3000; i++) {
+            double[] fix = BoundaryIndexTest.randomFix(random);
+            double threshold = THRESHOLDS_KM[i % THRESHOLDS_KM.length];
+            check(BoundaryIndexTest.bruteForceKm(lines, fix[0], fix[1], null),
+                    levels.distanceKm(fix[0], fix[1], threshold), threshold, coarsest);
+            String name = pack.boundaryNames[i % pack.boundaryNames.length];
+            check(BoundaryIndexTest.bruteForceKm(lines, fix[0], fix[1], name),
+                    levels.distanceKm(fix[0], fix[1], name, threshold), threshold, coarsest);
+        }
+    }
+
+    @Test
+    public void coarseLevelsAreSmallerAndLooser() {
+        List<double[][]> lines = BoundaryIndexTest.randomLines(new Random(11));
+        BoundaryPack pack = BoundaryIndexTest.pack(lines);
+        BoundaryIndex full = pack.toIndex();
+        BoundaryLevels levels = BoundaryLevels.build(pack, full, BoundaryLevels.DEFAULT_TOLERANCES_KM);
+        assertEquals(BoundaryLevels.DEFAULT_TOLERANCES_KM.length + 1, levels.getLevelCount());
+        assertSame(full, levels.getLevel(levels.getLevelCount() - 1));
+        assertEquals(0, levels.getToleranceKm(levels.getLevelCount() - 1), 0);
+        for (int i = 1; i < levels.getLevelCount(); i++) {
+            assertTrue(levels.getToleranceKm(i - 1) > levels.getToleranceKm(i));
+            assertTrue(levels.getLevel(i - 1).getHeapBytes() <= levels.getLevel(i).getHeapBytes());
+        }
+    }
+
+    @Test
+    public void exactOnlyIsExact() {
+        Random random = new Random(12);
+        List<double[][]> lines = BoundaryIndexTest.randomLines(random);
+        BoundaryLevels levels = BoundaryLevels.exactOnly(BoundaryIndexTest.build(lines));
+        for (int i = 0; i < 500; i++) {
+            double[] fix = BoundaryIndexTest.randomFix(random);
+            assertEquals(BoundaryIndexTest.bruteForceKm(lines, fix[0], fix[1], null),
+                    levels.distanceKm(fix[0], fix[1], 1000), TOLERANCE_KM);
+        }
+    }
+
+    private static void check(double exact, double found, double threshold, double coarsestToleranceKm) {
+        if (exact <= threshold) {
+            assertEquals(exact, found, TOLERANCE_KM);
+        } else {
+            assertTrue(found > threshold);
+            assertEquals(exact, found, coarsestToleranceKm);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.safeharbor.geo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BoundaryPackTest {
+    static BoundaryPack samplePack() {
+        return new BoundaryPack(new String[]{"India - Sri Lanka", "Pakistan - India"},
+                new int[]{0, 1, 0}, new int[]{0, 3, 5}, new int[]{3, 2, 2},
+                new double[]{9.1, 9.5, 10.05, 23.6, 23.2, 8.2, 8.0},
+                new double[]{79.5, 79.6, 79.9, 68.1, 67.8, 78.3, 77.9}, 0);
+    }
+
+    static byte[] bytes(BoundaryPack pack) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pack.writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        BoundaryPack pack = samplePack();
+        BoundaryPack read = BoundaryPack.read(ByteBuffer.wrap(bytes(pack)));
+        assertArrayEquals(pack.boundaryNames, read.boundaryNames);
+        assertArrayEquals(pack.lineBoundary, read.lineBoundary);
+        assertArrayEquals(pack.lineStart, read.lineStart);
+        assertArrayEquals(pack.lineLength, read.lineLength);
+        assertArrayEquals(pack.lats, read.lats, 0);
+        assertArrayEquals(pack.lons, read.lons, 0);
+        assertEquals(pack.contentHash(), read.contentHash());
+    }
+
+    @Test
+    public void readsFromAnOffsetInsideALargerBuffer() throws IOException {
+        byte[] pack = bytes(samplePack());
+        ByteBuffer buffer = ByteBuffer.allocate(pack.length + 8);
+        buffer.position(8);
+        buffer.put(pack);
+        buffer.position(8);
+        assertArrayEquals(samplePack().lons, BoundaryPack.read(buffer).lons, 0);
+    }
+
+    @Test
+    public void rejectsEveryCorruptByte() {
+        byte[] pack;
+        try {
+            pack = bytes(samplePack());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        for (int i = 0; i < pack.length; i++) {
+            byte[] corrupt = pack.clone();
+            corrupt[i] ^= 0x10;
+            try {
+                BoundaryPack.read(ByteBuffer.wrap(corrupt));
+                fail("Byte " + i + " flipped but the pack was accepted");
+            } catch (IOException expected) {
+                // every byte is covered by the magic, version, counts or checksum
+            }
+        }
+    }
+
+    @Test
+    public void rejectsATruncatedPack() throws IOException {
+        byte[] pack = bytes(samplePack());
+        for (int length = 0; length < pack.length; length++) {
+            try {
+                BoundaryPack.read(ByteBuffer.wrap(Arrays.copyOf(pack, length)));
+                fail("Pack cut to " + length + " bytes was accepted");
+            } catch (IOException expected) {
+                // truncated
+            }
+        }
+    }
+
+    @Test
+    public void onlyBoundariesKeepsTheNamedLines() {
+        BoundaryPack pack = samplePack().onlyBoundaries(Collections.singleton("India - Sri Lanka"));
+        assertArrayEquals(new String[]{"India - Sri Lanka"}, pack.boundaryNames);
+        assertArrayEquals(new int[]{0, 0}, pack.lineBoundary);
+        assertArrayEquals(new int[]{0, 3}, pack.lineStart);
+        assertArrayEquals(new int[]{3, 2}, pack.lineLength);
+        assertArrayEquals(new double[]{9.1, 9.5, 10.05, 8.2, 8.0}, pack.lats, 0);
+        assertArrayEquals(new double[]{79.5, 79.6, 79.9, 78.3, 77.9}, pack.lons, 0);
+        assertEquals(0, samplePack().onlyBoundaries(Collections.singleton("Nowhere")).getLineCount());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.safeharbor.geo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DistanceFieldTest {
+    private static final double STEP = 0.05;
+
+    private static byte[] bytes(DistanceField field) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        field.writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void neverExceedsTheExactDistance() {
+        Random random = new Random(5);
+        List<double[][]> lines = BoundaryIndexTest.randomLines(random);
+        BoundaryIndex index = BoundaryIndexTest.build(lines);
+        DistanceField field = DistanceField.build(index, 1, STEP);
+        // Half a cell diagonal each way from the centre, plus the 0.1 km rounding
+        double cellDiagonalKm = GeoMath.EARTH_RADIUS_KM * Math.toRadians(2 * STEP) + 0.1;
+        for (int i = 0; i < 20_000; i++) {
+            double[] fix = BoundaryIndexTest.randomFix(random);
+            double exact = index.distanceKm(fix[0], fix[1]);
+            double bound = field.lowerBoundKm(fix[0], fix[1]);
+            assertTrue("bound " + bound + " over " + exact, bound <= exact + 1e-9);
+            if (exact < 5) {
+                assertTrue("bound " + bound + " too loose for " + exact, bound >= exact - cellDiagonalKm);
+            }
+        }
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        BoundaryIndex index = BoundaryIndexTest.build(BoundaryIndexTest.randomLines(new Random(6)));
+        DistanceField field = DistanceField.build(index, 42, STEP);
+        byte[] written = bytes(field);
+        DistanceField read = DistanceField.read(ByteBuffer.wrap(written));
+        assertEquals(42, read.getSourceHash());
+        assertEquals(field.getCellCount(), read.getCellCount());
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            double[] fix = BoundaryIndexTest.randomFix(random);
+            assertEquals(field.lowerBoundKm(fix[0], fix[1]), read.lowerBoundKm(fix[0], fix[1]), 0);
+        }
+        assertTrue(Arrays.equals(written, bytes(read)));
+    }
+
+    @Test
+    public void rejectsTornAndTruncatedFiles() throws IOException {
+        BoundaryIndex index = BoundaryIndexTest.build(BoundaryIndexTest.randomLines(new Random(8)));
+        byte[] written = bytes(DistanceField.build(index, 1, 0.2));
+        Random random = new Random(9);
+        for (int i = 0; i < 200; i++) {
+            byte[] torn = written.clone();
+            torn[random.nextInt(torn.length)] ^= 1 << random.nextInt(8);
+            expectUnreadable(torn);
+        }
+        // A file renamed into place before its data reached the disk reads as zeros
+        byte[] zeroed = written.clone();
+        Arrays.fill(zeroed, written.length / 2, written.length, (byte) 0);
+        expectUnreadable(zeroed);
+        expectUnreadable(new byte[written.length]);
+        expectUnreadable(Arrays.copyOf(written, written.length - 2));
+        expectUnreadable(new byte[0]);
+    }
+
+    private static void expectUnreadable(byte[] file) {
+        try {
+            DistanceField.read(ByteBuffer.wrap(file));
+            fail("A damaged distance field was accepted");
+        } catch (IOException expected) {
+            // damaged
+        }
+    }
+}
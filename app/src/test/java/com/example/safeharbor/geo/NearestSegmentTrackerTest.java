@@ -0,0 +1,57 @@
+package com.example.safeharbor.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NearestSegmentTrackerTest {
+    private static final double TOLERANCE_KM = 1e-9;
+
+    @Test
+    public void matchesAFullSearchAlongATrack() {
+        Random random = new Random(12);
+        BoundaryIndex index = BoundaryIndexTest.build(BoundaryIndexTest.randomLines(random));
+        BoundaryIndex.Query full = index.newQuery();
+        NearestSegmentTracker tracker = new NearestSegmentTracker(index);
+
+        double lat = 15;
+        double lon = 78;
+        double heading = 0;
+        for (int i = 0; i < 50_000; i++) {
+            // About 40 m per fix, with the odd jump after a gap in fixes
+            heading += random.nextGaussian() * 0.2;
+            double step = random.nextInt(1000) == 0 ? 0.5 : 0.0004;
+            lat = Math.max(2, Math.min(28, lat + Math.cos(heading) * step));
+            lon = Math.max(62, Math.min(94, lon + Math.sin(heading) * step));
+
+            double expected = full.find(lat, lon);
+            assertEquals(expected, tracker.update(lat, lon), TOLERANCE_KM);
+            assertEquals(expected, tracker.getDistanceKm(), TOLERANCE_KM);
+            assertEquals(full.getBoundaryId(), tracker.getBoundaryId());
+        }
+        // The point of the tracker: most fixes reuse the candidates of the last full search
+        assertTrue(tracker.getFullSearchCount() < tracker.getUpdateCount() / 10);
+    }
+
+    @Test
+    public void resetForcesAFullSearch() {
+        BoundaryIndex index = BoundaryIndexTest.build(BoundaryIndexTest.randomLines(new Random(13)));
+        NearestSegmentTracker tracker = new NearestSegmentTracker(index);
+        tracker.update(15, 78);
+        tracker.update(15.0001, 78);
+        long searches = tracker.getFullSearchCount();
+        tracker.reset();
+        tracker.update(15.0002, 78);
+        assertEquals(searches + 1, tracker.getFullSearchCount());
+    }
+
+    @Test
+    public void emptyIndexIsInfinitelyFar() {
+        NearestSegmentTracker tracker = new NearestSegmentTracker(new BoundaryIndex.Builder().build());
+        assertEquals(Double.POSITIVE_INFINITY, tracker.update(10, 70), 0);
+        assertEquals(-1, tracker.getBoundaryId());
+    }
+}
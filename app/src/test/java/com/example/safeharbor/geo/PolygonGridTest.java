@@ -0,0 +1,129 @@
+package com.example.safeharbor.geo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the grid against a plain even-odd ray cast over every edge, on random star-shaped
+ * polygons with holes.
+ */
+public class PolygonGridTest {
+    // Rings as {lats, lons}, the last point not repeating the first
+    private static double[][] starRing(Random random, double centerLat, double centerLon, double radius, int points) {
+        double[] lats = new double[points];
+        double[] lons = new double[points];
+        for (int i = 0; i < points; i++) {
+            double angle = 2 * Math.PI * i / points;
+            double r = radius * (0.3 + 0.7 * random.nextDouble());
+            lats[i] = centerLat + r * Math.sin(angle);
+            lons[i] = centerLon + r * Math.cos(angle);
+        }
+        return new double[][]{lats, lons};
+    }
+
+    private static String toGeoJson(List<List<double[][]>> polygons, boolean closeRings) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int p = 0; p < polygons.size(); p++) {
+            json.append(p > 0 ? "," : "").append("{\"type\":\"Feature\",\"properties\":{},")
+                    .append("\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[");
+            List<double[][]> rings = polygons.get(p);
+            for (int r = 0; r < rings.size(); r++) {
+                double[] lats = rings.get(r)[0];
+                double[] lons = rings.get(r)[1];
+                json.append(r > 0 ? "," : "").append('[');
+                int count = closeRings ? lats.length + 1 : lats.length;
+                for (int i = 0; i < count; i++) {
+                    json.append(i > 0 ? "," : "").append('[')
+                            .append(lons[i % lats.length]).append(',').append(lats[i % lats.length]).append(']');
+                }
+                json.append(']');
+            }
+            json.append("]}}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static boolean rayCast(List<List<double[][]>> polygons, double lat, double lon) {
+        boolean inside = false;
+        for (List<double[][]> rings : polygons) {
+            for (double[][] ring : rings) {
+                double[] lats = ring[0];
+                double[] lons = ring[1];
+                for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+                    if ((lats[i] > lat) != (lats[j] > lat)
+                            && lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i]) {
+                        inside = !inside;
+                    }
+                }
+            }
+        }
+        return inside;
+    }
+
+    private static PolygonGrid grid(List<List<double[][]>> polygons, boolean closeRings) throws IOException {
+        try (GeoJsonReader reader = new GeoJsonReader(new StringReader(toGeoJson(polygons, closeRings)))) {
+            return PolygonGrid.fromGeoJson(reader);
+        }
+    }
+
+    private static List<List<double[][]>> randomPolygons(Random random) {
+        List<List<double[][]>> polygons = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            double lat = 5 + random.nextDouble() * 20;
+            double lon = 66 + random.nextDouble() * 24;
+            List<double[][]> rings = new ArrayList<>();
+            rings.add(starRing(random, lat, lon, 3, 50 + random.nextInt(500)));
+            // A hole around the centre, well inside the 30 % minimum radius of the shell
+            rings.add(starRing(random, lat, lon, 0.8, 20 + random.nextInt(50)));
+            polygons.add(rings);
+        }
+        return polygons;
+    }
+
+    @Test
+    public void matchesRayCasting() throws IOException {
+        Random random = new Random(4);
+        for (int round = 0; round < 5; round++) {
+            List<List<double[][]>> polygons = randomPolygons(random);
+            PolygonGrid grid = grid(polygons, round % 2 == 0);
+            int inside = 0;
+            for (int i = 0; i < 20_000; i++) {
+                // Around one of the polygons, so both answers come up often. The hole's first
+                // vertex is due east of the centre, by under a degree.
+                double[][] hole = polygons.get(random.nextInt(polygons.size())).get(1);
+                double lat = hole[0][0] + (random.nextDouble() - 0.5) * 7;
+                double lon = hole[1][0] + (random.nextDouble() - 0.5) * 7;
+                boolean expected = rayCast(polygons, lat, lon);
+                assertEquals("at " + lat + ", " + lon, expected, grid.contains(lat, lon));
+                if (expected) {
+                    inside++;
+                }
+            }
+            assertTrue(inside > 1000 && inside < 19_000);
+        }
+    }
+
+    @Test
+    public void holesAndOutsideTheBoxReadAsOutside() throws IOException {
+        List<List<double[][]>> square = new ArrayList<>();
+        List<double[][]> rings = new ArrayList<>();
+        rings.add(new double[][]{{10, 10, 20, 20}, {70, 80, 80, 70}});
+        rings.add(new double[][]{{14, 14, 16, 16}, {74, 76, 76, 74}});
+        square.add(rings);
+        PolygonGrid grid = grid(square, true);
+        assertTrue(grid.contains(12, 72));
+        assertFalse(grid.contains(15, 75));
+        assertFalse(grid.contains(25, 75));
+        assertFalse(grid.contains(15, 60));
+        assertEquals(8, grid.getEdgeCount());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.safeharbor.sos;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BeaconCodecTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    // A boat drifting north-west, one fix a minute, newest first
+    private static List<BeaconCodec.Fix> drift(int count) {
+        List<BeaconCodec.Fix> fixes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            fixes.add(new BeaconCodec.Fix(NOW - i * 60_000L, 8.51234 + i * 0.0003, 76.91234 - i * 0.0002));
+        }
+        return fixes;
+    }
+
+    @Test
+    public void roundTripsTheTrackToTheNearest11Meters() {
+        List<BeaconCodec.Fix> fixes = drift(5);
+        String text = BeaconCodec.encode(3, 35, fixes, NOW);
+        assertTrue(text.startsWith("SOS+ SafeHarbor #3\nPOS 8.51234N 76.91234E\nUTC 2023-11-14 22:13:20Z\nBAT 35%\nTRK "));
+        assertTrue(text.endsWith("\nmaps.google.com/?q=8.51234,76.91234"));
+
+        BeaconCodec.Beacon beacon = BeaconCodec.decode(text);
+        assertNotNull(beacon);
+        assertEquals(3, beacon.sequence);
+        assertEquals(35, beacon.batteryPercent);
+        assertEquals(NOW, beacon.timeMillis);
+        assertEquals(fixes.size(), beacon.track.size());
+        // The newest fix to 1e-5 degrees, the older ones to 1e-4 degrees and ten seconds
+        assertEquals(8.51234, beacon.track.get(0).latitude, 1e-9);
+        assertEquals(76.91234, beacon.track.get(0).longitude, 1e-9);
+        for (int i = 1; i < fixes.size(); i++) {
+            assertEquals(fixes.get(i).timeMillis, beacon.track.get(i).timeMillis);
+            assertEquals(fixes.get(i).latitude, beacon.track.get(i).latitude, 0.5e-4);
+            assertEquals(fixes.get(i).longitude, beacon.track.get(i).longitude, 0.5e-4);
+        }
+    }
+
+    @Test
+    public void keepsTheNewestFixesThatFit() {
+        List<BeaconCodec.Fix> fixes = drift(64);
+        String text = BeaconCodec.encode(12, 80, fixes, NOW);
+        assertTrue(SosCodec.isSingleSegment(text));
+        BeaconCodec.Beacon beacon = BeaconCodec.decode(text);
+        assertTrue(beacon.track.size() > 10);
+        assertTrue(beacon.track.size() < fixes.size());
+        for (int i = 0; i < beacon.track.size(); i++) {
+            assertEquals(fixes.get(i).timeMillis, beacon.track.get(i).timeMillis);
+        }
+    }
+
+    @Test
+    public void withoutAFixOnlySaysItIsAlive() {
+        String text = BeaconCodec.encode(7, -1, Collections.emptyList(), NOW);
+        assertEquals("SOS+ SafeHarbor #7\nPOS UNKNOWN\nUTC 2023-11-14 22:13:20Z", text);
+        BeaconCodec.Beacon beacon = BeaconCodec.decode(text);
+        assertEquals(7, beacon.sequence);
+        assertEquals(-1, beacon.batteryPercent);
+        assertEquals(NOW, beacon.timeMillis);
+        assertTrue(beacon.track.isEmpty());
+    }
+
+    @Test
+    public void stepsDownInsteadOfThrowing() {
+        // Out of range positions stand in for a beacon that does not fit
+        List<BeaconCodec.Fix> twoFixes = Arrays.asList(new BeaconCodec.Fix(NOW, -90e9, -180e9),
+                new BeaconCodec.Fix(NOW - 60_000, -90e9, -180e9));
+        String fits = BeaconCodec.encode(3, 35, twoFixes, NOW);
+        assertEquals(SosCodec.SEGMENT_CHARS, fits.length());
+        assertTrue(fits.contains("\nTRK "));
+
+        String noTrack = BeaconCodec.encode(3, 35, Arrays.asList(new BeaconCodec.Fix(NOW, -90e11, -180e11),
+                new BeaconCodec.Fix(NOW - 60_000, -90e11, -180e11)), NOW);
+        assertEquals(SosCodec.SEGMENT_CHARS, noTrack.length());
+        assertFalse(noTrack.contains("TRK"));
+        assertTrue(noTrack.contains(SosCodec.MAP_LINK));
+
+        String noLink = BeaconCodec.encode(3, 35, Collections.singletonList(new BeaconCodec.Fix(NOW, -90e12, -180e12)), NOW);
+        assertTrue(SosCodec.isSingleSegment(noLink));
+        assertFalse(noLink.contains(SosCodec.MAP_LINK));
+        assertEquals(3, BeaconCodec.decode(noLink).sequence);
+
+        String multipart = BeaconCodec.encode(3, 35, Collections.singletonList(new BeaconCodec.Fix(NOW, -90e60, -180e60)), NOW);
+        assertFalse(SosCodec.isSingleSegment(multipart));
+        assertTrue(multipart.contains(SosCodec.MAP_LINK));
+    }
+
+    @Test
+    public void tellsBeaconsFromOtherTexts() {
+        String sos = SosCodec.encode(SosCodec.Report.withoutPosition(NOW));
+        assertFalse(BeaconCodec.isBeacon(sos));
+        assertNull(BeaconCodec.decode(sos));
+        assertTrue(BeaconCodec.isBeacon(BeaconCodec.encode(1, 50, drift(2), NOW)));
+        assertNull(BeaconCodec.decode("SOS+ SafeHarbor #x\nPOS UNKNOWN\nUTC 2023-11-14 22:13:20Z"));
+        assertNull(BeaconCodec.decode("SOS+ SafeHarbor #1\nPOS 8.5N 76.9E\nUTC 2023-11-14 22:13:20Z\nTRK A"));
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.safeharbor.sos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BeaconScheduleTest {
+    private static final long MINUTE = 60_000;
+
+    @Test
+    public void aQuarterMileApart() {
+        assertEquals(15 * MINUTE, BeaconSchedule.intervalMillis(1.0, 100));
+        assertEquals(5 * MINUTE, BeaconSchedule.intervalMillis(3.0, 100));
+        // Unknown drift is taken as a knot
+        assertEquals(15 * MINUTE, BeaconSchedule.intervalMillis(Double.NaN, -1));
+    }
+
+    @Test
+    public void staysWithinTheLimits() {
+        assertEquals(BeaconSchedule.MIN_INTERVAL_MS, BeaconSchedule.intervalMillis(20.0, 100));
+        assertEquals(BeaconSchedule.MAX_INTERVAL_MS, BeaconSchedule.intervalMillis(0.0, 100));
+        // GPS noise on a boat that is not moving is not taken for drift
+        assertEquals(BeaconSchedule.MAX_INTERVAL_MS, BeaconSchedule.intervalMillis(0.1, 100));
+    }
+
+    @Test
+    public void aLowBatteryStretchesTheInterval() {
+        assertEquals(5 * MINUTE, BeaconSchedule.intervalMillis(3.0, 30));
+        assertEquals(10 * MINUTE, BeaconSchedule.intervalMillis(3.0, 29));
+        assertEquals(20 * MINUTE, BeaconSchedule.intervalMillis(3.0, 14));
+        assertEquals(BeaconSchedule.MAX_LOW_BATTERY_INTERVAL_MS, BeaconSchedule.intervalMillis(0.0, 5));
+        // A battery the phone cannot read is not taken for a flat one
+        assertEquals(5 * MINUTE, BeaconSchedule.intervalMillis(3.0, -1));
+    }
+}
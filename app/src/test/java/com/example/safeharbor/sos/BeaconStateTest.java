@@ -0,0 +1,58 @@
+package com.example.safeharbor.sos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BeaconStateTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void survivesRewriting() throws IOException {
+        File file = new File(folder.getRoot(), BeaconState.FILE_NAME);
+        assertNull(BeaconState.read(file));
+        new BeaconState(Arrays.asList("+919840000001", "+94770000002"), 1000, 0, 181_000, 180_000).write(file);
+        new BeaconState(Arrays.asList("+919840000001", "+94770000002"), 1000, 4, 900_000, 300_000).write(file);
+
+        BeaconState state = BeaconState.read(file);
+        assertEquals(Arrays.asList("+919840000001", "+94770000002"), state.phoneNumbers);
+        assertEquals(1000, state.startedMillis);
+        assertEquals(4, state.sequence);
+        assertEquals(900_000, state.nextDueMillis);
+        assertEquals(300_000, state.intervalMillis);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        assertTrue(BeaconState.clear(file));
+        assertNull(BeaconState.read(file));
+        assertTrue(BeaconState.clear(file));
+    }
+
+    @Test
+    public void aDamagedFileReadsAsNoTracking() throws IOException {
+        File file = new File(folder.getRoot(), BeaconState.FILE_NAME);
+        new BeaconState(Arrays.asList("+919840000001"), 1000, 2, 5000, 180_000).write(file);
+        byte[] whole = Files.readAllBytes(file.toPath());
+        for (int length = 0; length < whole.length; length++) {
+            Files.write(file.toPath(), Arrays.copyOf(whole, length));
+            assertNull("cut at " + length, BeaconState.read(file));
+        }
+        Files.write(file.toPath(), whole);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(whole.length - 3);
+            raw.write(whole[whole.length - 3] ^ 0x01);
+        }
+        assertNull(BeaconState.read(file));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.safeharbor.sos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SosCodecTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    private static String repeat(char c, int count) {
+        StringBuilder text = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            text.append(c);
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void roundTrips() {
+        SosCodec.Report report = new SosCodec.Report(NOW, 8.51234, 76.91234, NOW - 3 * 60_000, 4.2, 275, 12);
+        String text = SosCodec.encode(report);
+        assertEquals("SOS SafeHarbor\nPOS 8.51234N 76.91234E\nUTC 2023-11-14 22:13:20Z\nAGE 3min\n"
+                + "SOG 4.2kn COG 275\nACC 12m\nmaps.google.com/?q=8.51234,76.91234", text);
+        SosCodec.Report read = SosCodec.decode(text);
+        assertNotNull(read);
+        assertEquals(report.latitude, read.latitude, 1e-9);
+        assertEquals(report.longitude, read.longitude, 1e-9);
+        assertEquals(report.timeMillis, read.timeMillis);
+        assertEquals(report.fixMillis, read.fixMillis);
+        assertEquals(report.speedKnots, read.speedKnots, 1e-9);
+        assertEquals(report.courseDegrees, read.courseDegrees);
+        assertEquals(report.accuracyMeters, read.accuracyMeters);
+    }
+
+    @Test
+    public void roundTripsWithoutAPosition() {
+        String text = SosCodec.encode(SosCodec.Report.withoutPosition(NOW));
+        assertEquals("SOS SafeHarbor\nPOS UNKNOWN\nUTC 2023-11-14 22:13:20Z", text);
+        SosCodec.Report read = SosCodec.decode(text);
+        assertFalse(read.hasPosition);
+        assertEquals(NOW, read.timeMillis);
+    }
+
+    @Test
+    public void worstCaseRealReportFitsWhole() {
+        String text = SosCodec.encode(new SosCodec.Report(NOW, -89.99999, -179.99999, NOW - 119 * 60_000,
+                999.9, 359, 9999));
+        assertEquals(145, text.length());
+        assertTrue(SosCodec.isSingleSegment(text));
+        assertTrue(text.contains("\nACC 9999m\n"));
+        assertTrue(text.contains("\nSOG 999.9kn COG 359\n"));
+        assertEquals(-179.99999, SosCodec.decode(text).longitude, 1e-9);
+    }
+
+    @Test
+    public void reportOfExactly160CharactersIsSentWhole() {
+        // Out of range coordinates stand in for the longest text a report can make
+        String text = SosCodec.encode(new SosCodec.Report(NOW, -90e6, -180e7, NOW, 999.9, 359, 9999));
+        assertEquals(SosCodec.SEGMENT_CHARS, text.length());
+        assertTrue(SosCodec.isSingleSegment(text));
+        assertTrue(text.contains("\nACC 9999m\n"));
+    }
+
+    @Test
+    public void stepsDownInsteadOfThrowing() {
+        // Each longer position pushes out one more line: ACC, then SOG and COG, then the link
+        String noAccuracy = SosCodec.encode(new SosCodec.Report(NOW, -90e6, -180e8, NOW, 999.9, 359, 9999));
+        assertTrue(SosCodec.isSingleSegment(noAccuracy));
+        assertFalse(noAccuracy.contains("ACC"));
+        assertTrue(noAccuracy.contains("SOG 999.9kn COG 359"));
+        assertTrue(noAccuracy.contains(SosCodec.MAP_LINK));
+
+        String noMotion = SosCodec.encode(new SosCodec.Report(NOW, -90e10, -180e10, NOW, 999.9, 359, 9999));
+        assertTrue(SosCodec.isSingleSegment(noMotion));
+        assertFalse(noMotion.contains("SOG"));
+        assertTrue(noMotion.contains(SosCodec.MAP_LINK));
+
+        String noLink = SosCodec.encode(new SosCodec.Report(NOW, -90e15, -180e15, NOW, 999.9, 359, 9999));
+        assertTrue(SosCodec.isSingleSegment(noLink));
+        assertFalse(noLink.contains(SosCodec.MAP_LINK));
+        assertNotNull(SosCodec.decode(noLink));
+
+        // Past that it goes out whole, in several parts
+        String multipart = SosCodec.encode(new SosCodec.Report(NOW, -90e60, -180e60, NOW, 999.9, 359, 9999));
+        assertFalse(SosCodec.isSingleSegment(multipart));
+        assertTrue(multipart.contains("ACC 9999m"));
+        assertTrue(multipart.contains(SosCodec.MAP_LINK));
+    }
+
+    @Test
+    public void singleSegmentIs160CharactersOfTheBasicAlphabet() {
+        assertTrue(SosCodec.isSingleSegment(repeat('é', 80) + repeat('@', 80)));
+        assertFalse(SosCodec.isSingleSegment(repeat('é', 80) + repeat('@', 81)));
+        // The degree sign and the euro sign are outside the basic table
+        assertFalse(SosCodec.isSingleSegment("13°N"));
+        assertFalse(SosCodec.isSingleSegment("€"));
+    }
+
+    @Test
+    public void rejectsOtherTexts() {
+        assertNull(SosCodec.decode("Hello"));
+        assertNull(SosCodec.decode("SOS SafeHarbor\nPOS 8.5N 76.9E"));
+        assertNull(SosCodec.decode("SOS SafeHarbor\nPOS 8.5N 76.9E\nUTC yesterday"));
+    }
+}
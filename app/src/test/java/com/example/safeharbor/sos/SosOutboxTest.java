@@ -0,0 +1,170 @@
+package com.example.safeharbor.sos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SosOutboxTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void assertEntry(SosOutbox.Entry entry, long seq, String phoneNumber, String message, long createdMillis) {
+        assertEquals(seq, entry.seq);
+        assertEquals(phoneNumber, entry.phoneNumber);
+        assertEquals(message, entry.message);
+        assertEquals(createdMillis, entry.createdMillis);
+    }
+
+    @Test
+    public void pendingMessagesSurviveReopening() throws IOException {
+        File file = new File(folder.getRoot(), SosOutbox.FILE_NAME);
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            assertEquals(1, outbox.enqueue("+919840000001", "SOS 13.08N 80.29E", 1000));
+            assertEquals(2, outbox.enqueue("+919840000001", "SOS 13.08N 80.29E", 1000));
+            long[] seqs = outbox.enqueueAll(Arrays.asList("+94770000002", "+919840000003"), "मदद चाहिए", 2000);
+            assertEquals(3, seqs[0]);
+            assertEquals(4, seqs[1]);
+            assertTrue(outbox.remove(1));
+            assertFalse(outbox.remove(1));
+        }
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            assertEquals(0, outbox.getDiscardedBytes());
+            List<SosOutbox.Entry> pending = outbox.getPending();
+            assertEquals(3, pending.size());
+            // A repeated message is its own entry, in the order it was queued
+            assertEntry(pending.get(0), 2, "+919840000001", "SOS 13.08N 80.29E", 1000);
+            assertEntry(pending.get(1), 3, "+94770000002", "मदद चाहिए", 2000);
+            assertEntry(pending.get(2), 4, "+919840000003", "मदद चाहिए", 2000);
+            assertNull(outbox.get(1));
+            assertEquals(5, outbox.enqueue("+919840000001", "again", 3000));
+        }
+    }
+
+    @Test
+    public void sequenceNumbersSurviveCompaction() throws IOException {
+        File file = new File(folder.getRoot(), SosOutbox.FILE_NAME);
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            long kept = outbox.enqueue("+919840000001", "kept", 1);
+            for (int i = 0; i < 100; i++) {
+                outbox.remove(outbox.enqueue("+919840000002", "done " + i, 2));
+            }
+            outbox.compact();
+            assertEquals(1, outbox.size());
+            assertEquals(kept, outbox.getPending().get(0).seq);
+        }
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            assertEquals(1, outbox.size());
+            assertEquals("kept", outbox.getPending().get(0).message);
+            assertEquals(102, outbox.enqueue("+919840000001", "next", 3));
+        }
+    }
+
+    @Test
+    public void attemptsAndGivingUpSurviveReopeningAndCompaction() throws IOException {
+        File file = new File(folder.getRoot(), SosOutbox.FILE_NAME);
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            long retried = outbox.enqueue("+919840000001", "retried", 1);
+            long abandoned = outbox.enqueue("+919840000002", "abandoned", 1);
+            assertTrue(outbox.recordAttempt(retried, 1, 0, 5000));
+            assertTrue(outbox.recordAttempt(retried, 2, 1, 9000));
+            assertTrue(outbox.giveUp(abandoned, "sent 3 times without a delivery report"));
+            assertFalse(outbox.recordAttempt(abandoned, 4, 3, 0));
+            assertFalse(outbox.giveUp(abandoned, "again"));
+        }
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            assertEquals(1, outbox.size());
+            SosOutbox.Entry entry = outbox.getPending().get(0);
+            assertEntry(entry, 1, "+919840000001", "retried", 1);
+            assertEquals(2, entry.attempts);
+            assertEquals(1, entry.sends);
+            assertEquals(9000, entry.nextAttemptMillis);
+            outbox.compact();
+        }
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            SosOutbox.Entry entry = outbox.get(1);
+            assertEquals(2, entry.attempts);
+            assertEquals(1, entry.sends);
+            assertEquals(9000, entry.nextAttemptMillis);
+            assertEquals(3, outbox.enqueue("+919840000003", "new", 2));
+            assertEquals(0, outbox.get(3).attempts);
+        }
+    }
+
+    @Test
+    public void recoversFromATornTailAtEveryLength() throws IOException {
+        File file = new File(folder.getRoot(), SosOutbox.FILE_NAME);
+        // Lengths of the file after each record, to tell what a cut should leave
+        long[] ends = new long[4];
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            outbox.enqueue("+919840000001", "first", 1);
+            ends[0] = file.length();
+            outbox.enqueue("+919840000002", "second", 2);
+            ends[1] = file.length();
+            outbox.remove(1);
+            ends[2] = file.length();
+            outbox.enqueue("+919840000003", "third", 3);
+            ends[3] = file.length();
+        }
+        // Pending count with none, one, ... all of the records intact
+        int[] pendingAfter = {0, 1, 2, 1, 2};
+        byte[] whole = Files.readAllBytes(file.toPath());
+        File torn = new File(folder.getRoot(), "torn.log");
+        for (int length = 0; length < whole.length; length++) {
+            Files.write(torn.toPath(), Arrays.copyOf(whole, length));
+            int records = 0;
+            while (records < ends.length && ends[records] <= length) {
+                records++;
+            }
+            try (SosOutbox outbox = SosOutbox.open(torn)) {
+                assertEquals("cut at " + length, pendingAfter[records], outbox.size());
+                if (records >= 3) {
+                    assertEquals(2, outbox.getPending().get(0).seq);
+                }
+                // The torn record is gone and new ones land after the good ones
+                assertTrue(outbox.enqueue("+919840000004", "after", 4) > Math.min(records, 2));
+            }
+            try (SosOutbox outbox = SosOutbox.open(torn)) {
+                assertEquals(0, outbox.getDiscardedBytes());
+                assertEquals("after", outbox.getPending().get(outbox.size() - 1).message);
+            }
+        }
+    }
+
+    @Test
+    public void cutsOffACorruptRecord() throws IOException {
+        File file = new File(folder.getRoot(), SosOutbox.FILE_NAME);
+        long firstEnd;
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            outbox.enqueue("+919840000001", "first", 1);
+            firstEnd = file.length();
+            outbox.enqueue("+919840000002", "second", 2);
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            // A bit flipped in the second message's text
+            long at = raw.length() - 10;
+            raw.seek(at);
+            int b = raw.read();
+            raw.seek(at);
+            raw.write(b ^ 0x10);
+        }
+        long size = file.length();
+        try (SosOutbox outbox = SosOutbox.open(file)) {
+            assertEquals(1, outbox.size());
+            assertEquals("first", outbox.getPending().get(0).message);
+            assertEquals(size - firstEnd, outbox.getDiscardedBytes());
+            assertEquals(firstEnd, file.length());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.safeharbor.track;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TrackCodecTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // A boat zig-zagging off Kerala, a fix every five seconds with some of the values missing
+    private static List<TrackPoint> trip(int count) {
+        Random random = new Random(24);
+        List<TrackPoint> points = new ArrayList<>(count);
+        int lat = 85_123_456;
+        int lon = 769_123_456;
+        for (int i = 0; i < count; i++) {
+            lat += random.nextInt(2001) - 1000;
+            lon += random.nextInt(2001) - 1000;
+            points.add(new TrackPoint(START + i * 5_000L + random.nextInt(1000), lat, lon,
+                    i % 17 == 0 ? -1 : random.nextInt(800), i % 13 == 0 ? -1 : random.nextInt(3600),
+                    i % 11 == 0 ? -1 : 30 + random.nextInt(200)));
+        }
+        return points;
+    }
+
+    private File write(List<TrackPoint> points) throws IOException {
+        File file = folder.newFile();
+        try (TrackCodec.Writer writer = new TrackCodec.Writer(new FileOutputStream(file))) {
+            for (TrackPoint point : points) {
+                writer.write(point);
+            }
+            assertEquals(points.size(), writer.getPointCount());
+        }
+        return file;
+    }
+
+    private static List<TrackPoint> read(TrackSource source) throws IOException {
+        List<TrackPoint> points = new ArrayList<>();
+        try (TrackSource.Cursor cursor = source.open()) {
+            for (TrackPoint point = cursor.next(); point != null; point = cursor.next()) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    // As stored: whole seconds and 1e-6 degrees, rounded half up
+    private static void assertStored(TrackPoint expected, TrackPoint actual) {
+        assertEquals(Math.floorDiv(expected.timeMillis, 1000) * 1000, actual.timeMillis);
+        assertEquals(Math.floorDiv(expected.latitudeE7 + 5, 10) * 10, actual.latitudeE7);
+        assertEquals(Math.floorDiv(expected.longitudeE7 + 5, 10) * 10, actual.longitudeE7);
+        assertEquals(expected.speedCmps, actual.speedCmps);
+        assertEquals(expected.bearingDecidegrees, actual.bearingDecidegrees);
+        assertEquals(expected.accuracyDm, actual.accuracyDm);
+    }
+
+    @Test
+    public void roundTripsAcrossBlocks() throws IOException {
+        List<TrackPoint> points = trip(TrackCodec.BLOCK_POINTS * 3 + 17);
+        File file = write(points);
+        // Under half of the ring's 24 bytes a fix, even with every value jumping about
+        assertTrue(file.length() < points.size() * (long) TrackRing.RECORD_BYTES / 2);
+        try (TrackCodec.Reader reader = new TrackCodec.Reader(file)) {
+            assertEquals(4, reader.getBlockCount());
+            assertEquals(points.size(), reader.getPointCount());
+            List<TrackPoint> read = read(reader.source());
+            assertEquals(points.size(), read.size());
+            for (int i = 0; i < points.size(); i++) {
+                assertStored(points.get(i), read.get(i));
+            }
+            // A second pass reads the same
+            assertEquals(points.size(), read(reader.source()).size());
+        }
+    }
+
+    @Test
+    public void readsATimeRangeFromTheMiddle() throws IOException {
+        List<TrackPoint> points = trip(TrackCodec.BLOCK_POINTS * 4);
+        try (TrackCodec.Reader reader = new TrackCodec.Reader(write(points))) {
+            // Starts and ends inside the second and third blocks
+            long from = (START + 300 * 5_000L) / 1000 * 1000;
+            long to = (START + 700 * 5_000L) / 1000 * 1000;
+            List<TrackPoint> read = read(reader.source(from, to));
+            List<TrackPoint> expected = new ArrayList<>();
+            for (TrackPoint point : points) {
+                long stored = Math.floorDiv(point.timeMillis, 1000) * 1000;
+                if (stored >= from && stored <= to) {
+                    expected.add(point);
+                }
+            }
+            assertEquals(expected.size(), read.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertStored(expected.get(i), read.get(i));
+            }
+            assertTrue(read(reader.source(START + 10 * 86_400_000L, Long.MAX_VALUE)).isEmpty());
+            assertEquals(points.size(), read(reader.source(0, Long.MAX_VALUE)).size());
+        }
+    }
+
+    @Test
+    public void keepsTheExtremes() throws IOException {
+        List<TrackPoint> points = Arrays.asList(
+                new TrackPoint(-1500, -900_000_000, -1_800_000_000, -1, -1, -1),
+                new TrackPoint(0, 900_000_000, 1_800_000_000, 0xFFFE, 3599, 0xFFFE),
+                new TrackPoint(START, -5, 5, 0, 0, 0));
+        try (TrackCodec.Reader reader = new TrackCodec.Reader(write(points))) {
+            List<TrackPoint> read = read(reader.source());
+            for (int i = 0; i < points.size(); i++) {
+                assertStored(points.get(i), read.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void anEmptyTrackHasNoBlocks() throws IOException {
+        try (TrackCodec.Reader reader = new TrackCodec.Reader(write(new ArrayList<>()))) {
+            assertEquals(0, reader.getBlockCount());
+            try (TrackSource.Cursor cursor = reader.source().open()) {
+                assertNull(cursor.next());
+            }
+        }
+    }
+
+    @Test
+    public void rejectsAnIncompleteFile() throws IOException {
+        File file = write(trip(100));
+        byte[] whole = Files.readAllBytes(file.toPath());
+        File cut = folder.newFile();
+        for (int length : new int[] {0, 7, whole.length / 2, whole.length - 1}) {
+            Files.write(cut.toPath(), Arrays.copyOf(whole, length));
+            try {
+                new TrackCodec.Reader(cut).close();
+                throw new AssertionError("Read a file cut at " + length);
+            } catch (IOException expected) {
+                // not a complete track file
+            }
+        }
+    }
+}
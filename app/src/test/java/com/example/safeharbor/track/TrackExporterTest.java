@@ -0,0 +1,104 @@
+package com.example.safeharbor.track;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrackExporterTest {
+    private static final long START = 1_700_000_000_000L;
+
+    private static TrackSource source(List<TrackPoint> points) {
+        return () -> new TrackSource.Cursor() {
+            private final Iterator<TrackPoint> it = points.iterator();
+
+            @Override
+            public TrackPoint next() {
+                return it.hasNext() ? it.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static TrackPoint point(long timeMillis, int latitudeE7, int longitudeE7) {
+        return new TrackPoint(timeMillis, latitudeE7, longitudeE7, -1, -1, -1);
+    }
+
+    private static String geoJson(List<TrackPoint> points) throws IOException {
+        StringWriter out = new StringWriter();
+        TrackExporter.writeGeoJson(source(points), out, "Trip");
+        return out.toString();
+    }
+
+    @Test
+    public void writesGpx() throws IOException {
+        StringWriter out = new StringWriter();
+        TrackExporter.writeGpx(source(Arrays.asList(point(START, 85_123_456, 769_123_456),
+                point(START + 5_000, -5, -1_800_000_000))), out, "Trip <1> & \"2\"");
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"SafeHarbor\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                + "<trk><name>Trip &lt;1&gt; &amp; &quot;2&quot;</name><trkseg>\n"
+                + "<trkpt lat=\"8.5123456\" lon=\"76.9123456\"><time>2023-11-14T22:13:20Z</time></trkpt>\n"
+                + "<trkpt lat=\"-0.0000005\" lon=\"-180.0000000\"><time>2023-11-14T22:13:25Z</time></trkpt>\n"
+                + "</trkseg></trk>\n</gpx>\n", out.toString());
+    }
+
+    @Test
+    public void writesAGeoJsonLineString() throws IOException {
+        assertEquals("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[\n"
+                + "[76.9123456,8.5123456],\n[76.9123460,8.5123450]]},"
+                + "\"properties\":{\"name\":\"Trip\",\"coordTimes\":[\n"
+                + "\"2023-11-14T22:13:20Z\",\n\"2023-11-14T22:13:25Z\"]}}\n",
+                geoJson(Arrays.asList(point(START, 85_123_456, 769_123_456),
+                        point(START + 5_000, 85_123_450, 769_123_460))));
+    }
+
+    @Test
+    public void writesAGeoJsonPointForOneFix() throws IOException {
+        assertEquals("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[76.9123456,8.5123456]},"
+                + "\"properties\":{\"name\":\"Trip\",\"coordTimes\":[\n\"2023-11-14T22:13:20Z\"]}}\n",
+                geoJson(Collections.singletonList(point(START, 85_123_456, 769_123_456))));
+    }
+
+    @Test
+    public void writesANullGeoJsonGeometryForNoFix() throws IOException {
+        assertEquals("{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"name\":\"Trip\",\"coordTimes\":[]}}\n",
+                geoJson(Collections.emptyList()));
+    }
+
+    @Test
+    public void escapesTheGeoJsonName() throws IOException {
+        StringWriter out = new StringWriter();
+        TrackExporter.writeGeoJson(source(Collections.emptyList()), out, "a\"b\\c\n");
+        assertEquals("{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"name\":\"a\\\"b\\\\c\\u000a\",\"coordTimes\":[]}}\n",
+                out.toString());
+    }
+
+    @Test
+    public void formatsTimesLikeJavaTime() {
+        long[] times = {0, -1, 951_782_400_000L, 4_107_542_399_999L, -2_208_988_800_000L, START + 999};
+        for (long time : times) {
+            StringBuilder out = new StringBuilder();
+            TrackExporter.appendIsoTime(out, time);
+            assertEquals(Instant.ofEpochMilli(time).truncatedTo(ChronoUnit.SECONDS).toString(), out.toString());
+        }
+        // Every day across four centuries, leap days and all
+        for (long day = -73_000; day < 73_000; day += 1) {
+            StringBuilder out = new StringBuilder();
+            long time = day * 86_400_000L + 45_296_000L;
+            TrackExporter.appendIsoTime(out, time);
+            assertEquals(Instant.ofEpochMilli(time).toString(), out.toString());
+        }
+    }
+}
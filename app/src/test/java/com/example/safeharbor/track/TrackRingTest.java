@@ -0,0 +1,145 @@
+package com.example.safeharbor.track;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TrackRingTest {
+    private static final int CAPACITY = 10;
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Fix n is n seconds into the trip and n steps north-east
+    private static void append(TrackRing ring, int n) {
+        ring.append(START + n * 1000L, 85_000_000 + n, 769_000_000 + n, n, n % 3600, n == 0 ? -1 : 50);
+    }
+
+    private static List<Long> times(TrackSource source) throws IOException {
+        List<Long> times = new ArrayList<>();
+        try (TrackSource.Cursor cursor = source.open()) {
+            for (TrackPoint point = cursor.next(); point != null; point = cursor.next()) {
+                times.add((point.timeMillis - START) / 1000);
+            }
+        }
+        return times;
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> values = new ArrayList<>();
+        for (long n = from; n <= to; n++) {
+            values.add(n);
+        }
+        return values;
+    }
+
+    // Overwrites part of the slot record index is kept in, as a torn write would
+    private static void overwrite(File file, long index, int at, byte[] bytes) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(TrackRing.HEADER_BYTES + (index % CAPACITY) * TrackRing.RECORD_BYTES + at);
+            raw.write(bytes);
+        }
+    }
+
+    @Test
+    public void keepsTheNewestFixesAcrossReopening() throws IOException {
+        File file = new File(folder.getRoot(), "track.ring");
+        try (TrackRing ring = TrackRing.open(file, CAPACITY)) {
+            assertNull(ring.getLast());
+            for (int n = 0; n < 25; n++) {
+                append(ring, n);
+            }
+        }
+        try (TrackRing ring = TrackRing.open(file, CAPACITY)) {
+            assertEquals(25, ring.getCount());
+            assertEquals(15, ring.getFirstIndex());
+            assertNull(ring.get(14));
+            assertNull(ring.get(25));
+            TrackPoint last = ring.getLast();
+            assertEquals(START + 24_000, last.timeMillis);
+            assertEquals(85_000_024, last.latitudeE7);
+            assertEquals(769_000_024, last.longitudeE7);
+            assertEquals(24, last.speedCmps);
+            assertEquals(50, last.accuracyDm);
+            assertEquals(range(15, 24), times(ring.source(Long.MIN_VALUE, Long.MAX_VALUE)));
+            assertEquals(range(17, 20), times(ring.source(START + 17_000, START + 20_000)));
+        }
+        // Another capacity starts over
+        try (TrackRing ring = TrackRing.open(file, CAPACITY * 2)) {
+            assertEquals(0, ring.getCount());
+        }
+    }
+
+    @Test
+    public void keepsMissingValues() throws IOException {
+        try (TrackRing ring = TrackRing.open(new File(folder.getRoot(), "track.ring"), CAPACITY)) {
+            ring.append(START, 0, 0, -1, -1, -1);
+            ring.append(START + 1000, 0, 0, 100_000, 3599, 0);
+            TrackPoint missing = ring.get(0);
+            assertEquals(-1, missing.speedCmps);
+            assertEquals(-1, missing.bearingDecidegrees);
+            assertEquals(-1, missing.accuracyDm);
+            // Clamped to what a record holds, short of the missing marker
+            assertEquals(0xFFFE, ring.get(1).speedCmps);
+            assertEquals(3599, ring.get(1).bearingDecidegrees);
+            assertEquals(0, ring.get(1).accuracyDm);
+        }
+    }
+
+    @Test
+    public void skipsATornSlotAfterWrapping() throws IOException {
+        File file = new File(folder.getRoot(), "track.ring");
+        try (TrackRing ring = TrackRing.open(file, CAPACITY)) {
+            for (int n = 0; n < 25; n++) {
+                append(ring, n);
+            }
+        }
+        // Fix 18 half overwritten by the next lap: its time is new, its position is not
+        overwrite(file, 18, 0, new byte[] {(byte) 0xE8, 0x03});
+        try (TrackRing ring = TrackRing.open(file, CAPACITY)) {
+            assertNull(ring.get(18));
+            assertNotNull(ring.get(17));
+            assertNotNull(ring.get(19));
+            List<Long> expected = range(15, 24);
+            expected.remove(Long.valueOf(18));
+            assertEquals(expected, times(ring.source(Long.MIN_VALUE, Long.MAX_VALUE)));
+        }
+    }
+
+    @Test
+    public void skipsAPublishedSlotThatWasNeverWritten() throws IOException {
+        File file = new File(folder.getRoot(), "track.ring");
+        try (TrackRing ring = TrackRing.open(file, CAPACITY)) {
+            for (int n = 0; n < 25; n++) {
+                append(ring, n);
+            }
+        }
+        // Power lost with the header page written out and the record pages not: the count says
+        // 28, and the slots of 25 to 27 still hold fixes 15 to 17 from the lap before
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(16);
+            raw.write(new byte[] {28, 0, 0, 0, 0, 0, 0, 0});
+        }
+        try (TrackRing ring = TrackRing.open(file, CAPACITY)) {
+            assertEquals(28, ring.getCount());
+            assertNull(ring.get(25));
+            assertNull(ring.get(27));
+            assertNull(ring.getLast());
+            assertEquals(range(18, 24), times(ring.source(Long.MIN_VALUE, Long.MAX_VALUE)));
+            // Appending carries on after them
+            append(ring, 28);
+            assertEquals(START + 28_000, ring.getLast().timeMillis);
+        }
+    }
+}
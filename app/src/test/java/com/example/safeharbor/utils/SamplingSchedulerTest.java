@@ -0,0 +1,73 @@
+package com.example.safeharbor.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingSchedulerTest {
+    private static final double THRESHOLD_KM = 5;
+
+    private final SamplingScheduler scheduler = new SamplingScheduler(THRESHOLD_KM);
+
+    private static SamplingScheduler.Plan plan(long intervalMillis) {
+        return new SamplingScheduler.Plan(intervalMillis);
+    }
+
+    @Test
+    public void spendsHalfTheTimeToTheThreshold() {
+        // 1 km less 2 x 10 m of fix error, at 2 m/s with half again of headroom
+        assertEquals(163_333, scheduler.plan(THRESHOLD_KM + 1, 2, 10).intervalMillis);
+        // A fix without an accuracy is taken to be 100 m out
+        assertEquals(133_333, scheduler.plan(THRESHOLD_KM + 1, 2, 0).intervalMillis);
+    }
+
+    @Test
+    public void clampsToTheFastestAndSlowestRates() {
+        assertEquals(SamplingScheduler.MIN_INTERVAL_MS, scheduler.plan(THRESHOLD_KM + 0.05, 7, 10).intervalMillis);
+        assertEquals(SamplingScheduler.MAX_INTERVAL_MS, scheduler.plan(THRESHOLD_KM + 50, 1, 10).intervalMillis);
+        assertEquals(SamplingScheduler.MAX_INTERVAL_MS, scheduler.plan(Double.POSITIVE_INFINITY, 7, 10).intervalMillis);
+    }
+
+    @Test
+    public void samplesFastestInsideTheThreshold() {
+        assertSame(SamplingScheduler.INITIAL, scheduler.plan(THRESHOLD_KM, 0, 10));
+        assertSame(SamplingScheduler.INITIAL, scheduler.plan(THRESHOLD_KM - 1, 0, 10));
+        assertSame(SamplingScheduler.INITIAL, scheduler.plan(0, 0, 10));
+        // Just outside, but not by more than the fixes could be off
+        assertSame(SamplingScheduler.INITIAL, scheduler.plan(THRESHOLD_KM + 0.019, 0, 10));
+        assertSame(SamplingScheduler.INITIAL, scheduler.plan(Double.NaN, 0, 10));
+        assertEquals(SamplingScheduler.MIN_INTERVAL_MS, SamplingScheduler.INITIAL.intervalMillis);
+    }
+
+    @Test
+    public void assumesFullThrottleWithoutASpeed() {
+        // 2 km less 20 m at 7.7 m/s
+        long fullThrottle = scheduler.plan(THRESHOLD_KM + 2, 7.7, 10).intervalMillis;
+        assertEquals(128_571, fullThrottle);
+        assertEquals(fullThrottle, scheduler.plan(THRESHOLD_KM + 2, -1, 10).intervalMillis);
+        assertEquals(fullThrottle, scheduler.plan(THRESHOLD_KM + 2, Double.NaN, 10).intervalMillis);
+        // Never faster than that, whatever the fix says
+        assertEquals(fullThrottle, scheduler.plan(THRESHOLD_KM + 2, 40, 10).intervalMillis);
+    }
+
+    @Test
+    public void assumesADriftForAStoppedBoat() {
+        // 0.5 km less 20 m at 1 m/s
+        assertEquals(240_000, scheduler.plan(THRESHOLD_KM + 0.5, 0, 10).intervalMillis);
+        assertEquals(240_000, scheduler.plan(THRESHOLD_KM + 0.5, 0.3, 10).intervalMillis);
+    }
+
+    @Test
+    public void onlyReschedulesForARealChange() {
+        SamplingScheduler.Plan current = plan(100_000);
+        assertFalse(SamplingScheduler.shouldReschedule(current, plan(100_000)));
+        assertFalse(SamplingScheduler.shouldReschedule(current, plan(80_000)));
+        assertFalse(SamplingScheduler.shouldReschedule(current, plan(199_999)));
+        assertTrue(SamplingScheduler.shouldReschedule(current, plan(79_999)));
+        assertTrue(SamplingScheduler.shouldReschedule(current, plan(200_000)));
+        assertTrue(SamplingScheduler.shouldReschedule(current, SamplingScheduler.INITIAL));
+    }
+}
@@ -0,0 +1,42 @@
+// Plain JVM module with JMH benchmarks for the border engine. The geo package has no Android
+// dependencies, so it is compiled straight from the app's sources.
+//
+//   ./gradlew :benchmarks:jmh                      everything, with the gc profiler
+//   ./gradlew :benchmarks:jmh -Pjmh.includes=Distance   one benchmark class
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/example/safeharbor/geo/**")
+        }
+    }
+}
+
+val appAssets = rootProject.layout.projectDirectory.dir("app/src/main/assets")
+val boundaryPackDir = project(":app").layout.buildDirectory.dir("generated/boundaryPack")
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    jvmArgs.addAll(
+        "-Dsafeharbor.assets=${appAssets.asFile.absolutePath}",
+        "-Dsafeharbor.pack=${boundaryPackDir.get().asFile.absolutePath}"
+    )
+    providers.gradleProperty("jmh.includes").orNull?.let { includes.add(it) }
+}
+
+tasks.named("jmh") {
+    // The CSV dataset is benchmarked through the pack the app build compiles from it
+    dependsOn(":app:compileBoundaryPack")
+}
@@ -0,0 +1,77 @@
+package com.example.safeharbor.benchmarks;
+
+import com.example.safeharbor.geo.BoundaryPack;
+import com.example.safeharbor.geo.GeoJsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Boundary data for the benchmarks, read from the app's assets and its compiled boundary pack
+final class Datasets {
+    static final String CSV = "csv";
+    static final String EEZ = "eez";
+    static final String EEZ_BOUNDARIES_ASSET = "india_eez_boundaries.geojson";
+
+    private Datasets() {
+    }
+
+    static byte[] asset(String name) throws IOException {
+        return Files.readAllBytes(Paths.get(System.getProperty("safeharbor.assets", "app/src/main/assets"), name));
+    }
+
+    static byte[] packBytes() throws IOException {
+        Path pack = Paths.get(System.getProperty("safeharbor.pack", "app/build/generated/boundaryPack"),
+                BoundaryPack.ASSET_NAME);
+        return Files.readAllBytes(pack);
+    }
+
+    // csv is the compiled pack, indian_cleaned.csv together with the EEZ boundary lines; eez is
+    // the EEZ boundary lines alone, streamed from the GeoJSON
+    static BoundaryPack load(String dataset) throws IOException {
+        if (CSV.equals(dataset)) {
+            return BoundaryPack.read(ByteBuffer.wrap(packBytes()));
+        }
+        if (EEZ.equals(dataset)) {
+            try (GeoJsonReader reader = geoJson(asset(EEZ_BOUNDARIES_ASSET), "line_name")) {
+                return BoundaryPack.fromGeoJson(reader, "line_name");
+            }
+        }
+        throw new IllegalArgumentException("Unknown dataset " + dataset);
+    }
+
+    static GeoJsonReader geoJson(byte[] json, String... properties) {
+        return new GeoJsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8),
+                200_000, properties);
+    }
+
+    // Random positions over the seas around India
+    static void randomPositions(double[] lats, double[] lons, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = 5 + random.nextDouble() * 20;
+            lons[i] = 68 + random.nextDouble() * 22;
+        }
+    }
+
+    // A boat wandering about 40 m per fix, starting in the Palk Strait
+    static void track(double[] lats, double[] lons, long seed) {
+        Random random = new Random(seed);
+        double lat = 9.5;
+        double lon = 79.5;
+        double heading = 0;
+        for (int i = 0; i < lats.length; i++) {
+            heading += random.nextGaussian() * 0.1;
+            lat += Math.cos(heading) * 0.0004;
+            lon += Math.sin(heading) * 0.0004;
+            lats[i] = lat;
+            lons[i] = lon;
+        }
+    }
+}
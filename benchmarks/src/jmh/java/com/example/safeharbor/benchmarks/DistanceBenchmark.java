@@ -0,0 +1,139 @@
+package com.example.safeharbor.benchmarks;
+
+import com.example.safeharbor.geo.BatchQuery;
+import com.example.safeharbor.geo.BoundaryIndex;
+import com.example.safeharbor.geo.BoundaryLevels;
+import com.example.safeharbor.geo.BoundaryPack;
+import com.example.safeharbor.geo.GeoMath;
+import com.example.safeharbor.geo.NearestSegmentTracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one distance lookup, per position, from a single segment up to a whole track. The
+ * linearScan case is what the app did before the index: every segment of every boundary.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+    private static final int POSITIONS = 1024;
+    private static final int TRACK_LENGTH = 4096;
+    private static final double ALERT_DISTANCE_KM = 2;
+    private static final double WARNING_DISTANCE_KM = 35;
+
+    @Param({Datasets.CSV, Datasets.EEZ})
+    public String dataset;
+
+    private BoundaryPack pack;
+    private BoundaryIndex index;
+    private BoundaryLevels levels;
+    private BoundaryIndex.Query query;
+    private String boundaryName;
+
+    private final double[] lats = new double[POSITIONS];
+    private final double[] lons = new double[POSITIONS];
+    private int next;
+
+    private final double[] trackLats = new double[TRACK_LENGTH];
+    private final double[] trackLons = new double[TRACK_LENGTH];
+    private final double[] trackDistances = new double[TRACK_LENGTH];
+    private final int[] trackBoundaries = new int[TRACK_LENGTH];
+
+    @Setup
+    public void setUp() throws IOException {
+        pack = Datasets.load(dataset);
+        index = pack.toIndex();
+        levels = BoundaryLevels.build(pack, index, BoundaryLevels.DEFAULT_TOLERANCES_KM);
+        query = index.newQuery();
+        boundaryName = index.getBoundaryName(0);
+        Datasets.randomPositions(lats, lons, 42);
+        Datasets.track(trackLats, trackLons, 42);
+    }
+
+    private int nextPosition() {
+        next = (next + 1) & (POSITIONS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public double segmentDistance() {
+        int i = nextPosition();
+        return GeoMath.distanceToSegmentKm(lats[i], lons[i], pack.lats[0], pack.lons[0], pack.lats[1], pack.lons[1]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double linearScan() {
+        int i = nextPosition();
+        double best = Double.POSITIVE_INFINITY;
+        for (int line = 0; line < pack.getLineCount(); line++) {
+            int end = pack.lineStart[line] + pack.lineLength[line] - 1;
+            for (int p = pack.lineStart[line]; p < end; p++) {
+                best = Math.min(best, GeoMath.distanceToSegmentKm(lats[i], lons[i],
+                        pack.lats[p], pack.lons[p], pack.lats[p + 1], pack.lons[p + 1]));
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public double indexNearest() {
+        int i = nextPosition();
+        return query.find(lats[i], lons[i]);
+    }
+
+    @Benchmark
+    public double indexWithinAlertDistance() {
+        int i = nextPosition();
+        return query.findWithin(lats[i], lons[i], ALERT_DISTANCE_KM);
+    }
+
+    @Benchmark
+    public double indexNamedBoundary() {
+        int i = nextPosition();
+        return index.distanceKm(lats[i], lons[i], boundaryName);
+    }
+
+    @Benchmark
+    public double levelsNamedBoundary() {
+        int i = nextPosition();
+        return levels.distanceKm(lats[i], lons[i], boundaryName, WARNING_DISTANCE_KM);
+    }
+
+    // Per fix along a coherent track, including the occasional full search
+    @Benchmark
+    @OperationsPerInvocation(TRACK_LENGTH)
+    public double trackerTrack() {
+        NearestSegmentTracker tracker = new NearestSegmentTracker(index);
+        double sum = 0;
+        for (int i = 0; i < TRACK_LENGTH; i++) {
+            sum += tracker.update(trackLats[i], trackLons[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACK_LENGTH)
+    public double[] batchTrack() {
+        BatchQuery.nearest(index, trackLats, trackLons, TRACK_LENGTH, trackDistances, trackBoundaries);
+        return trackDistances;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.safeharbor.benchmarks;
+
+import com.example.safeharbor.geo.BoundaryIndex;
+import com.example.safeharbor.geo.BoundaryLevels;
+import com.example.safeharbor.geo.BoundaryPack;
+import com.example.safeharbor.geo.GeoJsonReader;
+import com.example.safeharbor.geo.MaritimeZones;
+import com.example.safeharbor.geo.PolygonGrid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start-up work: decoding the compiled pack, streaming and parsing the GeoJSON coordinates,
+ * and building the structures queried per fix. Files are read into memory once, so these
+ * measure parsing and building rather than disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadingBenchmark {
+    private byte[] pack;
+    private byte[] eezBoundaries;
+    private byte[] eezPolygons;
+    private BoundaryPack csvPack;
+
+    @Setup
+    public void setUp() throws IOException {
+        pack = Datasets.packBytes();
+        eezBoundaries = Datasets.asset(Datasets.EEZ_BOUNDARIES_ASSET);
+        eezPolygons = Datasets.asset(MaritimeZones.EEZ_ASSET);
+        csvPack = BoundaryPack.read(ByteBuffer.wrap(pack));
+    }
+
+    @Benchmark
+    public BoundaryPack readPack() throws IOException {
+        return BoundaryPack.read(ByteBuffer.wrap(pack));
+    }
+
+    @Benchmark
+    public BoundaryPack parseEezBoundaries() throws IOException {
+        try (GeoJsonReader reader = Datasets.geoJson(eezBoundaries, "line_name")) {
+            return BoundaryPack.fromGeoJson(reader, "line_name");
+        }
+    }
+
+    // Tokenising and number parsing alone, over all 71k polygon coordinates
+    @Benchmark
+    public double parseEezPolygonCoordinates() throws IOException {
+        double sum = 0;
+        try (GeoJsonReader reader = Datasets.geoJson(eezPolygons)) {
+            while (reader.nextFeature()) {
+                double[] lats = reader.getLats();
+                for (int i = 0; i < reader.getPointCount(); i++) {
+                    sum += lats[i];
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public PolygonGrid gridEezPolygons() throws IOException {
+        try (GeoJsonReader reader = Datasets.geoJson(eezPolygons)) {
+            return PolygonGrid.fromGeoJson(reader);
+        }
+    }
+
+    @Benchmark
+    public BoundaryIndex buildIndex() {
+        return csvPack.toIndex();
+    }
+
+    @Benchmark
+    public BoundaryLevels buildLevels() {
+        return BoundaryLevels.build(csvPack, csvPack.toIndex(), BoundaryLevels.DEFAULT_TOLERANCES_KM);
+    }
+}
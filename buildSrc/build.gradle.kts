@@ -0,0 +1,19 @@
+// Puts the app's geo package on the build script classpath, so the boundary asset tasks in
+// app/build.gradle.kts write their files with the same code that reads them on the device.
+plugins {
+    java
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/example/safeharbor/geo/**")
+        }
+    }
+}
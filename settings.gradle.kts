@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "SafeHarbor"
 include(":app")
+include(":benchmarks")